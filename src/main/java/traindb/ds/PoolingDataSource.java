@@ -0,0 +1,319 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.ds;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+import javax.sql.DataSource;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.ds.common.BaseDataSource;
+import traindb.ds.common.ConnectionPool;
+import traindb.jdbc.util.TrainDBJdbcException;
+import traindb.jdbc.util.TrainDBState;
+
+/**
+ * DataSource which pools connections, so that {@link #getConnection()} does not open a socket
+ * and send a startup packet every time.
+ *
+ * <p>The pool is created by the first {@link #getConnection()}; its settings cannot be changed
+ * after that. It opens {@code minIdle} connections right away and keeps that many idle, up to
+ * {@code maxConnections} in total. Connections are closed once older than
+ * {@code maxLifetime}, and idle ones beyond {@code minIdle} after {@code idleTimeout}. A
+ * connection that was idle for a while is checked before it is handed out. Close the data
+ * source with {@link #close()} to close its connections.</p>
+ *
+ * <p>Only connections for the default user and password of the data source are pooled;
+ * {@link #getConnection(String, String)} with other credentials opens an unpooled
+ * connection.</p>
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/ds/PGPoolingDataSource.java
+public class PoolingDataSource extends BaseDataSource implements DataSource {
+  private static final ConcurrentMap<String, PoolingDataSource> dataSources =
+      new ConcurrentHashMap<String, PoolingDataSource>();
+
+  public static @Nullable PoolingDataSource getDataSource(String name) {
+    return dataSources.get(name);
+  }
+
+  // Additional Data Source properties
+  private @Nullable String dataSourceName;
+  private int minIdle = 0;
+  private int maxConnections = 10;
+  private long maxLifetime = TimeUnit.MINUTES.toMillis(30);
+  private long idleTimeout = TimeUnit.MINUTES.toMillis(10);
+  private long connectionTimeout = TimeUnit.SECONDS.toMillis(30);
+  // State variables
+  private volatile @Nullable ConnectionPool pool;
+  private volatile boolean closed;
+
+  /**
+   * Gets a description of this DataSource.
+   */
+  public String getDescription() {
+    return "Pooling DataSource '" + dataSourceName + " from " + getUrl();
+  }
+
+  /**
+   * Gets the name of this DataSource. This uniquely identifies the DataSource. You cannot use
+   * more than one DataSource in the same VM with the same name.
+   */
+  public @Nullable String getDataSourceName() {
+    return dataSourceName;
+  }
+
+  /**
+   * Sets the name of this DataSource. This is required, and uniquely identifies the DataSource.
+   * You cannot create or use more than one DataSource in the same VM with the same name.
+   *
+   * @throws IllegalStateException The Data Source Name cannot be changed after the DataSource
+   *     has been used.
+   * @throws IllegalArgumentException Another DataSource with the same dataSourceName already
+   *     exists.
+   */
+  public void setDataSourceName(String dataSourceName) {
+    checkNotInitialized("dataSourceName");
+    if (Objects.equals(this.dataSourceName, dataSourceName)) {
+      return;
+    }
+    PoolingDataSource previous = dataSources.putIfAbsent(dataSourceName, this);
+    if (previous != null) {
+      throw new IllegalArgumentException(
+          "DataSource with name '" + dataSourceName + "' already exists!");
+    }
+    if (this.dataSourceName != null) {
+      dataSources.remove(this.dataSourceName);
+    }
+    this.dataSourceName = dataSourceName;
+  }
+
+  /**
+   * Gets the number of idle connections the pool keeps open, and opens when it is created.
+   * The default is 0.
+   */
+  public int getMinIdle() {
+    return minIdle;
+  }
+
+  /**
+   * Sets the number of idle connections the pool keeps open, and opens when it is created.
+   *
+   * @throws IllegalStateException The minimum cannot be changed after the DataSource has been
+   *     used.
+   */
+  public void setMinIdle(int minIdle) {
+    checkNotInitialized("minIdle");
+    this.minIdle = minIdle;
+  }
+
+  /**
+   * Gets the maximum number of connections the pool opens, idle or in use. When they are all in
+   * use, {@link #getConnection()} waits up to {@code connectionTimeout} for one to be given
+   * back. The default is 10.
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Sets the maximum number of connections the pool opens, idle or in use.
+   *
+   * @throws IllegalStateException The maximum cannot be changed after the DataSource has been
+   *     used.
+   */
+  public void setMaxConnections(int maxConnections) {
+    checkNotInitialized("maxConnections");
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * Gets the age in milliseconds at which a connection is closed, once it is not in use.
+   * 0 means connections are kept forever. The default is 30 minutes.
+   */
+  public long getMaxLifetime() {
+    return maxLifetime;
+  }
+
+  /**
+   * Sets the age in milliseconds at which a connection is closed, once it is not in use.
+   *
+   * @throws IllegalStateException The lifetime cannot be changed after the DataSource has been
+   *     used.
+   */
+  public void setMaxLifetime(long maxLifetime) {
+    checkNotInitialized("maxLifetime");
+    this.maxLifetime = maxLifetime;
+  }
+
+  /**
+   * Gets the time in milliseconds after which an idle connection beyond {@code minIdle} is
+   * closed. 0 means idle connections are kept. The default is 10 minutes.
+   */
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds after which an idle connection beyond {@code minIdle} is
+   * closed.
+   *
+   * @throws IllegalStateException The timeout cannot be changed after the DataSource has been
+   *     used.
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    checkNotInitialized("idleTimeout");
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Gets how long in milliseconds {@link #getConnection()} waits for a connection. The default
+   * is 30 seconds.
+   */
+  public long getConnectionTimeout() {
+    return connectionTimeout;
+  }
+
+  /**
+   * Sets how long in milliseconds {@link #getConnection()} waits for a connection.
+   *
+   * @throws IllegalStateException The timeout cannot be changed after the DataSource has been
+   *     used.
+   */
+  public void setConnectionTimeout(long connectionTimeout) {
+    checkNotInitialized("connectionTimeout");
+    this.connectionTimeout = connectionTimeout;
+  }
+
+  private void checkNotInitialized(String property) {
+    if (pool != null || closed) {
+      throw new IllegalStateException(
+          "Cannot set " + property + " after DataSource has been used");
+    }
+  }
+
+  /**
+   * Creates the pool, and starts opening the {@code minIdle} connections. Done by the first
+   * {@link #getConnection()} if not called before.
+   *
+   * @throws SQLException if the DataSource has been closed
+   */
+  public void initialize() throws SQLException {
+    getPool();
+  }
+
+  private ConnectionPool getPool() throws SQLException {
+    ConnectionPool pool = this.pool;
+    if (pool == null) {
+      synchronized (this) {
+        pool = this.pool;
+        if (pool == null && !closed) {
+          final String user = getUser();
+          final String password = getPassword();
+          pool = new ConnectionPool(() -> super.getConnection(user, password), minIdle,
+              maxConnections, maxLifetime, idleTimeout, connectionTimeout);
+          this.pool = pool;
+        }
+      }
+    }
+    if (pool == null || pool.isClosed()) {
+      throw new TrainDBJdbcException("DataSource has been closed.",
+          TrainDBState.CONNECTION_DOES_NOT_EXIST);
+    }
+    return pool;
+  }
+
+  /**
+   * Gets a <b>non-pooled</b> connection, unless the user and password are the same as the
+   * default values for this connection pool.
+   *
+   * @return A pooled connection.
+   * @throws SQLException Occurs when no pooled connection is available, and a new physical
+   *     connection cannot be created.
+   */
+  @Override
+  public Connection getConnection(@Nullable String user, @Nullable String password)
+      throws SQLException {
+    // If this is for the default user/password, use a pooled connection
+    if (user == null || (user.equals(getUser()) && ((password == null && getPassword() == null)
+        || (password != null && password.equals(getPassword()))))) {
+      return getConnection();
+    }
+    // Otherwise, use a non-pooled connection
+    return super.getConnection(user, password);
+  }
+
+  /**
+   * Gets a connection from the connection pool. Closing it gives it back to the pool.
+   *
+   * @return A pooled connection.
+   * @throws SQLException Occurs when no pooled connection is available, and a new physical
+   *     connection cannot be created.
+   */
+  @Override
+  public Connection getConnection() throws SQLException {
+    return getPool().getConnection();
+  }
+
+  /**
+   * Closes this DataSource, and all the pooled connections, whether in use or not.
+   */
+  public void close() {
+    ConnectionPool pool;
+    synchronized (this) {
+      closed = true;
+      pool = this.pool;
+    }
+    if (pool != null) {
+      pool.close();
+    }
+    if (dataSourceName != null) {
+      dataSources.remove(dataSourceName);
+    }
+  }
+
+  /**
+   * Adds custom properties for this DataSource to the properties defined in the superclass.
+   */
+  @Override
+  public Reference getReference() throws NamingException {
+    Reference ref = super.getReference();
+    if (dataSourceName != null) {
+      ref.add(new StringRefAddr("dataSourceName", dataSourceName));
+    }
+    ref.add(new StringRefAddr("minIdle", Integer.toString(minIdle)));
+    ref.add(new StringRefAddr("maxConnections", Integer.toString(maxConnections)));
+    ref.add(new StringRefAddr("maxLifetime", Long.toString(maxLifetime)));
+    ref.add(new StringRefAddr("idleTimeout", Long.toString(idleTimeout)));
+    ref.add(new StringRefAddr("connectionTimeout", Long.toString(connectionTimeout)));
+    return ref;
+  }
+
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isAssignableFrom(getClass());
+  }
+
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isAssignableFrom(getClass())) {
+      return iface.cast(this);
+    }
+    throw new SQLException("Cannot unwrap to " + iface.getName());
+  }
+}
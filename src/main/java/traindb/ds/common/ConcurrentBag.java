@@ -0,0 +1,269 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.ds.common;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A collection of pooled items that threads borrow and give back without taking a lock.
+ *
+ * <p>A thread first looks at the items it returned itself, most recent first, as those are
+ * the most likely to be free, and then at the shared list; an item is taken by a compare and
+ * set of its state. A thread that finds nothing waits for an item to be handed over by the
+ * next thread that returns or adds one.</p>
+ *
+ * @param <T> the type of the pooled items
+ */
+public class ConcurrentBag<T extends ConcurrentBag.Entry> {
+  // Items a thread keeps in its own list; beyond that they are only in the shared list
+  private static final int MAX_THREAD_LOCAL_ITEMS = 16;
+
+  private final CopyOnWriteArrayList<T> sharedList = new CopyOnWriteArrayList<T>();
+  private final ThreadLocal<List<WeakReference<T>>> threadList =
+      ThreadLocal.withInitial(() -> new ArrayList<WeakReference<T>>(MAX_THREAD_LOCAL_ITEMS));
+  private final SynchronousQueue<T> handoffQueue = new SynchronousQueue<T>(true);
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final IntConsumer addItemListener;
+  private volatile boolean closed;
+
+  /**
+   * Create a bag.
+   *
+   * @param addItemListener called with the number of waiting threads when a borrower found
+   *     nothing free, to add an item to the bag if the pool may grow
+   */
+  public ConcurrentBag(IntConsumer addItemListener) {
+    this.addItemListener = addItemListener;
+  }
+
+  /**
+   * Borrow an item.
+   *
+   * @param timeout how long to wait for an item
+   * @param unit    the unit of the timeout
+   * @return an item, now {@link Entry#STATE_IN_USE}, or null if none became free in time
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public @Nullable T borrow(long timeout, TimeUnit unit) throws InterruptedException {
+    List<WeakReference<T>> list = threadList.get();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      T item = list.remove(i).get();
+      if (item != null && item.compareAndSet(Entry.STATE_NOT_IN_USE, Entry.STATE_IN_USE)) {
+        return item;
+      }
+    }
+
+    int waiting = waiters.incrementAndGet();
+    try {
+      for (T item : sharedList) {
+        if (item.compareAndSet(Entry.STATE_NOT_IN_USE, Entry.STATE_IN_USE)) {
+          // we may have stolen the item another waiter was promised
+          if (waiting > 1) {
+            addItemListener.accept(waiting - 1);
+          }
+          return item;
+        }
+      }
+
+      addItemListener.accept(waiting);
+
+      long remaining = unit.toNanos(timeout);
+      do {
+        long start = System.nanoTime();
+        T item = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+        if (item == null || item.compareAndSet(Entry.STATE_NOT_IN_USE, Entry.STATE_IN_USE)) {
+          return item;
+        }
+        remaining -= System.nanoTime() - start;
+      } while (remaining > 10_000 && !closed);
+
+      return null;
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  /**
+   * Give back a borrowed item. It is handed over to a waiting thread if there is one,
+   * otherwise kept in the list of the current thread for its next borrow.
+   *
+   * @param item the item to return
+   */
+  public void requite(T item) {
+    item.setState(Entry.STATE_NOT_IN_USE);
+
+    for (int i = 0; waiters.get() > 0; i++) {
+      if (item.getState() != Entry.STATE_NOT_IN_USE || handoffQueue.offer(item)) {
+        return;
+      }
+      if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+
+    List<WeakReference<T>> list = threadList.get();
+    if (list.size() < MAX_THREAD_LOCAL_ITEMS) {
+      list.add(new WeakReference<T>(item));
+    }
+  }
+
+  /**
+   * Add a new item, {@link Entry#STATE_NOT_IN_USE}, handing it over to a waiting thread if
+   * there is one.
+   *
+   * @param item the item to add
+   */
+  public void add(T item) {
+    if (closed) {
+      throw new IllegalStateException("ConcurrentBag has been closed, ignoring add()");
+    }
+
+    sharedList.add(item);
+
+    while (waiters.get() > 0 && item.getState() == Entry.STATE_NOT_IN_USE
+        && !handoffQueue.offer(item)) {
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Remove an item that was borrowed or {@link #reserve(Entry) reserved}.
+   *
+   * @param item the item to remove
+   * @return true if the item was removed by this call
+   */
+  public boolean remove(T item) {
+    if (!item.compareAndSet(Entry.STATE_IN_USE, Entry.STATE_REMOVED)
+        && !item.compareAndSet(Entry.STATE_RESERVED, Entry.STATE_REMOVED)) {
+      return false;
+    }
+    return sharedList.remove(item);
+  }
+
+  /**
+   * Take a free item out of circulation, to inspect or remove it, without borrowing it.
+   *
+   * @param item the item to reserve
+   * @return true if the item was free and is now {@link Entry#STATE_RESERVED}
+   */
+  public boolean reserve(T item) {
+    return item.compareAndSet(Entry.STATE_NOT_IN_USE, Entry.STATE_RESERVED);
+  }
+
+  /**
+   * Put a reserved item back into circulation.
+   *
+   * @param item the reserved item
+   */
+  public void unreserve(T item) {
+    if (item.compareAndSet(Entry.STATE_RESERVED, Entry.STATE_NOT_IN_USE)) {
+      // a thread may be waiting for it
+      while (waiters.get() > 0 && item.getState() == Entry.STATE_NOT_IN_USE
+          && !handoffQueue.offer(item)) {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * The items in a given state, at the time of the call.
+   *
+   * @param state one of the {@code STATE_} constants of {@link Entry}
+   * @return the items in that state
+   */
+  public List<T> values(int state) {
+    List<T> list = new ArrayList<T>();
+    for (T item : sharedList) {
+      if (item.getState() == state) {
+        list.add(item);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * All the items, whatever their state.
+   *
+   * @return a snapshot of the items
+   */
+  public List<T> values() {
+    return new ArrayList<T>(sharedList);
+  }
+
+  public int size() {
+    return sharedList.size();
+  }
+
+  public int getCount(int state) {
+    int count = 0;
+    for (T item : sharedList) {
+      if (item.getState() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public int getWaitingThreadCount() {
+    return waiters.get();
+  }
+
+  /**
+   * Refuse new items from now on; threads waiting in {@link #borrow(long, TimeUnit)} give up at
+   * the next item handed to them or at their timeout.
+   */
+  public void close() {
+    closed = true;
+  }
+
+  /**
+   * Base class of the items of a bag, holding their state.
+   */
+  public abstract static class Entry {
+    public static final int STATE_NOT_IN_USE = 0;
+    public static final int STATE_IN_USE = 1;
+    public static final int STATE_REMOVED = -1;
+    public static final int STATE_RESERVED = -2;
+
+    private static final AtomicIntegerFieldUpdater<Entry> STATE_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+    private volatile int state = STATE_NOT_IN_USE;
+
+    public int getState() {
+      return state;
+    }
+
+    boolean compareAndSet(int expect, int update) {
+      return STATE_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    void setState(int update) {
+      state = update;
+    }
+  }
+}
@@ -0,0 +1,563 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.ds.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.MessageFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.Driver;
+import traindb.jdbc.util.TimerWheel;
+import traindb.jdbc.util.TrainDBJdbcException;
+import traindb.jdbc.util.TrainDBState;
+
+/**
+ * A pool of physical connections, see {@link traindb.ds.PoolingDataSource}.
+ *
+ * <p>Borrowing and returning a connection go through a {@link ConcurrentBag} and take no lock.
+ * Connections are opened on a background thread, either because a borrower found none free or
+ * to keep {@code minIdle} connections ready. A housekeeping task on the shared timer of the
+ * driver closes connections that outlived {@code maxLifetime}, idled longer than
+ * {@code idleTimeout} beyond the minimum, or were broken.</p>
+ */
+public class ConnectionPool {
+  private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+  // A connection used within this window is handed out again without validation
+  private static final long ALIVE_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+  private static final long HOUSEKEEPING_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * Opens the physical connections of the pool.
+   */
+  public interface ConnectionSource {
+    Connection connect() throws SQLException;
+  }
+
+  private final String poolName;
+  private final ConnectionSource source;
+  private final int minIdle;
+  private final int maxConnections;
+  private final long maxLifetimeNanos;
+  private final long idleTimeoutNanos;
+  private final long connectionTimeoutMillis;
+
+  private final ConcurrentBag<PoolEntry> bag;
+  private final ExecutorService addConnectionExecutor;
+  // Connections being opened, counted against maxConnections
+  private final AtomicInteger pendingConnections = new AtomicInteger();
+  private volatile @Nullable SQLException lastConnectionFailure;
+  private volatile TimerWheel.@Nullable Timeout housekeepingTimeout;
+  private volatile boolean shutdown;
+
+  /**
+   * Create a pool and start opening its {@code minIdle} connections.
+   *
+   * @param source                  opens the physical connections
+   * @param minIdle                 the number of idle connections to keep open
+   * @param maxConnections          the maximum number of connections, idle or in use
+   * @param maxLifetimeMillis       the age at which a connection is retired, 0 for never
+   * @param idleTimeoutMillis       the idle time after which a connection beyond
+   *                                {@code minIdle} is closed, 0 for never
+   * @param connectionTimeoutMillis how long {@link #getConnection()} waits for a connection
+   */
+  public ConnectionPool(ConnectionSource source, int minIdle, int maxConnections,
+      long maxLifetimeMillis, long idleTimeoutMillis, long connectionTimeoutMillis) {
+    if (maxConnections < 1) {
+      throw new IllegalArgumentException("maxConnections must be at least 1: " + maxConnections);
+    }
+    this.poolName = "TrainDB-Pool-" + POOL_COUNTER.incrementAndGet();
+    this.source = source;
+    this.minIdle = Math.min(Math.max(minIdle, 0), maxConnections);
+    this.maxConnections = maxConnections;
+    this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maxLifetimeMillis, 0));
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(idleTimeoutMillis, 0));
+    this.connectionTimeoutMillis = Math.max(connectionTimeoutMillis, 0);
+    this.bag = new ConcurrentBag<PoolEntry>(this::addConnections);
+    this.addConnectionExecutor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, poolName + "-Connector");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    fillPool();
+    scheduleHousekeeping();
+  }
+
+  /**
+   * Borrow a connection. Closing the returned connection gives it back to the pool.
+   *
+   * @return a connection
+   * @throws SQLException if the pool is closed, or no connection became available within the
+   *     connection timeout
+   */
+  public Connection getConnection() throws SQLException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectionTimeoutMillis);
+    try {
+      long remaining;
+      do {
+        if (shutdown) {
+          break;
+        }
+        remaining = deadline - System.nanoTime();
+        PoolEntry entry = bag.borrow(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+        if (entry == null) {
+          break;
+        }
+
+        long now = System.nanoTime();
+        if (isRetired(entry, now)
+            || (now - entry.lastAccessed > ALIVE_BYPASS_NANOS && !isAlive(entry))) {
+          closeConnection(entry);
+          continue;
+        }
+        entry.lastAccessed = now;
+        return entry.createHandle();
+      } while (deadline - System.nanoTime() > 0);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TrainDBJdbcException("Interrupted while waiting for a connection from the pool.",
+          TrainDBState.CONNECTION_UNABLE_TO_CONNECT, e);
+    }
+
+    if (shutdown) {
+      throw new TrainDBJdbcException("The connection pool has been closed.",
+          TrainDBState.CONNECTION_DOES_NOT_EXIST);
+    }
+    throw new TrainDBJdbcException(
+        MessageFormat.format(
+            "{0} - Connection is not available, request timed out after {1}ms.", poolName,
+            String.valueOf(connectionTimeoutMillis)),
+        TrainDBState.CONNECTION_UNABLE_TO_CONNECT, lastConnectionFailure);
+  }
+
+  /**
+   * Close the idle connections and refuse new borrows. Connections in use are closed when they
+   * are given back.
+   */
+  public void close() {
+    if (shutdown) {
+      return;
+    }
+    shutdown = true;
+    TimerWheel.Timeout timeout = housekeepingTimeout;
+    if (timeout != null) {
+      timeout.cancel();
+    }
+    bag.close();
+    addConnectionExecutor.shutdown();
+    for (PoolEntry entry : bag.values(ConcurrentBag.Entry.STATE_NOT_IN_USE)) {
+      if (bag.reserve(entry)) {
+        closeConnection(entry);
+      }
+    }
+  }
+
+  public boolean isClosed() {
+    return shutdown;
+  }
+
+  /**
+   * The number of open connections, idle or in use.
+   *
+   * @return the number of connections
+   */
+  public int getTotalConnections() {
+    return bag.size();
+  }
+
+  public int getIdleConnections() {
+    return bag.getCount(ConcurrentBag.Entry.STATE_NOT_IN_USE);
+  }
+
+  public int getActiveConnections() {
+    return bag.getCount(ConcurrentBag.Entry.STATE_IN_USE);
+  }
+
+  public String getPoolName() {
+    return poolName;
+  }
+
+  private boolean isRetired(PoolEntry entry, long now) {
+    return maxLifetimeNanos > 0 && now - entry.createdAt >= maxLifetimeNanos;
+  }
+
+  private static boolean isAlive(PoolEntry entry) {
+    try {
+      return entry.connection.isValid(0);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Give back a connection whose handle was closed.
+   */
+  void recycle(PoolEntry entry) {
+    closeStatements(entry);
+    if (shutdown || isRetired(entry, System.nanoTime()) || !isAlive(entry)) {
+      closeConnection(entry);
+      return;
+    }
+    try {
+      entry.connection.clearWarnings();
+    } catch (SQLException e) {
+      closeConnection(entry);
+      return;
+    }
+    entry.lastAccessed = System.nanoTime();
+    bag.requite(entry);
+  }
+
+  /**
+   * Close the statements that the borrower of a connection left open, so that the next borrower
+   * cannot be reached through them.
+   */
+  private static void closeStatements(PoolEntry entry) {
+    for (Statement statement : entry.openStatements) {
+      entry.openStatements.remove(statement);
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        LOGGER.log(Level.FINE, "Discarding SQLException on close of a pooled statement:", e);
+      }
+    }
+  }
+
+  /**
+   * Remove a borrowed or reserved connection from the pool and close it.
+   */
+  void closeConnection(PoolEntry entry) {
+    if (!bag.remove(entry)) {
+      return;
+    }
+    try {
+      entry.connection.close();
+    } catch (SQLException e) {
+      LOGGER.log(Level.FINE, "Discarding SQLException on close of a pooled connection:", e);
+    }
+    fillPool();
+  }
+
+  /**
+   * Called by a borrower that found no free connection; opens one more connection unless enough
+   * are already being opened for the waiting threads, or the pool is full.
+   */
+  private void addConnections(int waiting) {
+    if (waiting <= pendingConnections.get()) {
+      return;
+    }
+    openConnectionAsync();
+  }
+
+  /**
+   * Open connections until {@code minIdle} of them are idle, within {@code maxConnections}.
+   */
+  private void fillPool() {
+    int toAdd = Math.min(maxConnections - bag.size(), minIdle - getIdleConnections())
+        - pendingConnections.get();
+    for (int i = 0; i < toAdd; i++) {
+      if (!openConnectionAsync()) {
+        break;
+      }
+    }
+  }
+
+  private boolean openConnectionAsync() {
+    int pending;
+    do {
+      pending = pendingConnections.get();
+      if (shutdown || bag.size() + pending >= maxConnections) {
+        return false;
+      }
+    } while (!pendingConnections.compareAndSet(pending, pending + 1));
+
+    try {
+      addConnectionExecutor.execute(this::openConnection);
+      return true;
+    } catch (RejectedExecutionException e) {
+      pendingConnections.decrementAndGet();
+      return false;
+    }
+  }
+
+  private void openConnection() {
+    try {
+      if (shutdown) {
+        return;
+      }
+      Connection connection = source.connect();
+      if (shutdown) {
+        connection.close();
+        return;
+      }
+      bag.add(new PoolEntry(connection));
+      lastConnectionFailure = null;
+      LOGGER.log(Level.FINE, "{0} - Added connection {1}", new Object[] {poolName, connection});
+    } catch (SQLException e) {
+      lastConnectionFailure = e;
+      LOGGER.log(Level.FINE, poolName + " - Cannot open a connection", e);
+    } catch (IllegalStateException e) {
+      // the bag was closed concurrently
+    } finally {
+      pendingConnections.decrementAndGet();
+    }
+  }
+
+  private void scheduleHousekeeping() {
+    if (shutdown) {
+      return;
+    }
+    // the timer thread must not block, the work is done by the connector thread
+    housekeepingTimeout = Driver.getSharedTimer().newTimeout(() -> {
+      try {
+        addConnectionExecutor.execute(this::housekeep);
+      } catch (RejectedExecutionException e) {
+        // closed
+      }
+    }, HOUSEKEEPING_PERIOD_MILLIS);
+  }
+
+  private void housekeep() {
+    try {
+      long now = System.nanoTime();
+      int idle = getIdleConnections();
+      for (PoolEntry entry : bag.values(ConcurrentBag.Entry.STATE_NOT_IN_USE)) {
+        if (!bag.reserve(entry)) {
+          continue;
+        }
+        boolean idledOut = idleTimeoutNanos > 0 && idle > minIdle
+            && now - entry.lastAccessed > idleTimeoutNanos;
+        if (idledOut || isRetired(entry, now) || !isAlive(entry)) {
+          idle--;
+          closeConnection(entry);
+        } else {
+          bag.unreserve(entry);
+        }
+      }
+      fillPool();
+    } finally {
+      scheduleHousekeeping();
+    }
+  }
+
+  /**
+   * A physical connection of the pool.
+   */
+  final class PoolEntry extends ConcurrentBag.Entry {
+    final Connection connection;
+    final long createdAt;
+    volatile long lastAccessed;
+    // Statements created through the handle of the current borrower and not closed yet
+    final Set<Statement> openStatements =
+        ConcurrentHashMap.<Statement>newKeySet();
+
+    PoolEntry(Connection connection) {
+      this.connection = connection;
+      this.createdAt = System.nanoTime();
+      this.lastAccessed = createdAt;
+    }
+
+    Connection createHandle() {
+      return new ConnectionHandler(this).proxy;
+    }
+  }
+
+  /**
+   * Handle {@link java.sql.Wrapper#unwrap(Class)} and {@link java.sql.Wrapper#isWrapperFor(Class)}
+   * on a proxy. The proxy unwraps to itself or to another interface of the wrapped object, but
+   * never to the wrapped object: its connection is the physical one, which the pool still counts
+   * as in use.
+   */
+  private static Object unwrap(Object proxy, InvocationHandler handler, Object delegate,
+      Method method, Object[] args) throws SQLException {
+    Class<?> iface = (Class<?>) args[0];
+    boolean wraps = iface.isInstance(proxy) || (iface.isInterface() && iface.isInstance(delegate));
+    if (method.getName().equals("isWrapperFor")) {
+      return wraps;
+    }
+    if (!wraps) {
+      throw new SQLException("Cannot unwrap to " + iface.getName());
+    }
+    if (iface.isInstance(proxy)) {
+      return proxy;
+    }
+    return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[] {iface},
+        handler);
+  }
+
+  private static boolean isWrapperMethod(Method method) {
+    return method.getName().equals("unwrap") || method.getName().equals("isWrapperFor");
+  }
+
+  /**
+   * The connection handed out to the application. Closing it gives the physical connection
+   * back to the pool; it cannot be used after that. The statements and metadata it creates are
+   * wrapped too, so that their {@code getConnection()} is this handle.
+   */
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/ds/PGPooledConnection.java
+  private class ConnectionHandler implements InvocationHandler {
+    private @Nullable PoolEntry entry;
+    final Connection proxy;
+
+    ConnectionHandler(PoolEntry entry) {
+      this.entry = entry;
+      this.proxy = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] {Connection.class}, this);
+    }
+
+    @Override
+    public @Nullable Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      final String methodName = method.getName();
+      if (method.getDeclaringClass() == Object.class) {
+        if (methodName.equals("toString")) {
+          return "Pooled connection wrapping physical connection "
+              + (entry == null ? null : entry.connection);
+        }
+        if (methodName.equals("hashCode")) {
+          return System.identityHashCode(proxy);
+        }
+        if (methodName.equals("equals")) {
+          return proxy == args[0];
+        }
+        return method.invoke(this, args);
+      }
+
+      PoolEntry entry = this.entry;
+      if (methodName.equals("isClosed")) {
+        return entry == null || entry.connection.isClosed();
+      }
+      if (methodName.equals("close")) {
+        if (entry != null) {
+          this.entry = null;
+          recycle(entry);
+        }
+        return null;
+      }
+      if (entry == null) {
+        if (methodName.equals("isValid")) {
+          return false;
+        }
+        throw new TrainDBJdbcException("Connection has been closed.",
+            TrainDBState.CONNECTION_DOES_NOT_EXIST);
+      }
+      if (methodName.equals("abort")) {
+        this.entry = null;
+        closeConnection(entry);
+        return null;
+      }
+      if (isWrapperMethod(method)) {
+        return unwrap(proxy, this, entry.connection, method, args);
+      }
+
+      Object result;
+      try {
+        result = method.invoke(entry.connection, args);
+      } catch (InvocationTargetException e) {
+        throw e.getTargetException();
+      }
+      if (result instanceof Statement) {
+        Statement statement = (Statement) result;
+        entry.openStatements.add(statement);
+        return Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {method.getReturnType()}, new ChildHandler(this, statement));
+      }
+      if (result instanceof DatabaseMetaData) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {DatabaseMetaData.class}, new ChildHandler(this, result));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * A statement or the metadata created through a connection handle. Its
+   * {@code getConnection()} is the handle; once the handle is closed it cannot be used.
+   */
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/ds/PGPooledConnection.java
+  private class ChildHandler implements InvocationHandler {
+    private final ConnectionHandler connectionHandler;
+    private final Object delegate;
+
+    ChildHandler(ConnectionHandler connectionHandler, Object delegate) {
+      this.connectionHandler = connectionHandler;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public @Nullable Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      final String methodName = method.getName();
+      if (method.getDeclaringClass() == Object.class) {
+        if (methodName.equals("toString")) {
+          return "Pooled wrapper of " + delegate;
+        }
+        if (methodName.equals("hashCode")) {
+          return System.identityHashCode(proxy);
+        }
+        if (methodName.equals("equals")) {
+          return proxy == args[0];
+        }
+        return method.invoke(this, args);
+      }
+
+      PoolEntry entry = connectionHandler.entry;
+      if (delegate instanceof Statement) {
+        if (methodName.equals("close")) {
+          if (entry != null) {
+            entry.openStatements.remove(delegate);
+          }
+          ((Statement) delegate).close();
+          return null;
+        }
+        if (methodName.equals("isClosed")) {
+          return entry == null || ((Statement) delegate).isClosed();
+        }
+      }
+      if (entry == null) {
+        throw new TrainDBJdbcException("Connection has been closed.",
+            TrainDBState.CONNECTION_DOES_NOT_EXIST);
+      }
+      if (methodName.equals("getConnection")) {
+        return connectionHandler.proxy;
+      }
+      if (isWrapperMethod(method)) {
+        return unwrap(proxy, this, delegate, method, args);
+      }
+
+      try {
+        return method.invoke(delegate, args);
+      } catch (InvocationTargetException e) {
+        throw e.getTargetException();
+      }
+    }
+  }
+}
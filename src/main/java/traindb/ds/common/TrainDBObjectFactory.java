@@ -21,6 +21,7 @@ import javax.naming.RefAddr;
 import javax.naming.Reference;
 import javax.naming.spi.ObjectFactory;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.ds.PoolingDataSource;
 import traindb.ds.SimpleDataSource;
 
 public class TrainDBObjectFactory implements ObjectFactory {
@@ -33,6 +34,8 @@ public class TrainDBObjectFactory implements ObjectFactory {
     String className = ref.getClassName();
     if (className.equals("traindb.ds.SimpleDataSource")) {
       return loadSimpleDataSource(ref);
+    } else if (className.equals("traindb.ds.PoolingDataSource")) {
+      return loadPoolingDataSource(ref);
     } else {
       return null;
     }
@@ -43,6 +46,42 @@ public class TrainDBObjectFactory implements ObjectFactory {
     return loadBaseDataSource(ds, ref);
   }
 
+  private Object loadPoolingDataSource(Reference ref) {
+    // If DataSource exists, return it
+    String name = getProperty(ref, "dataSourceName");
+    PoolingDataSource pds = name == null ? null : PoolingDataSource.getDataSource(name);
+    if (pds != null) {
+      return pds;
+    }
+    // Otherwise, create a new one
+    pds = new PoolingDataSource();
+    if (name != null) {
+      pds.setDataSourceName(name);
+    }
+    loadBaseDataSource(pds, ref);
+    String min = getProperty(ref, "minIdle");
+    if (min != null) {
+      pds.setMinIdle(Integer.parseInt(min));
+    }
+    String max = getProperty(ref, "maxConnections");
+    if (max != null) {
+      pds.setMaxConnections(Integer.parseInt(max));
+    }
+    String maxLifetime = getProperty(ref, "maxLifetime");
+    if (maxLifetime != null) {
+      pds.setMaxLifetime(Long.parseLong(maxLifetime));
+    }
+    String idleTimeout = getProperty(ref, "idleTimeout");
+    if (idleTimeout != null) {
+      pds.setIdleTimeout(Long.parseLong(idleTimeout));
+    }
+    String connectionTimeout = getProperty(ref, "connectionTimeout");
+    if (connectionTimeout != null) {
+      pds.setConnectionTimeout(Long.parseLong(connectionTimeout));
+    }
+    return pds;
+  }
+
   protected Object loadBaseDataSource(BaseDataSource ds, Reference ref) {
     ds.setFromReference(ref);
 
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Bulk access to whole columns of a result that was received in column batches, see the
+ * {@code columnarResults} connection property. Obtain it with
+ * <code>resultSet.unwrap(ColumnarResultSet.class)</code>.
+ *
+ * <p>The column accessors cover the rows that are currently held by the result set: all of
+ * them, unless the rows are streamed with a fetch size, in which case only the current batch.
+ * They do not depend on or move the cursor position.</p>
+ */
+public interface ColumnarResultSet extends ResultSet {
+  /**
+   * The number of rows the column accessors return.
+   *
+   * @return the number of rows held by the result set
+   * @throws SQLException if the result set is closed
+   */
+  int getRowCount() throws SQLException;
+
+  /**
+   * The values of a numeric column. NULL values are returned as 0.
+   *
+   * @param columnIndex the first column is 1, the second is 2, ...
+   * @return a new array with one value per row
+   * @throws SQLException if the column is not numeric or the result set is closed
+   */
+  double[] getDoubleColumn(int columnIndex) throws SQLException;
+
+  /**
+   * The values of an integer column. NULL values are returned as 0.
+   *
+   * @param columnIndex the first column is 1, the second is 2, ...
+   * @return a new array with one value per row
+   * @throws SQLException if the column is not an integer column or the result set is closed
+   */
+  long[] getLongColumn(int columnIndex) throws SQLException;
+
+  /**
+   * Which values of a column are NULL.
+   *
+   * @param columnIndex the first column is 1, the second is 2, ...
+   * @return a new array with one flag per row
+   * @throws SQLException if the result set is closed
+   */
+  boolean[] getNullColumn(int columnIndex) throws SQLException;
+}
@@ -32,6 +32,7 @@ import java.util.Enumeration;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import traindb.jdbc.util.TimerWheel;
 import traindb.jdbc.util.TrainDBJdbcException;
 import traindb.jdbc.util.TrainDBJdbcLogger;
 import traindb.jdbc.util.TrainDBProperty;
@@ -49,6 +50,10 @@ public final class Driver implements java.sql.Driver {
   private static final String[] PROTOCOLS = {"jdbc", "traindb"};
   private static final String TRAINDB_PROTOCOL = String.format("%s:%s:", (Object[]) PROTOCOLS);
 
+  // Fires the query timeouts of all connections; 100ms ticks, 512 buckets cover 51.2s per round
+  private static final TimerWheel SHARED_TIMER = new TimerWheel("TrainDB-Timer", 100, 512,
+      TimeUnit.MINUTES.toMillis(1));
+
   private static Driver registeredDriver;
   private static boolean logLevelSet;
 
@@ -79,6 +84,15 @@ public final class Driver implements java.sql.Driver {
     Driver.registeredDriver = driver;
   }
 
+  /**
+   * The timer that runs the query timeouts of every connection of the driver.
+   *
+   * @return the shared timer wheel
+   */
+  public static TimerWheel getSharedTimer() {
+    return SHARED_TIMER;
+  }
+
   public static boolean isRegistered() {
     return registeredDriver != null;
   }
@@ -128,33 +142,45 @@ public final class Driver implements java.sql.Driver {
         urlServer = urlServer.substring(0, slashIdx);
       }
 
-      String host;
-      String port;
-      String addr = urlServer.trim();
-      int portIdx = addr.lastIndexOf(':');
-      if (portIdx > -1 && addr.lastIndexOf(']') < portIdx) {
-        host = addr.substring(0, portIdx);
-        port = addr.substring(portIdx + 1);
-        if (port.isEmpty()) {
-          port = DEFAULT_TRAINDB_PORT;
-        } else {
-          try {
-            Integer.parseInt(port);
-          } catch (NumberFormatException e) {
-            return null;
+      // a comma separated list of host[:port], one HostSpec each
+      StringBuilder hosts = new StringBuilder();
+      StringBuilder ports = new StringBuilder();
+      for (String address : urlServer.split(",", -1)) {
+        String host;
+        String port;
+        String addr = address.trim();
+        int portIdx = addr.lastIndexOf(':');
+        if (portIdx > -1 && addr.lastIndexOf(']') < portIdx) {
+          host = addr.substring(0, portIdx);
+          port = addr.substring(portIdx + 1);
+          if (port.isEmpty()) {
+            port = DEFAULT_TRAINDB_PORT;
+          } else {
+            try {
+              Integer.parseInt(port);
+            } catch (NumberFormatException e) {
+              return null;
+            }
           }
+        } else {
+          host = addr;
+          port = DEFAULT_TRAINDB_PORT;
+        }
+
+        if (host.isEmpty()) {
+          host = "localhost";
         }
-      } else {
-        host = addr;
-        port = DEFAULT_TRAINDB_PORT;
-      }
 
-      if (host.isEmpty()) {
-        host = "localhost";
+        if (hosts.length() > 0) {
+          hosts.append(',');
+          ports.append(',');
+        }
+        hosts.append(host);
+        ports.append(port);
       }
 
-      urlProps.setProperty("server.host", host);
-      urlProps.setProperty("server.port", port);
+      urlProps.setProperty("server.host", hosts.toString());
+      urlProps.setProperty("server.port", ports.toString());
       /* urlProps.setProperty("TrainDBNAME", "<unknown>"); */
     } else { // if url starts with "jdbc:traindb:<dbms>//"
       urlProps.setProperty("server.host", "localhost");
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Follows the successive estimates of an incremental query to tell when they have converged:
+ * when every numeric value of an estimate is within a relative error of the same value, at the
+ * same row and column, in the previous estimate. Estimates of a different shape start over.
+ */
+final class EstimateConvergence {
+  private final double relativeError;
+  private double @Nullable [] previous;
+  private int previousColumns;
+  private boolean converged;
+
+  EstimateConvergence(double relativeError) {
+    this.relativeError = relativeError;
+  }
+
+  /**
+   * Tell whether the last estimate seen is within the target of the one before it.
+   *
+   * @return true once the query has converged
+   */
+  boolean isConverged() {
+    return converged;
+  }
+
+  /**
+   * Compare an estimate with the previous one. The rows are read and the result set is put back
+   * before its first row, so it must hold all of its rows.
+   *
+   * @param rs the estimate
+   * @return true if the query has converged
+   * @throws SQLException if the result set cannot be read
+   */
+  boolean observe(ResultSet rs) throws SQLException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    int columnCount = metaData.getColumnCount();
+    int[] numericColumns = new int[columnCount];
+    int numericCount = 0;
+    for (int i = 1; i <= columnCount; ++i) {
+      if (isNumeric(metaData.getColumnType(i))) {
+        numericColumns[numericCount++] = i;
+      }
+    }
+
+    double[] values = new double[Math.max(numericCount * 16, 16)];
+    int count = 0;
+    while (rs.next()) {
+      if (count + numericCount > values.length) {
+        double[] grown = new double[values.length * 2];
+        System.arraycopy(values, 0, grown, 0, count);
+        values = grown;
+      }
+      for (int i = 0; i < numericCount; ++i) {
+        double value = rs.getDouble(numericColumns[i]);
+        values[count++] = rs.wasNull() ? Double.NaN : value;
+      }
+    }
+    rs.beforeFirst();
+
+    double[] previous = this.previous;
+    converged = numericCount > 0 && count > 0 && previous != null
+        && previousColumns == numericCount && previous.length == count
+        && withinError(previous, values, count);
+
+    if (values.length != count) {
+      double[] trimmed = new double[count];
+      System.arraycopy(values, 0, trimmed, 0, count);
+      values = trimmed;
+    }
+    this.previous = values;
+    this.previousColumns = numericCount;
+    return converged;
+  }
+
+  private boolean withinError(double[] previous, double[] current, int count) {
+    for (int i = 0; i < count; ++i) {
+      double before = previous[i];
+      double now = current[i];
+      if (Double.isNaN(before) || Double.isNaN(now)) {
+        if (Double.isNaN(before) != Double.isNaN(now)) {
+          return false;
+        }
+        continue;
+      }
+      if (Math.abs(now - before) > relativeError * Math.abs(now)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isNumeric(int type) {
+    switch (type) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Receives the results of an incremental approximate query as they arrive, see
+ * {@link TrainDBStatement#executeIncremental(String, IncrementalResultListener)}.
+ */
+@FunctionalInterface
+public interface IncrementalResultListener {
+  /**
+   * Called with the first estimate, then with every refinement of it. The result set is read
+   * completely and stays valid after the call. The connection is busy with the query while
+   * this runs, so it must not be used here.
+   *
+   * @param rs         the current result
+   * @param refinement 0 for the first estimate, then 1, 2, ... for its refinements
+   * @return true to receive the next refinement, false to stop the query
+   * @throws SQLException to stop the query with this error
+   */
+  boolean onResult(ResultSet rs, int refinement) throws SQLException;
+}
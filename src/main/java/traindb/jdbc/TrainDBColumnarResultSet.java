@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.core.ColumnBatch;
+import traindb.jdbc.core.ColumnBatchList;
+import traindb.jdbc.core.Field;
+import traindb.jdbc.core.ResultCursor;
+import traindb.jdbc.core.Tuple;
+
+/**
+ * A result set over rows that were received in column batches. Vector columns are converted
+ * batch by batch straight from the message payload; other columns fall back to reading row
+ * by row.
+ */
+public class TrainDBColumnarResultSet extends TrainDBResultSet implements ColumnarResultSet {
+  private final Field[] fields;
+
+  public TrainDBColumnarResultSet(String originalQuery, TrainDBStatement statement,
+                                  Field[] fields, List<Tuple> tuples,
+                                  @Nullable ResultCursor cursor, int maxRows, int maxFieldSize,
+                                  int resultSetType, int resultSetConcurrency,
+                                  int resultSetHoldability, boolean adaptiveFetch)
+      throws SQLException {
+    super(originalQuery, statement, fields, tuples, cursor, maxRows, maxFieldSize, resultSetType,
+        resultSetConcurrency, resultSetHoldability, adaptiveFetch);
+    this.fields = fields;
+  }
+
+  @Override
+  public int getRowCount() throws SQLException {
+    checkClosed();
+    return getRows().size();
+  }
+
+  @Override
+  public double[] getDoubleColumn(int columnIndex) throws SQLException {
+    checkClosed();
+    checkColumnIndex(columnIndex);
+
+    int col = columnIndex - 1;
+    List<Tuple> rows = getRows();
+    double[] values = new double[rows.size()];
+
+    if (rows instanceof ColumnBatchList) {
+      int pos = 0;
+      for (ColumnBatch batch : ((ColumnBatchList) rows).getBatches()) {
+        if (batch.isFixedWidth(col)) {
+          batch.readDoubles(col, values, pos);
+        } else {
+          for (int row = 0; row < batch.getRowCount(); ++row) {
+            values[pos + row] = readDouble(batch.getRow(row), col);
+          }
+        }
+        pos += batch.getRowCount();
+      }
+      return values;
+    }
+
+    for (int row = 0; row < values.length; ++row) {
+      values[row] = readDouble(rows.get(row), col);
+    }
+    return values;
+  }
+
+  @Override
+  public long[] getLongColumn(int columnIndex) throws SQLException {
+    checkClosed();
+    checkColumnIndex(columnIndex);
+
+    int col = columnIndex - 1;
+    List<Tuple> rows = getRows();
+    long[] values = new long[rows.size()];
+    int type = fields[col].type;
+    boolean integerVector = type == Types.BIGINT || type == Types.INTEGER
+        || type == Types.SMALLINT;
+
+    if (rows instanceof ColumnBatchList) {
+      int pos = 0;
+      for (ColumnBatch batch : ((ColumnBatchList) rows).getBatches()) {
+        if (integerVector && batch.isFixedWidth(col)) {
+          batch.readLongs(col, values, pos);
+        } else {
+          for (int row = 0; row < batch.getRowCount(); ++row) {
+            values[pos + row] = readLong(batch.getRow(row), col);
+          }
+        }
+        pos += batch.getRowCount();
+      }
+      return values;
+    }
+
+    for (int row = 0; row < values.length; ++row) {
+      values[row] = readLong(rows.get(row), col);
+    }
+    return values;
+  }
+
+  @Override
+  public boolean[] getNullColumn(int columnIndex) throws SQLException {
+    checkClosed();
+    checkColumnIndex(columnIndex);
+
+    int col = columnIndex - 1;
+    List<Tuple> rows = getRows();
+    boolean[] nulls = new boolean[rows.size()];
+    for (int row = 0; row < nulls.length; ++row) {
+      nulls[row] = rows.get(row).isNull(col);
+    }
+    return nulls;
+  }
+
+  private double readDouble(Tuple tuple, int col) throws SQLException {
+    if (tuple.isNull(col)) {
+      return 0; // SQL NULL
+    }
+    byte[] bytes = tuple.getBuffer(col);
+    int offset = tuple.getOffset(col);
+    int length = tuple.getLength(col);
+    if (fields[col].format == Field.BINARY_FORMAT) {
+      return readDoubleValue(bytes, offset, length, fields[col].type, "double");
+    }
+    return toDouble(new String(bytes, offset, length));
+  }
+
+  private long readLong(Tuple tuple, int col) throws SQLException {
+    if (tuple.isNull(col)) {
+      return 0; // SQL NULL
+    }
+    byte[] bytes = tuple.getBuffer(col);
+    int offset = tuple.getOffset(col);
+    int length = tuple.getLength(col);
+    if (fields[col].format == Field.BINARY_FORMAT) {
+      return readLongValue(bytes, offset, length, fields[col].type, Long.MIN_VALUE,
+          Long.MAX_VALUE, "long");
+    }
+    return toLong(new String(bytes, offset, length));
+  }
+}
@@ -30,21 +30,36 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.text.MessageFormat;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import traindb.jdbc.core.ConnectionFactory;
 import traindb.jdbc.core.QueryExecutor;
 import traindb.jdbc.util.TrainDBJdbcException;
 import traindb.jdbc.util.TrainDBState;
 
 public class TrainDBConnection implements Connection {
+  private static final AtomicInteger IO_THREAD_COUNTER = new AtomicInteger();
+
   private final Properties clientInfo;
 
   private final String url;
 
   private final QueryExecutor queryExecutor;
 
+  /**
+   * Runs the asynchronous executions of this connection. Created on first use.
+   */
+  private @Nullable ExecutorService ioExecutor;
+
   TrainDBConnection(String url, Properties info) throws SQLException {
     this.url = url;
 
@@ -61,6 +76,52 @@ public class TrainDBConnection implements Connection {
     return queryExecutor;
   }
 
+  /**
+   * Runs a task on the I/O thread of the connection. The connection owns a single thread for
+   * this, so tasks run one at a time in submission order.
+   *
+   * @param task the work to run
+   * @param <T>  the type of the result
+   * @return a future that completes with the result of the task or the exception it threw
+   */
+  <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+    CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      getIoExecutor().execute(() -> {
+        try {
+          future.complete(task.call());
+        } catch (Throwable t) {
+          future.completeExceptionally(t);
+        }
+      });
+    } catch (SQLException | RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  private synchronized ExecutorService getIoExecutor() throws SQLException {
+    checkClosed();
+    if (ioExecutor == null) {
+      ioExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TrainDB-IO-" + IO_THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return ioExecutor;
+  }
+
+  /**
+   * Cancel the query that is currently running on this connection, if any.
+   *
+   * @throws SQLException if the connection is closed
+   */
+  public void cancelQuery() throws SQLException {
+    checkClosed();
+    queryExecutor.sendQueryCancel();
+  }
+
   @Override
   public Statement createStatement() throws SQLException {
     return createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
@@ -121,14 +182,15 @@ public class TrainDBConnection implements Connection {
 
   @Override
   public <T> T unwrap(Class<T> iface) throws SQLException {
-    // TODO Auto-generated method stub
-    return null;
+    if (iface.isAssignableFrom(getClass())) {
+      return iface.cast(this);
+    }
+    throw new SQLException("Cannot unwrap to " + iface.getName());
   }
 
   @Override
   public boolean isWrapperFor(Class<?> iface) throws SQLException {
-    // TODO Auto-generated method stub
-    return false;
+    return iface.isAssignableFrom(getClass());
   }
 
   @Override
@@ -169,8 +231,16 @@ public class TrainDBConnection implements Connection {
 
   @Override
   public void close() throws SQLException {
-    // TODO Auto-generated method stub
-
+    ExecutorService ioExecutor;
+    synchronized (this) {
+      ioExecutor = this.ioExecutor;
+      this.ioExecutor = null;
+    }
+    if (ioExecutor != null) {
+      // queued executions still run, and fail on the closed connection
+      ioExecutor.shutdown();
+    }
+    queryExecutor.close();
   }
 
   @Override
@@ -319,8 +389,12 @@ public class TrainDBConnection implements Connection {
 
   @Override
   public boolean isValid(int timeout) throws SQLException {
-    // TODO Auto-generated method stub
-    return false;
+    if (timeout < 0) {
+      throw new TrainDBJdbcException(MessageFormat.format("Invalid timeout ({0}<0).", timeout),
+          TrainDBState.INVALID_PARAMETER_VALUE);
+    }
+    // the protocol has no ping; a connection that saw an I/O error is closed already
+    return queryExecutor.isAlive();
   }
 
   @Override
@@ -34,23 +34,38 @@ import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.concurrent.CompletableFuture;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import traindb.jdbc.core.ParameterList;
+import traindb.jdbc.core.QueryExecutor;
+import traindb.jdbc.util.ByteConverter;
 import traindb.jdbc.util.TrainDBJdbcException;
 import traindb.jdbc.util.TrainDBState;
 
 public class TrainDBPreparedStatement extends TrainDBStatement implements PreparedStatement {
+  /**
+   * Maximum number of rows of a batch that are collapsed into one multi-row INSERT.
+   */
+  private static final int MAX_ROWS_PER_INSERT = 128;
+
   protected final TrainDBConnection connection;
   protected final String sql;
   protected final ParameterList preparedParameters; // Parameter values for prepared statement.
+  // Copies of the parameter values added with addBatch(), null if there are none
+  private @Nullable ArrayList<ParameterList> batchParameters = null;
 
   public TrainDBPreparedStatement(TrainDBConnection connection, String sql, int rsType,
-                                  int rsConcurrency, int rsHoldability) {
+                                  int rsConcurrency, int rsHoldability) throws SQLException {
     super(connection, rsType, rsConcurrency, rsHoldability);
 
     this.connection = connection;
     this.sql = sql;
-    this.preparedParameters = new ParameterList(sql);
+    this.preparedParameters =
+        new ParameterList(connection.getQueryExecutor().parseSql(sql).getBindCount());
   }
 
   public boolean executeWithFlags(int flags) throws SQLException {
@@ -71,15 +86,26 @@ public class TrainDBPreparedStatement extends TrainDBStatement implements Prepar
 
     checkClosed();
 
+    if (usesTimeBudget(sql)) {
+      return executeWithTimeBudget(
+          connection.getQueryExecutor().getNativeSql(sql, preparedParameters));
+    }
+
     StatementResultHandler handler = new StatementResultHandler();
 
     synchronized (this) {
       result = null;
+      clearWarnings();
     }
 
-    System.out.println("==> Execute Start");
-    connection.getQueryExecutor().execute(sql, preparedParameters, handler);
-    System.out.println("==> Execute End");
+    try {
+      startTimer();
+      boolean streaming = (flags & QUERY_NO_STREAMING) == 0;
+      connection.getQueryExecutor().execute(sql, preparedParameters, handler,
+          streaming ? getStreamingFetchSize() : 0, streaming && getStreamingAdaptiveFetch());
+    } finally {
+      killTimerTask();
+    }
 
     synchronized (this) {
       checkClosed();
@@ -87,6 +113,7 @@ public class TrainDBPreparedStatement extends TrainDBStatement implements Prepar
       ResultWrapper currentResult = handler.getResults();
 
       result = currentResult;
+      startEstimates();
     }
 
     synchronized (this) {
@@ -103,6 +130,14 @@ public class TrainDBPreparedStatement extends TrainDBStatement implements Prepar
     preparedParameters.setIntParameter(paramIndex, x);
   }
 
+  /**
+   * Bind a value in binary, see {@link ByteConverter}. It is sent as is to a prepared
+   * statement, and rendered as a literal otherwise.
+   */
+  protected void bindBytes(int paramIndex, byte[] b, int oid) throws SQLException {
+    preparedParameters.setBinaryParameter(paramIndex, b, oid);
+  }
+
   protected void bindLiteral(int paramIndex, String s, int oid) throws SQLException {
     preparedParameters.setLiteralParameter(paramIndex, s, oid);
   }
@@ -114,6 +149,23 @@ public class TrainDBPreparedStatement extends TrainDBStatement implements Prepar
         TrainDBState.WRONG_OBJECT_TYPE);
   }
 
+  /**
+   * Executes the query on the I/O thread of the connection, see
+   * {@link TrainDBStatement#executeQueryAsync(String)}. The parameters must not be changed until
+   * the future completes.
+   *
+   * @return a future that completes with the result set
+   */
+  public CompletableFuture<ResultSet> executeQueryAsync() {
+    return connection.supplyAsync(() -> {
+      if (!executeWithFlags(QUERY_NO_STREAMING)) {
+        throw new TrainDBJdbcException("No results were returned by the query.",
+            TrainDBState.NO_DATA);
+      }
+      return getSingleResultSet();
+    });
+  }
+
   @Override
   public ResultSet executeQuery() throws SQLException {
     if (!executeWithFlags(0)) {
@@ -126,8 +178,12 @@ public class TrainDBPreparedStatement extends TrainDBStatement implements Prepar
 
   @Override
   public int executeUpdate() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    if (executeWithFlags(QUERY_NO_STREAMING)) {
+      throw new TrainDBJdbcException("A result was returned when none was expected.",
+          TrainDBState.TOO_MANY_RESULTS);
+    }
+
+    return getNoResultUpdateCount();
   }
 
   @Override
@@ -151,75 +207,39 @@ public class TrainDBPreparedStatement extends TrainDBStatement implements Prepar
   @Override
   public void setShort(int parameterIndex, short x) throws SQLException {
     checkClosed();
-	    /*
-	    if (connection.binaryTransferSend(Oid.INT2)) {
-	      byte[] val = new byte[2];
-	      ByteConverter.int2(val, 0, x);
-	      bindBytes(parameterIndex, val, Oid.INT2);
-	      return;
-	    }
-	    */
-
-    bindLiteral(parameterIndex, Integer.toString(x), Types.SMALLINT);
+    byte[] val = new byte[2];
+    ByteConverter.int2(val, 0, x);
+    bindBytes(parameterIndex, val, Types.SMALLINT);
   }
 
   @Override
   public void setInt(int parameterIndex, int x) throws SQLException {
     checkClosed();
-	    /*
-	    if (connection.binaryTransferSend(Oid.INT4)) {
-	      byte[] val = new byte[4];
-	      ByteConverter.int4(val, 0, x);
-	      bindBytes(parameterIndex, val, Oid.INT4);
-	      return;
-	    }
-	    */
-
     bindInt(parameterIndex, x);
   }
 
   @Override
   public void setLong(int parameterIndex, long x) throws SQLException {
     checkClosed();
-		/*
-	    if (connection.binaryTransferSend(Oid.INT8)) {
-	      byte[] val = new byte[8];
-	      ByteConverter.int8(val, 0, x);
-	      bindBytes(parameterIndex, val, Oid.INT8);
-	      return;
-	    }
-	    */
-
-    bindLiteral(parameterIndex, Long.toString(x), Types.BIGINT);
+    byte[] val = new byte[8];
+    ByteConverter.int8(val, 0, x);
+    bindBytes(parameterIndex, val, Types.BIGINT);
   }
 
   @Override
   public void setFloat(int parameterIndex, float x) throws SQLException {
     checkClosed();
-		/*
-	    if (connection.binaryTransferSend(Oid.FLOAT4)) {
-	      byte[] val = new byte[4];
-	      ByteConverter.float4(val, 0, x);
-	      bindBytes(parameterIndex, val, Oid.FLOAT4);
-	      return;
-	    }
-	    */
-    bindLiteral(parameterIndex, Float.toString(x), Types.FLOAT);
+    byte[] val = new byte[4];
+    ByteConverter.float4(val, 0, x);
+    bindBytes(parameterIndex, val, Types.FLOAT);
   }
 
   @Override
   public void setDouble(int parameterIndex, double x) throws SQLException {
     checkClosed();
-	    /*
-	    if (connection.binaryTransferSend(Oid.FLOAT8)) {
-	      byte[] val = new byte[8];
-	      ByteConverter.float8(val, 0, x);
-	      bindBytes(parameterIndex, val, Oid.FLOAT8);
-	      return;
-	    }
-	    */
-
-    bindLiteral(parameterIndex, Double.toString(x), Types.DOUBLE);
+    byte[] val = new byte[8];
+    ByteConverter.float8(val, 0, x);
+    bindBytes(parameterIndex, val, Types.DOUBLE);
   }
 
   @Override
@@ -358,8 +378,77 @@ public class TrainDBPreparedStatement extends TrainDBStatement implements Prepar
 
   @Override
   public void addBatch() throws SQLException {
-    // TODO Auto-generated method stub
+    checkClosed();
+
+    for (int i = 1; i <= preparedParameters.getParamCount(); ++i) {
+      if (!preparedParameters.isSet(i)) {
+        throw new TrainDBJdbcException(
+            MessageFormat.format("No value specified for parameter {0}.", i),
+            TrainDBState.INVALID_PARAMETER_VALUE);
+      }
+    }
+
+    if (batchParameters == null) {
+      batchParameters = new ArrayList<ParameterList>();
+    }
+    batchParameters.add(preparedParameters.copy());
+  }
+
+  @Override
+  public void addBatch(String sql) throws SQLException {
+    checkClosed();
+    throw new TrainDBJdbcException(
+        "Can''t use query methods that take a query string on a PreparedStatement.",
+        TrainDBState.WRONG_OBJECT_TYPE);
+  }
+
+  @Override
+  public void clearBatch() throws SQLException {
+    super.clearBatch();
+    if (batchParameters != null) {
+      batchParameters.clear();
+    }
+  }
+
+  /**
+   * Executes the query once for every parameter set of the batch, in one pipeline. With
+   * {@code reWriteBatchedInserts}, a single-row INSERT is sent instead as INSERTs of up to
+   * {@value #MAX_ROWS_PER_INSERT} rows each, whose update counts are
+   * {@link java.sql.Statement#SUCCESS_NO_INFO}.
+   *
+   * @return the update count of every parameter set
+   * @throws java.sql.BatchUpdateException if an execution fails or returns a result set
+   */
+  @Override
+  public int[] executeBatch() throws SQLException {
+    checkClosed();
+
+    ArrayList<ParameterList> batchParameters = this.batchParameters;
+    if (batchParameters == null || batchParameters.isEmpty()) {
+      return new int[0];
+    }
+
+    ParameterList[] rows = batchParameters.toArray(new ParameterList[0]);
+    clearBatch();
+
+    QueryExecutor queryExecutor = connection.getQueryExecutor();
+    if (rows.length > 1 && queryExecutor.getRewriteBatchedInserts()
+        && queryExecutor.parseSql(sql).isMultiRowInsert()) {
+      int statements = (rows.length + MAX_ROWS_PER_INSERT - 1) / MAX_ROWS_PER_INSERT;
+      String[] queries = new String[statements];
+      int[] rowCounts = new int[statements];
+      for (int i = 0; i < statements; ++i) {
+        int from = i * MAX_ROWS_PER_INSERT;
+        int to = Math.min(rows.length, from + MAX_ROWS_PER_INSERT);
+        queries[i] = queryExecutor.getMultiRowNativeSql(sql, rows, from, to);
+        rowCounts[i] = to - from;
+      }
+      return executeBatchQueries(queries, null, rowCounts);
+    }
 
+    String[] queries = new String[rows.length];
+    Arrays.fill(queries, sql);
+    return executeBatchQueries(queries, rows, null);
   }
 
   @Override
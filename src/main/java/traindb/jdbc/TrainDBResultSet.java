@@ -14,6 +14,7 @@
 
 package traindb.jdbc;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -44,10 +45,17 @@ import java.util.Map;
 import java.util.TreeMap;
 import org.checkerframework.checker.index.qual.Positive;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.core.ColumnLabelIndex;
+import traindb.jdbc.core.DecodeCache;
+import traindb.jdbc.core.Encoding;
 import traindb.jdbc.core.Field;
+import traindb.jdbc.core.QueryExecutor;
 import traindb.jdbc.core.ResultCursor;
+import traindb.jdbc.core.SpilledTupleList;
+import traindb.jdbc.core.StreamingCursor;
 import traindb.jdbc.core.Tuple;
 import traindb.jdbc.util.ByteConverter;
+import traindb.jdbc.util.NumberParser;
 import traindb.jdbc.util.TrainDBJdbcException;
 import traindb.jdbc.util.TrainDBState;
 
@@ -65,11 +73,18 @@ public class TrainDBResultSet implements ResultSet {
   private static final double LONG_MIN_DOUBLE = StrictMath.nextUp((double) Long.MIN_VALUE);
   private final String originalQuery;
   private final Connection connection;
+  private final Encoding encoding;
+  // Shares the strings decoded from repeated values, if decodeCacheSize is set
+  private final @Nullable DecodeCache decodeCache;
   private final TrainDBStatement statement;
-  private final List<Tuple> rows;
+  private @Nullable List<Tuple> rows; // Current page of results, null once closed.
+  private @Nullable ResultCursor cursor; // Cursor for fetching additional data.
+  private @Nullable List<Tuple> nextRows; // Page fetched ahead of time by isLast().
   private final int maxRows; // Maximum rows in this resultset (might be 0).
   private final int maxFieldSize; // Maximum field size in this resultset (might be 0).
+  private final int resultsettype;
   private final int resultsetconcurrency;
+  private int fetchSize; // Current fetch size (might be 0).
   private final Field[] fields;
   private int currentRow = -1; // Index into 'rows' of our currrent row (0-based)
   private int rowOffset; // Offset of row 0 in the actual resultset
@@ -79,7 +94,7 @@ public class TrainDBResultSet implements ResultSet {
   private boolean onInsertRow = false;
 
   // Speed up findColumn by caching lookups
-  private @Nullable Map<String, Integer> columnNameIndexMap;
+  private @Nullable ColumnLabelIndex columnLabelIndex;
 
   private @Nullable ResultSetMetaData rsMetaData;
 
@@ -97,13 +112,17 @@ public class TrainDBResultSet implements ResultSet {
 
     this.originalQuery = originalQuery;
     this.connection = statement.getConnection();
+    QueryExecutor queryExecutor = ((TrainDBConnection) connection).getQueryExecutor();
+    this.encoding = queryExecutor.getEncoding();
+    int decodeCacheSize = queryExecutor.getDecodeCacheSize();
+    this.decodeCache = decodeCacheSize > 0 ? new DecodeCache(encoding, decodeCacheSize) : null;
     this.statement = statement;
     this.fields = fields;
     this.rows = tuples;
-    // this.cursor = cursor;
+    this.cursor = cursor;
     this.maxRows = maxRows;
     this.maxFieldSize = maxFieldSize;
-    // this.resultsettype = rsType;
+    this.resultsettype = resultSetType;
     this.resultsetconcurrency = resultSetConcurrency;
     // this.adaptiveFetch = adaptiveFetch;
 
@@ -111,6 +130,14 @@ public class TrainDBResultSet implements ResultSet {
     // this.lastUsedFetchSize = tuples.size();
   }
 
+  /**
+   * Tell whether all the rows of the result are in memory, so that reading them does not use
+   * the connection.
+   */
+  boolean isFullyRead() {
+    return cursor == null;
+  }
+
   public static short toShort(@Nullable String s) throws SQLException {
     if (s != null) {
       try {
@@ -231,6 +258,21 @@ public class TrainDBResultSet implements ResultSet {
   }
 
   byte[] getRawValue(@Positive int column) throws SQLException {
+    if (isNullValue(column)) {
+      return null;
+    }
+    return thisRow.get(column - 1);
+  }
+
+  /**
+   * Check that the result set is positioned on a row and record whether the given column of
+   * that row is NULL. Getters then read the value in place from {@link Tuple#getBuffer(int)}.
+   *
+   * @param column the first column is 1, the second is 2, ...
+   * @return true if the value is SQL NULL
+   * @throws SQLException if the result set is closed, not on a row or the column is invalid
+   */
+  private boolean isNullValue(@Positive int column) throws SQLException {
     checkClosed();
 
     if (thisRow == null) {
@@ -240,9 +282,8 @@ public class TrainDBResultSet implements ResultSet {
     }
 
     checkColumnIndex(column);
-    byte[] bytes = thisRow.get(column - 1);
-    wasNullFlag = bytes == null;
-    return bytes;
+    wasNullFlag = thisRow.isNull(column - 1);
+    return wasNullFlag;
   }
 
   private void initRowBuffer() {
@@ -256,7 +297,14 @@ public class TrainDBResultSet implements ResultSet {
     }
   }
 
-  private void checkColumnIndex(@Positive int column) throws SQLException {
+  /**
+   * The rows currently held by the result set.
+   */
+  List<Tuple> getRows() {
+    return rows;
+  }
+
+  void checkColumnIndex(@Positive int column) throws SQLException {
     if (column < 1 || column > fields.length) {
       throw new TrainDBJdbcException(
           MessageFormat.format("The column index is out of range: {0}, number of columns: {1}.",
@@ -278,6 +326,22 @@ public class TrainDBResultSet implements ResultSet {
     return string;
   }
 
+  /**
+   * Check that the result set can move backwards, or to a given row. Scrollable result sets
+   * hold all of their rows. So does a forward-only one whose rows came in a single batch;
+   * otherwise the rows it passed are gone.
+   *
+   * @throws SQLException if the result set is closed, or forward-only and read in batches
+   */
+  protected void checkScrollable() throws SQLException {
+    checkClosed();
+    if (resultsettype == ResultSet.TYPE_FORWARD_ONLY && (cursor != null || rowOffset > 0)) {
+      throw new TrainDBJdbcException(
+          "Operation requires a scrollable ResultSet, but this ResultSet is FORWARD_ONLY.",
+          TrainDBState.INVALID_CURSOR_STATE);
+    }
+  }
+
   protected void checkClosed() throws SQLException {
     if (rows == null) {
       throw new TrainDBJdbcException("This ResultSet is closed.", TrainDBState.OBJECT_NOT_IN_STATE);
@@ -286,14 +350,15 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public <T> T unwrap(Class<T> iface) throws SQLException {
-    // TODO Auto-generated method stub
-    return null;
+    if (iface.isAssignableFrom(getClass())) {
+      return iface.cast(this);
+    }
+    throw new SQLException("Cannot unwrap to " + iface.getName());
   }
 
   @Override
   public boolean isWrapperFor(Class<?> iface) throws SQLException {
-    // TODO Auto-generated method stub
-    return false;
+    return iface.isAssignableFrom(getClass());
   }
 
   @Override
@@ -306,10 +371,13 @@ public class TrainDBResultSet implements ResultSet {
     }
 
     if (currentRow + 1 >= rows.size()) {
-      currentRow = rows.size();
-      thisRow = null;
-      rowBuffer = null;
-      return false; // End of the resultset.
+      if (!fetchMoreRows()) {
+        currentRow = rows.size();
+        thisRow = null;
+        rowBuffer = null;
+        return false; // End of the resultset.
+      }
+      currentRow = 0;
     } else {
       currentRow++;
     }
@@ -318,10 +386,80 @@ public class TrainDBResultSet implements ResultSet {
     return true;
   }
 
+  /**
+   * Replace the current page of rows with the next batch from the cursor, if there is one.
+   * Only forward-only result sets get a cursor, so rows that have been passed are dropped.
+   *
+   * @return true if a non-empty batch was fetched
+   * @throws SQLException if the fetch fails
+   */
+  private boolean fetchMoreRows() throws SQLException {
+    List<Tuple> nextRows = this.nextRows;
+    this.nextRows = null;
+    if (nextRows == null) {
+      nextRows = fetchNextRows();
+      if (nextRows == null) {
+        return false;
+      }
+    }
+
+    rowOffset += rows.size();
+    releaseRows(rows);
+    rows = nextRows;
+    return true;
+  }
+
+  /**
+   * Fetch the next batch of rows from the cursor.
+   *
+   * @return the rows, or null if there are no more
+   * @throws SQLException if the fetch fails
+   */
+  private @Nullable List<Tuple> fetchNextRows() throws SQLException {
+    ResultCursor cursor = this.cursor;
+    if (!(cursor instanceof StreamingCursor)) {
+      return null;
+    }
+
+    List<Tuple> nextRows = ((TrainDBConnection) connection).getQueryExecutor()
+        .fetch((StreamingCursor) cursor, fetchSize);
+    if (nextRows.isEmpty()) {
+      this.cursor = null;
+      return null;
+    }
+    return nextRows;
+  }
+
   @Override
   public void close() throws SQLException {
-    // TODO Auto-generated method stub
+    if (rows == null) {
+      return;
+    }
+
+    ResultCursor cursor = this.cursor;
+    this.cursor = null;
+    if (cursor != null) {
+      cursor.close();
+    }
+
+    List<Tuple> nextRows = this.nextRows;
+    this.nextRows = null;
+    if (nextRows != null) {
+      releaseRows(nextRows);
+    }
+    releaseRows(rows);
+    rows = null;
+    thisRow = null;
+    rowBuffer = null;
+  }
 
+  /**
+   * Free the resources held by a page of rows, i.e. delete its spill file if it has one.
+   */
+  private static void releaseRows(List<Tuple> rows) {
+    if (rows instanceof SpilledTupleList) {
+      ((SpilledTupleList) rows).close();
+    }
   }
 
   @Override
@@ -332,12 +470,61 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public String getString(int columnIndex) throws SQLException {
-    byte[] value = getRawValue(columnIndex);
-    if (value == null) {
+    if (isNullValue(columnIndex)) {
       return null;
     }
 
-    return trimString(columnIndex, new String(value));
+    int col = columnIndex - 1;
+    if (isBinary(columnIndex)) {
+      return trimString(columnIndex, readBinaryString(col));
+    }
+    return trimString(columnIndex,
+        decodeString(thisRow.getBuffer(col), thisRow.getOffset(col), thisRow.getLength(col)));
+  }
+
+  /**
+   * Decode a value sent in text format with the encoding of the connection.
+   */
+  private String decodeString(byte[] bytes, int offset, int length) throws SQLException {
+    try {
+      DecodeCache decodeCache = this.decodeCache;
+      return decodeCache != null
+          ? decodeCache.decode(bytes, offset, length)
+          : encoding.decode(bytes, offset, length);
+    } catch (IOException ioe) {
+      throw new TrainDBJdbcException(
+          "Invalid character data was found.  This is most likely caused by stored data "
+              + "containing characters that are invalid for the character set the database "
+              + "was created in.",
+          TrainDBState.DATA_ERROR, ioe);
+    }
+  }
+
+  /**
+   * Text form of a value that was sent in binary format.
+   */
+  private String readBinaryString(int col) throws SQLException {
+    byte[] bytes = thisRow.getBuffer(col);
+    int offset = thisRow.getOffset(col);
+    int type = fields[col].type;
+    switch (type) {
+      case Types.SMALLINT:
+        return Short.toString(ByteConverter.int2(bytes, offset));
+      case Types.INTEGER:
+        return Integer.toString(ByteConverter.int4(bytes, offset));
+      case Types.BIGINT:
+        return Long.toString(ByteConverter.int8(bytes, offset));
+      case Types.FLOAT:
+        return Float.toString(ByteConverter.float4(bytes, offset));
+      case Types.DOUBLE:
+        return Double.toString(ByteConverter.float8(bytes, offset));
+      case Types.NUMERIC:
+        return ByteConverter.numeric(bytes, offset, thisRow.getLength(col)).toString();
+      default:
+        throw new TrainDBJdbcException(
+            MessageFormat.format("Cannot convert the column of type {0} to requested type {1}.",
+                JDBCType.valueOf(type).getName(), "String"), TrainDBState.DATA_TYPE_MISMATCH);
+    }
   }
 
   @Override
@@ -354,18 +541,30 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public short getShort(int columnIndex) throws SQLException {
-    byte[] value = getRawValue(columnIndex);
-    if (value == null) {
+    if (isNullValue(columnIndex)) {
       return 0; // SQL NULL
     }
 
     if (isBinary(columnIndex)) {
       int col = columnIndex - 1;
+      byte[] value = thisRow.getBuffer(col);
+      int offset = thisRow.getOffset(col);
       int type = fields[col].type;
       if (type == Types.SMALLINT) {
-        return ByteConverter.int2(value, 0);
+        return ByteConverter.int2(value, offset);
+      }
+      return (short) readLongValue(value, offset, thisRow.getLength(col), type,
+          Short.MIN_VALUE, Short.MAX_VALUE, "short");
+    }
+
+    if (encoding.hasAsciiNumbers()) {
+      int col = columnIndex - 1;
+      try {
+        return (short) NumberParser.parseLong(thisRow.getBuffer(col),
+            thisRow.getOffset(col), thisRow.getLength(col), Short.MIN_VALUE, Short.MAX_VALUE);
+      } catch (NumberFormatException ignored) {
+        // not in a plain form, parse the text below
       }
-      return (short) readLongValue(value, type, Short.MIN_VALUE, Short.MAX_VALUE, "short");
     }
 
     return toShort(getString(columnIndex));
@@ -373,18 +572,30 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public int getInt(int columnIndex) throws SQLException {
-    byte[] value = getRawValue(columnIndex);
-    if (value == null) {
+    if (isNullValue(columnIndex)) {
       return 0; // SQL NULL
     }
 
     if (isBinary(columnIndex)) {
       int col = columnIndex - 1;
+      byte[] value = thisRow.getBuffer(col);
+      int offset = thisRow.getOffset(col);
       int type = fields[col].type;
       if (type == Types.INTEGER) {
-        return ByteConverter.int4(value, 0);
+        return ByteConverter.int4(value, offset);
+      }
+      return (int) readLongValue(value, offset, thisRow.getLength(col), type,
+          Integer.MIN_VALUE, Integer.MAX_VALUE, "int");
+    }
+
+    if (encoding.hasAsciiNumbers()) {
+      int col = columnIndex - 1;
+      try {
+        return (int) NumberParser.parseLong(thisRow.getBuffer(col),
+            thisRow.getOffset(col), thisRow.getLength(col), Integer.MIN_VALUE, Integer.MAX_VALUE);
+      } catch (NumberFormatException ignored) {
+        // not in a plain form, parse the text below
       }
-      return (int) readLongValue(value, type, Integer.MIN_VALUE, Integer.MAX_VALUE, "int");
     }
 
     return toInt(getString(columnIndex));
@@ -392,18 +603,30 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public long getLong(int columnIndex) throws SQLException {
-    byte[] value = getRawValue(columnIndex);
-    if (value == null) {
+    if (isNullValue(columnIndex)) {
       return 0; // SQL NULL
     }
 
     if (isBinary(columnIndex)) {
       int col = columnIndex - 1;
+      byte[] value = thisRow.getBuffer(col);
+      int offset = thisRow.getOffset(col);
       int type = fields[col].type;
       if (type == Types.BIGINT) {
-        return ByteConverter.int8(value, 0);
+        return ByteConverter.int8(value, offset);
+      }
+      return readLongValue(value, offset, thisRow.getLength(col), type,
+          Long.MIN_VALUE, Long.MAX_VALUE, "long");
+    }
+
+    if (encoding.hasAsciiNumbers()) {
+      int col = columnIndex - 1;
+      try {
+        return NumberParser.parseLong(thisRow.getBuffer(col),
+            thisRow.getOffset(col), thisRow.getLength(col), Long.MIN_VALUE, Long.MAX_VALUE);
+      } catch (NumberFormatException ignored) {
+        // not in a plain form, parse the text below
       }
-      return readLongValue(value, type, Long.MIN_VALUE, Long.MAX_VALUE, "long");
     }
 
     return toLong(getString(columnIndex));
@@ -411,18 +634,29 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public float getFloat(int columnIndex) throws SQLException {
-    byte[] value = getRawValue(columnIndex);
-    if (value == null) {
+    if (isNullValue(columnIndex)) {
       return 0; // SQL NULL
     }
 
     if (isBinary(columnIndex)) {
       int col = columnIndex - 1;
+      byte[] value = thisRow.getBuffer(col);
+      int offset = thisRow.getOffset(col);
       int type = fields[col].type;
       if (type == Types.FLOAT) {
-        return ByteConverter.float4(value, 0);
+        return ByteConverter.float4(value, offset);
+      }
+      return (float) readDoubleValue(value, offset, thisRow.getLength(col), type, "float");
+    }
+
+    if (encoding.hasAsciiNumbers()) {
+      int col = columnIndex - 1;
+      try {
+        return NumberParser.parseFloat(thisRow.getBuffer(col),
+            thisRow.getOffset(col), thisRow.getLength(col));
+      } catch (NumberFormatException ignored) {
+        // not in a plain form, parse the text below
       }
-      return (float) readDoubleValue(value, type, "float");
     }
 
     return toFloat(getString(columnIndex));
@@ -430,18 +664,29 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public double getDouble(int columnIndex) throws SQLException {
-    byte[] value = getRawValue(columnIndex);
-    if (value == null) {
+    if (isNullValue(columnIndex)) {
       return 0; // SQL NULL
     }
 
     if (isBinary(columnIndex)) {
       int col = columnIndex - 1;
+      byte[] value = thisRow.getBuffer(col);
+      int offset = thisRow.getOffset(col);
       int type = fields[col].type;
       if (type == Types.DOUBLE) {
-        return ByteConverter.float8(value, 0);
+        return ByteConverter.float8(value, offset);
+      }
+      return readDoubleValue(value, offset, thisRow.getLength(col), type, "double");
+    }
+
+    if (encoding.hasAsciiNumbers()) {
+      int col = columnIndex - 1;
+      try {
+        return NumberParser.parseDouble(thisRow.getBuffer(col),
+            thisRow.getOffset(col), thisRow.getLength(col));
+      } catch (NumberFormatException ignored) {
+        // not in a plain form, parse the text below
       }
-      return readDoubleValue(value, type, "double");
     }
 
     return toDouble(getString(columnIndex));
@@ -614,8 +859,7 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public Object getObject(int columnIndex) throws SQLException {
-    byte[] value = getRawValue(columnIndex);
-    if (value == null) {
+    if (isNullValue(columnIndex)) {
       return null;
     }
 
@@ -724,16 +968,16 @@ public class TrainDBResultSet implements ResultSet {
   }
 
   private int findColumnIndex(String columnName) {
-    if (columnNameIndexMap == null) {
-      columnNameIndexMap = createColumnNameIndexMap(fields);
-    }
-
-    Integer index = columnNameIndexMap.get(columnName);
-    if (index != null) {
-      return index;
+    ColumnLabelIndex columnLabelIndex = this.columnLabelIndex;
+    if (columnLabelIndex == null) {
+      // the index of the row description, unless the fields were built some other way
+      columnLabelIndex = fields.length > 0 ? fields[0].getLabelIndex() : null;
+      if (columnLabelIndex == null) {
+        columnLabelIndex = ColumnLabelIndex.of(fields, null);
+      }
+      this.columnLabelIndex = columnLabelIndex;
     }
-
-    return 0;
+    return columnLabelIndex.indexOf(columnName);
   }
 
   @Override
@@ -803,13 +1047,28 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public boolean isLast() throws SQLException {
-    // TODO Auto-generated method stub
-    return false;
+    checkClosed();
+    if (onInsertRow) {
+      return false;
+    }
+
+    final int rows_size = rows.size();
+    if (rows_size == 0 || currentRow != rows_size - 1) {
+      return false; // No rows, or not on the last row of this batch.
+    }
+    if (cursor == null || nextRows != null) {
+      // The last batch, or the next one is known to have rows.
+      return nextRows == null;
+    }
+
+    // Fetch the next batch to tell whether there is one; next() will move to it.
+    nextRows = fetchNextRows();
+    return nextRows == null;
   }
 
   @Override
   public void beforeFirst() throws SQLException {
-    // checkScrollable();
+    checkScrollable();
 
     if (!rows.isEmpty()) {
       currentRow = -1;
@@ -822,7 +1081,7 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public void afterLast() throws SQLException {
-    // checkScrollable();
+    checkScrollable();
 
     final int rows_size = rows.size();
 
@@ -837,7 +1096,7 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public boolean first() throws SQLException {
-    // checkScrollable();
+    checkScrollable();
 
     if (rows.size() <= 0) {
       return false;
@@ -852,7 +1111,7 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public boolean last() throws SQLException {
-    // checkScrollable();
+    checkScrollable();
 
     List<Tuple> rows = this.rows;
     final int rows_size = rows.size();
@@ -885,14 +1144,50 @@ public class TrainDBResultSet implements ResultSet {
   }
 
   @Override
-  public boolean absolute(int row) throws SQLException {
-    // TODO Auto-generated method stub
-    return false;
+  public boolean absolute(int index) throws SQLException {
+    checkScrollable();
+
+    // index is 1-based, but internally we use 0-based indices
+    int internalIndex;
+
+    if (index == 0) {
+      beforeFirst();
+      return false;
+    }
+
+    final int rows_size = rows.size();
+
+    // if index<0, count from the end of the result set, but check
+    // to be sure that it is not beyond the first index
+    if (index < 0) {
+      if (index >= -rows_size) {
+        internalIndex = rows_size + index;
+      } else {
+        beforeFirst();
+        return false;
+      }
+    } else {
+      // must be the case that index>0,
+      // find the correct place, assuming that
+      // the index is not too large
+      if (index <= rows_size) {
+        internalIndex = index - 1;
+      } else {
+        afterLast();
+        return false;
+      }
+    }
+
+    currentRow = internalIndex;
+    initRowBuffer();
+    onInsertRow = false;
+
+    return true;
   }
 
   @Override
   public boolean relative(int rows) throws SQLException {
-    // checkScrollable();
+    checkScrollable();
 
     if (onInsertRow) {
       throw new TrainDBJdbcException("Can''t use relative move methods while on the insert row.",
@@ -910,7 +1205,7 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public boolean previous() throws SQLException {
-    // checkScrollable();
+    checkScrollable();
 
     if (onInsertRow) {
       throw new TrainDBJdbcException("Can''t use relative move methods while on the insert row.",
@@ -943,20 +1238,24 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public int getFetchSize() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    checkClosed();
+    return fetchSize;
   }
 
   @Override
   public void setFetchSize(int rows) throws SQLException {
-    // TODO Auto-generated method stub
-
+    checkClosed();
+    if (rows < 0) {
+      throw new TrainDBJdbcException("Fetch size must be a value greater to or equal to 0.",
+          TrainDBState.INVALID_PARAMETER_VALUE);
+    }
+    fetchSize = rows;
   }
 
   @Override
   public int getType() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    checkClosed();
+    return resultsettype;
   }
 
   @Override
@@ -1448,8 +1747,7 @@ public class TrainDBResultSet implements ResultSet {
 
   @Override
   public boolean isClosed() throws SQLException {
-    // TODO Auto-generated method stub
-    return false;
+    return rows == null;
   }
 
   @Override
@@ -1728,23 +2026,24 @@ public class TrainDBResultSet implements ResultSet {
     return fields[column - 1].format == Field.BINARY_FORMAT;
   }
 
-  private long readLongValue(byte[] bytes, int type, long minVal, long maxVal, String targetType)
+  long readLongValue(byte[] bytes, int offset, int length, int type, long minVal,
+                     long maxVal, String targetType)
       throws
       TrainDBJdbcException {
     long val;
     // currently implemented binary encoded fields
     switch (type) {
       case Types.SMALLINT:
-        val = ByteConverter.int2(bytes, 0);
+        val = ByteConverter.int2(bytes, offset);
         break;
       case Types.INTEGER:
-        val = ByteConverter.int4(bytes, 0);
+        val = ByteConverter.int4(bytes, offset);
         break;
       case Types.BIGINT:
-        val = ByteConverter.int8(bytes, 0);
+        val = ByteConverter.int8(bytes, offset);
         break;
       case Types.FLOAT:
-        float f = ByteConverter.float4(bytes, 0);
+        float f = ByteConverter.float4(bytes, offset);
         // for float values we know to be within values of long, just cast directly to long
         if (f <= LONG_MAX_FLOAT && f >= LONG_MIN_FLOAT) {
           val = (long) f;
@@ -1755,7 +2054,7 @@ public class TrainDBResultSet implements ResultSet {
         }
         break;
       case Types.DOUBLE:
-        double d = ByteConverter.float8(bytes, 0);
+        double d = ByteConverter.float8(bytes, offset);
         // for double values within the values of a long, just directly cast to long
         if (d <= LONG_MAX_DOUBLE && d >= LONG_MIN_DOUBLE) {
           val = (long) d;
@@ -1766,7 +2065,7 @@ public class TrainDBResultSet implements ResultSet {
         }
         break;
       case Types.NUMERIC:
-        Number num = ByteConverter.numeric(bytes);
+        Number num = ByteConverter.numeric(bytes, offset, length);
         BigInteger i = ((BigDecimal) num).toBigInteger();
         int gt = i.compareTo(LONGMAX);
         int lt = i.compareTo(LONGMIN);
@@ -1793,23 +2092,24 @@ public class TrainDBResultSet implements ResultSet {
     return val;
   }
 
-  private double readDoubleValue(byte[] bytes, int type, String targetType) throws
+  double readDoubleValue(byte[] bytes, int offset, int length, int type,
+                         String targetType) throws
       TrainDBJdbcException {
     // currently implemented binary encoded fields
     switch (type) {
       case Types.SMALLINT:
-        return ByteConverter.int2(bytes, 0);
+        return ByteConverter.int2(bytes, offset);
       case Types.INTEGER:
-        return ByteConverter.int4(bytes, 0);
+        return ByteConverter.int4(bytes, offset);
       case Types.BIGINT:
         // might not fit but there still should be no overflow checking
-        return ByteConverter.int8(bytes, 0);
+        return ByteConverter.int8(bytes, offset);
       case Types.FLOAT:
-        return ByteConverter.float4(bytes, 0);
+        return ByteConverter.float4(bytes, offset);
       case Types.DOUBLE:
-        return ByteConverter.float8(bytes, 0);
+        return ByteConverter.float8(bytes, offset);
       case Types.NUMERIC:
-        return ByteConverter.numeric(bytes).doubleValue();
+        return ByteConverter.numeric(bytes, offset, length).doubleValue();
     }
     throw new TrainDBJdbcException(
         MessageFormat.format("Cannot convert the column of type {0} to requested type {1}.",
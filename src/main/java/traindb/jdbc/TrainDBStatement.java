@@ -16,33 +16,100 @@ package traindb.jdbc;
 
 import static traindb.jdbc.util.Nullness.castNonNull;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.core.ColumnBatchList;
 import traindb.jdbc.core.Field;
+import traindb.jdbc.core.IncrementalResultHandler;
+import traindb.jdbc.core.ParameterList;
 import traindb.jdbc.core.ResultCursor;
+import traindb.jdbc.core.ResultHandler;
 import traindb.jdbc.core.Tuple;
+import traindb.jdbc.util.TimerWheel;
 import traindb.jdbc.util.TrainDBJdbcException;
 import traindb.jdbc.util.TrainDBState;
 
 public class TrainDBStatement implements Statement {
+  private static final Logger LOGGER = Logger.getLogger(TrainDBStatement.class.getName());
   private static final String[] NO_RETURNING_COLUMNS = new String[0];
+  // How often killTimerTask checks whether a cancel in flight is done
+  private static final long CANCEL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final AtomicReferenceFieldUpdater<TrainDBStatement, StatementCancelState>
+      STATE_UPDATER = AtomicReferenceFieldUpdater.newUpdater(
+          TrainDBStatement.class, StatementCancelState.class, "statementState");
+  private static final AtomicReferenceFieldUpdater<TrainDBStatement, CancelTimerTask>
+      CANCEL_TIMER_UPDATER = AtomicReferenceFieldUpdater.newUpdater(
+          TrainDBStatement.class, CancelTimerTask.class, "cancelTimerTask");
+  /**
+   * Flag for {@link #executeWithFlags(String, int)}: read the whole response before returning,
+   * whatever the fetch size, so that the result set never reads from the connection.
+   */
+  static final int QUERY_NO_STREAMING = 1 << 10;
   protected boolean replaceProcessingEnabled = true;
   protected @Nullable ResultWrapper result = null;
   /**
    * Maximum number of rows to return, 0 = unlimited.
    */
   protected int maxrows = 0;
+  /**
+   * Number of rows to get in a batch.
+   */
+  protected int fetchSize = 0;
+  /**
+   * Whether forward-only results are fetched in batches sized from the row width.
+   */
+  protected boolean adaptiveFetch;
+  /**
+   * The queries added with {@link #addBatch(String)}, null if there are none.
+   */
+  protected @Nullable ArrayList<String> batchStatements = null;
+  /**
+   * Relative error within which successive estimates of an incremental query are taken as
+   * converged, 0 to follow the query to its end.
+   */
+  protected double accuracyTarget = 0;
+  // Follows the estimates of the current query if there is an accuracy target
+  private @Nullable EstimateConvergence convergence = null;
+  /**
+   * Whether the query timeout is a time budget, see {@link #setTimeoutAsTimeBudget(boolean)}.
+   */
+  protected boolean timeoutAsTimeBudget;
+  private volatile @Nullable SQLWarning warnings = null;
+  private @Nullable SQLWarning lastWarning = null;
+  protected final int resultsettype; // the resultset type to return (ResultSet.TYPE_xxx)
+  protected final int concurrency; // is it updateable or not? (ResultSet.CONCUR_xxx)
+  private final int rsHoldability;
   private TrainDBConnection connection;
   private volatile boolean isClosed = false;
+  /**
+   * Timeout (in milliseconds) for a query.
+   */
+  protected long timeout = 0;
+  private volatile StatementCancelState statementState = StatementCancelState.IDLE;
+  private volatile @Nullable CancelTimerTask cancelTimerTask = null;
 
   public TrainDBStatement(TrainDBConnection trainDBConnection, int resultSetType,
                           int resultSetConcurrency, int resultSetHoldability) {
     this.connection = trainDBConnection;
+    this.resultsettype = resultSetType;
+    this.concurrency = resultSetConcurrency;
+    this.rsHoldability = resultSetHoldability;
+    this.adaptiveFetch = trainDBConnection.getQueryExecutor().getAdaptiveFetch();
+    this.timeoutAsTimeBudget = trainDBConnection.getQueryExecutor().getTimeoutAsTimeBudget();
   }
 
   @Override
@@ -55,23 +122,51 @@ public class TrainDBStatement implements Statement {
     return getSingleResultSet();
   }
 
+  /**
+   * Executes a query on the I/O thread of the connection, so that the calling thread is not
+   * blocked while the query runs. The response is read completely before the future completes,
+   * whatever the fetch size, so reading the result set does not block on the network either.
+   *
+   * <p>Executions of a connection run one at a time in submission order. The statement must
+   * not be used for anything else until the future completes. Dependent stages that are not
+   * async run on the I/O thread and delay the next execution; prefer the async variants for
+   * anything that takes long.</p>
+   *
+   * @param sql the query to execute
+   * @return a future that completes with the result set, or with the SQLException that the
+   *     query failed with
+   */
+  public CompletableFuture<ResultSet> executeQueryAsync(String sql) {
+    return connection.supplyAsync(() -> {
+      if (!executeWithFlags(sql, QUERY_NO_STREAMING)) {
+        throw new TrainDBJdbcException("No results were returned by the query.",
+            TrainDBState.NO_DATA);
+      }
+      return getSingleResultSet();
+    });
+  }
+
   public boolean executeWithFlags(String sql, int flags) throws SQLException {
     // return executeCachedSql(sql, flags, NO_RETURNING_COLUMNS);
 
     checkClosed();
 
+    if (usesTimeBudget(sql)) {
+      return executeWithTimeBudget(sql);
+    }
+
     StatementResultHandler handler = new StatementResultHandler();
 
     synchronized (this) {
       result = null;
+      clearWarnings();
     }
 
     try {
       startTimer();
-      //System.out.println("==> Execute Start");
-      connection.getQueryExecutor().execute(sql, handler);
-      //System.out.println("==> Execute End");
-      // connection.getQueryExecutor().execute(queryToExecute, handler, maxrows, fetchSize, flags, adaptiveFetch);
+      boolean streaming = (flags & QUERY_NO_STREAMING) == 0;
+      connection.getQueryExecutor().execute(sql, null, handler,
+          streaming ? getStreamingFetchSize() : 0, streaming && getStreamingAdaptiveFetch());
     } finally {
       killTimerTask();
     }
@@ -82,6 +177,7 @@ public class TrainDBStatement implements Statement {
       ResultWrapper currentResult = handler.getResults();
 
       result = currentResult;
+      startEstimates();
     }
 
     synchronized (this) {
@@ -90,12 +186,269 @@ public class TrainDBStatement implements Statement {
     }
   }
 
+  /**
+   * Executes several queries in one pipeline, so that they cost roughly a single round trip to
+   * the server instead of one each. The queries are sent back-to-back and their responses are
+   * read in order; every result set is read completely, whatever the fetch size.
+   *
+   * <p>All responses are read even if some of the queries fail, and the error of the first
+   * failing query is thrown afterwards.</p>
+   *
+   * @param queries the queries to execute, each of which must return a result set
+   * @return the result sets, in the order of <code>queries</code>
+   * @throws SQLException if a query fails or does not return a result set
+   */
+  public ResultSet[] executePipelined(String... queries) throws SQLException {
+    checkClosed();
+
+    StatementResultHandler[] handlers = new StatementResultHandler[queries.length];
+    for (int i = 0; i < handlers.length; ++i) {
+      handlers[i] = new StatementResultHandler();
+    }
+
+    synchronized (this) {
+      result = null;
+      clearWarnings();
+    }
+
+    try {
+      startTimer();
+      connection.getQueryExecutor().execute(queries, null, handlers);
+    } finally {
+      killTimerTask();
+    }
+
+    ResultSet[] resultSets = new ResultSet[queries.length];
+    synchronized (this) {
+      checkClosed();
+
+      for (int i = 0; i < handlers.length; ++i) {
+        handlers[i].handleCompletion();
+
+        ResultWrapper currentResult = handlers[i].getResults();
+        if (currentResult == null || currentResult.getResultSet() == null) {
+          throw new TrainDBJdbcException("No results were returned by the query.",
+              TrainDBState.NO_DATA);
+        }
+        resultSets[i] = currentResult.getResultSet();
+      }
+    }
+
+    return resultSets;
+  }
+
+  /**
+   * Executes an incremental approximate query and passes its results to the listener as they
+   * arrive: the first estimate, then every refinement of it, until the server has no further
+   * refinement, the listener stops, or the estimates are within the
+   * {@linkplain #setAccuracyTarget(double) accuracy target}. Unlike with
+   * {@link #getMoreResults()}, the next
+   * refinements are requested ahead of time (see the {@code incrementalPrefetch} connection
+   * property), so that they do not cost a round trip each.
+   *
+   * <p>Afterwards the last result passed to the listener is the current result of the
+   * statement.</p>
+   *
+   * @param sql      the query to execute
+   * @param listener the listener for the results
+   * @return the number of results passed to the listener
+   * @throws SQLException if the query fails, or the exception that the listener threw
+   */
+  public int executeIncremental(String sql, IncrementalResultListener listener)
+      throws SQLException {
+    checkClosed();
+
+    EstimateConvergence convergence =
+        accuracyTarget > 0 ? new EstimateConvergence(accuracyTarget) : null;
+    IncrementalListenerHandler handler = new IncrementalListenerHandler(listener, convergence);
+
+    synchronized (this) {
+      result = null;
+      clearWarnings();
+      this.convergence = convergence;
+    }
+
+    try {
+      startTimer();
+      connection.getQueryExecutor().executeIncremental(sql, handler);
+    } finally {
+      killTimerTask();
+    }
+
+    synchronized (this) {
+      checkClosed();
+      result = handler.lastResult;
+    }
+
+    handler.handleCompletion();
+    return handler.delivered;
+  }
+
+  /**
+   * Executes an incremental approximate query on the I/O thread of the connection, see
+   * {@link #executeIncremental(String, IncrementalResultListener)} and
+   * {@link #executeQueryAsync(String)}. The listener runs on the I/O thread.
+   *
+   * @param sql      the query to execute
+   * @param listener the listener for the results
+   * @return a future that completes with the number of results passed to the listener
+   */
+  public CompletableFuture<Integer> executeIncrementalAsync(String sql,
+                                                            IncrementalResultListener listener) {
+    return connection.supplyAsync(() -> executeIncremental(sql, listener));
+  }
+
+  /**
+   * Tell whether the query runs within a time budget rather than with a timeout: only
+   * approximate queries have estimates to fall back on, see
+   * {@link traindb.jdbc.core.ParsedSql#isApproximate()}.
+   *
+   * @param sql the query text
+   * @return true if {@link #executeWithTimeBudget(String)} runs the query
+   */
+  protected boolean usesTimeBudget(String sql) {
+    return timeoutAsTimeBudget && timeout > 0
+        && connection.getQueryExecutor().parseSql(sql).isApproximate();
+  }
+
+  /**
+   * Executes a query within the time budget given by the query timeout. The query is run as an
+   * incremental query: the first estimate is read, then refinements are requested one at a
+   * time until the server has no more or the budget expires. The refinement that is running
+   * then is cancelled, and the latest estimate becomes the result of the statement, along with
+   * a warning. If the budget expires before the first estimate arrives, the query fails with
+   * the usual timeout error.
+   *
+   * @param sql the query text, with any parameters already in it
+   * @return true if the result is a result set
+   * @throws SQLException if the query fails
+   */
+  protected boolean executeWithTimeBudget(String sql) throws SQLException {
+    EstimateConvergence convergence =
+        accuracyTarget > 0 ? new EstimateConvergence(accuracyTarget) : null;
+    IncrementalListenerHandler handler = new IncrementalListenerHandler((rs, refinement) -> true,
+        convergence, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+
+    synchronized (this) {
+      result = null;
+      clearWarnings();
+      this.convergence = convergence;
+    }
+
+    try {
+      startTimer();
+      // nothing is requested ahead of time, so that the cancel hits the refinement that counts
+      connection.getQueryExecutor().executeIncremental(sql, handler, 0);
+    } finally {
+      killTimerTask();
+    }
+
+    handler.handleCompletion();
+
+    synchronized (this) {
+      checkClosed();
+      result = handler.lastResult;
+      if (handler.budgetExpired) {
+        addWarning(new SQLWarning(MessageFormat.format(
+            "The time budget of {0} ms expired, the result is an estimate after {1} refinements.",
+            timeout, handler.delivered - 1), TrainDBState.WARNING.getState()));
+      }
+      return (result != null && result.getResultSet() != null);
+    }
+  }
+
+  /**
+   * Sets whether the query timeout of this statement is a time budget rather than a limit.
+   * With a time budget, a query that is still running when the timeout expires does not fail
+   * but returns its best approximate result so far, with a warning, see
+   * {@link #executeWithTimeBudget(String)}. It only applies to approximate queries; other
+   * statements keep the usual timeout. The default is the {@code timeoutAsTimeBudget}
+   * connection property.
+   *
+   * @param timeoutAsTimeBudget whether the query timeout is a time budget
+   */
+  public void setTimeoutAsTimeBudget(boolean timeoutAsTimeBudget) {
+    this.timeoutAsTimeBudget = timeoutAsTimeBudget;
+  }
+
+  public boolean getTimeoutAsTimeBudget() {
+    return timeoutAsTimeBudget;
+  }
+
+  /**
+   * Sets the accuracy target of incremental queries: once every numeric value of a refinement
+   * is within this relative error of the same value in the previous estimate, the query is
+   * taken as converged. {@link #getMoreResults()} then returns false without asking the server
+   * for another refinement, and {@link #executeIncremental(String, IncrementalResultListener)}
+   * stops after passing the refinement to the listener.
+   *
+   * <p>Values are compared by row and column, so the query should return its groups in a
+   * stable order. The first estimate only counts if it was read completely, that is if it was
+   * not fetched in batches.</p>
+   *
+   * @param relativeError the relative error, for example 0.01 for 1%; 0 to follow incremental
+   *                      queries to their end, which is the default
+   * @throws SQLException if the statement is closed or the value is negative
+   */
+  public void setAccuracyTarget(double relativeError) throws SQLException {
+    checkClosed();
+    if (!(relativeError >= 0) || Double.isInfinite(relativeError)) {
+      throw new TrainDBJdbcException(
+          "Accuracy target must be a value greater than or equal to 0.",
+          TrainDBState.INVALID_PARAMETER_VALUE);
+    }
+    accuracyTarget = relativeError;
+  }
+
+  public double getAccuracyTarget() {
+    return accuracyTarget;
+  }
+
+  /**
+   * Take the current result as the first estimate of a new query, for the accuracy target.
+   */
+  protected void startEstimates() throws SQLException {
+    convergence = accuracyTarget > 0 ? new EstimateConvergence(accuracyTarget) : null;
+    observeEstimate();
+  }
+
+  private void observeEstimate() throws SQLException {
+    EstimateConvergence convergence = this.convergence;
+    ResultWrapper result = this.result;
+    if (convergence == null || result == null) {
+      return;
+    }
+    ResultSet rs = result.getResultSet();
+    if (rs instanceof TrainDBResultSet && ((TrainDBResultSet) rs).isFullyRead()) {
+      convergence.observe(rs);
+    }
+  }
+
   public boolean executeWithFlags(int flags) throws SQLException {
     checkClosed();
     throw new TrainDBJdbcException("Can''t use executeWithFlags(int) on a Statement.",
         TrainDBState.WRONG_OBJECT_TYPE);
   }
 
+  /**
+   * Rows are only streamed in batches for forward-only result sets; anything scrollable
+   * needs the whole response in memory.
+   *
+   * @return the batch size to pass to the query executor, 0 to buffer the whole response
+   */
+  protected int getStreamingFetchSize() {
+    return resultsettype == ResultSet.TYPE_FORWARD_ONLY ? fetchSize : 0;
+  }
+
+  /**
+   * Like the fetch size, adaptive fetch only applies to forward-only result sets.
+   *
+   * @return whether the query executor should size the batches itself
+   */
+  protected boolean getStreamingAdaptiveFetch() {
+    return resultsettype == ResultSet.TYPE_FORWARD_ONLY && adaptiveFetch;
+  }
+
   protected ResultSet getSingleResultSet() throws SQLException {
     synchronized (this) {
       checkClosed();
@@ -117,105 +470,178 @@ public class TrainDBStatement implements Statement {
     }
   }
 
-  private void startTimer() {
+  /**
+   * Mark the statement as running a query and, if there is a query timeout, schedule the
+   * cancel of the query on the shared timer wheel.
+   */
+  protected void startTimer() {
     /*
      * there shouldn't be any previous timer active, but better safe than sorry.
      */
-		/*
-	    cleanupTimer();
-
-	    STATE_UPDATER.set(this, StatementCancelState.IN_QUERY);
-
-	    if (timeout == 0) {
-	      return;
-	    }
-
-	    TimerTask cancelTask = new TimerTask() {
-	      public void run() {
-	        try {
-	          if (!CANCEL_TIMER_UPDATER.compareAndSet(PgStatement.this, this, null)) {
-	            // Nothing to do here, statement has already finished and cleared
-	            // cancelTimerTask reference
-	            return;
-	          }
-	          PgStatement.this.cancel();
-	        } catch (SQLException e) {
-	        }
-	      }
-	    };
-
-	    CANCEL_TIMER_UPDATER.set(this, cancelTask);
-	    connection.addTimerTask(cancelTask, timeout);
-	    */
-  }
-
-  private void killTimerTask() {
-		/*
-	    boolean timerTaskIsClear = cleanupTimer();
-	    // The order is important here: in case we need to wait for the cancel task, the state must be
-	    // kept StatementCancelState.IN_QUERY, so cancelTask would be able to cancel the query.
-	    // It is believed that this case is very rare, so "additional cancel and wait below" would not
-	    // harm it.
-	    if (timerTaskIsClear && STATE_UPDATER.compareAndSet(this, StatementCancelState.IN_QUERY, StatementCancelState.IDLE)) {
-	      return;
-	    }
-
-	    // Being here means someone managed to call .cancel() and our connection did not receive
-	    // "timeout error"
-	    // We wait till state becomes "cancelled"
-	    boolean interrupted = false;
-	    synchronized (connection) {
-	      // state check is performed under synchronized so it detects "cancelled" state faster
-	      // In other words, it prevents unnecessary ".wait()" call
-	      while (!STATE_UPDATER.compareAndSet(this, StatementCancelState.CANCELLED, StatementCancelState.IDLE)) {
-	        try {
-	          // Note: wait timeout here is irrelevant since synchronized(connection) would block until
-	          // .cancel finishes
-	          connection.wait(10);
-	        } catch (InterruptedException e) { // NOSONAR
-	          // Either re-interrupt this method or rethrow the "InterruptedException"
-	          interrupted = true;
-	        }
-	      }
-	    }
-	    if (interrupted) {
-	      Thread.currentThread().interrupt();
-	    }
-	    */
+    cleanupTimer();
+
+    STATE_UPDATER.set(this, StatementCancelState.IN_QUERY);
+
+    if (timeout == 0) {
+      return;
+    }
+
+    CancelTimerTask cancelTask = new CancelTimerTask();
+    CANCEL_TIMER_UPDATER.set(this, cancelTask);
+    cancelTask.timeout = Driver.getSharedTimer().newTimeout(cancelTask, timeout);
+  }
+
+  /**
+   * Clears the cancel timer of the statement.
+   *
+   * @return true if the query is not going to be cancelled by the timer
+   */
+  private boolean cleanupTimer() {
+    CancelTimerTask timerTask = CANCEL_TIMER_UPDATER.get(this);
+    if (timerTask == null) {
+      // If timeout is zero, then timer task did not exist, so we safely report "all clear"
+      return timeout == 0;
+    }
+    if (!CANCEL_TIMER_UPDATER.compareAndSet(this, timerTask, null)) {
+      // Failed to update reference -> timer has just fired, so we must wait for the query state to
+      // become "cancelling".
+      return false;
+    }
+    TimerWheel.Timeout wheelTimeout = timerTask.timeout;
+    if (wheelTimeout != null) {
+      wheelTimeout.cancel();
+    }
+    // All clear
+    return true;
+  }
+
+  /**
+   * Mark the statement as idle once the query is over. If a cancel is in flight it is waited
+   * for, so that it cannot hit the next query of the connection.
+   */
+  protected void killTimerTask() {
+    boolean timerTaskIsClear = cleanupTimer();
+    // The order is important here: in case we need to wait for the cancel task, the state must be
+    // kept StatementCancelState.IN_QUERY, so cancelTask would be able to cancel the query.
+    // It is believed that this case is very rare, so "additional cancel and wait below" would not
+    // harm it.
+    if (timerTaskIsClear && STATE_UPDATER.compareAndSet(this, StatementCancelState.IN_QUERY,
+        StatementCancelState.IDLE)) {
+      return;
+    }
+
+    // Being here means someone managed to call .cancel() and our connection did not receive
+    // "timeout error"
+    // We wait till state becomes "cancelled"; that takes at most one cancelSignalTimeout
+    boolean interrupted = false;
+    while (!STATE_UPDATER.compareAndSet(this, StatementCancelState.CANCELLED,
+        StatementCancelState.IDLE)) {
+      LockSupport.parkNanos(this, CANCEL_WAIT_NANOS);
+      // park returns at once while the interrupt flag is set; restore it once done
+      if (Thread.interrupted()) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Cancels the query of the statement when its timeout expires. Sending the cancel request
+   * opens a connection, so it is handed off rather than blocking the timer wheel.
+   */
+  private final class CancelTimerTask implements Runnable {
+    private volatile TimerWheel.@Nullable Timeout timeout;
+
+    @Override
+    public void run() {
+      if (!CANCEL_TIMER_UPDATER.compareAndSet(TrainDBStatement.this, this, null)) {
+        // Nothing to do here, statement has already finished and cleared
+        // cancelTimerTask reference
+        return;
+      }
+      CompletableFuture.runAsync(() -> {
+        try {
+          TrainDBStatement.this.cancel();
+        } catch (SQLException e) {
+          LOGGER.log(Level.FINEST, "Ignoring exception on query timeout cancel:", e);
+        }
+      });
+    }
   }
 
   public ResultSet createResultSet(String originalQuery, Field[] fields, List<Tuple> tuples,
                                    @Nullable ResultCursor cursor) throws SQLException {
-    TrainDBResultSet newResult =
-        new TrainDBResultSet(originalQuery, this, fields, tuples, cursor, getMaxRows(),
-            getMaxFieldSize(), getResultSetType(), getResultSetConcurrency(),
-            getResultSetHoldability(), getAdaptiveFetch());
+    TrainDBResultSet newResult;
+    if (tuples instanceof ColumnBatchList) {
+      newResult = new TrainDBColumnarResultSet(originalQuery, this, fields, tuples, cursor,
+          getMaxRows(), getMaxFieldSize(), getResultSetType(), getResultSetConcurrency(),
+          getResultSetHoldability(), getAdaptiveFetch());
+    } else {
+      newResult = new TrainDBResultSet(originalQuery, this, fields, tuples, cursor, getMaxRows(),
+          getMaxFieldSize(), getResultSetType(), getResultSetConcurrency(),
+          getResultSetHoldability(), getAdaptiveFetch());
+    }
     newResult.setFetchSize(getFetchSize());
     newResult.setFetchDirection(getFetchDirection());
     return newResult;
   }
 
+  /**
+   * Enable or disable adaptive fetch for the queries executed by this statement afterwards.
+   * With adaptive fetch, forward-only results are fetched in batches that fit the
+   * {@code maxResultBuffer} budget given the largest row seen so far for the same query text,
+   * instead of in batches of the fetch size. It has no effect unless {@code maxResultBuffer}
+   * is set. The default is the {@code adaptiveFetch} connection property.
+   *
+   * @param adaptiveFetch whether to use adaptive fetch
+   */
+  public void setAdaptiveFetch(boolean adaptiveFetch) {
+    this.adaptiveFetch = adaptiveFetch;
+  }
+
   public boolean getAdaptiveFetch() {
-    // return adaptiveFetch;
-    return false;
+    return adaptiveFetch;
   }
 
   @Override
   public <T> T unwrap(Class<T> iface) throws SQLException {
-    // TODO Auto-generated method stub
-    return null;
+    if (iface.isAssignableFrom(getClass())) {
+      return iface.cast(this);
+    }
+    throw new SQLException("Cannot unwrap to " + iface.getName());
   }
 
   @Override
   public boolean isWrapperFor(Class<?> iface) throws SQLException {
-    // TODO Auto-generated method stub
-    return false;
+    return iface.isAssignableFrom(getClass());
   }
 
   @Override
   public int executeUpdate(String sql) throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    if (executeWithFlags(sql, QUERY_NO_STREAMING)) {
+      throw new TrainDBJdbcException("A result was returned when none was expected.",
+          TrainDBState.TOO_MANY_RESULTS);
+    }
+
+    return getNoResultUpdateCount();
+  }
+
+  /**
+   * The update count of a query that returned no result set, 0 if the server did not report
+   * one.
+   */
+  protected int getNoResultUpdateCount() throws SQLException {
+    synchronized (this) {
+      checkClosed();
+      ResultWrapper result = this.result;
+      return result == null ? 0 : toIntUpdateCount(result.getUpdateCount());
+    }
+  }
+
+  private static int toIntUpdateCount(long updateCount) {
+    return updateCount > Integer.MAX_VALUE ? Statement.SUCCESS_NO_INFO : (int) updateCount;
   }
 
   @Override
@@ -272,47 +698,97 @@ public class TrainDBStatement implements Statement {
 
   @Override
   public int getQueryTimeout() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    checkClosed();
+    long seconds = timeout / 1000;
+    if (seconds >= Integer.MAX_VALUE) {
+      return Integer.MAX_VALUE;
+    }
+    return (int) seconds;
   }
 
   @Override
   public void setQueryTimeout(int seconds) throws SQLException {
-    // TODO Auto-generated method stub
+    setQueryTimeoutMs(seconds * 1000L);
+  }
+
+  /**
+   * The queryTimeout limit.
+   *
+   * @return The current query timeout limit in milliseconds; zero means there is no limit
+   * @throws SQLException if a database access error occurs
+   */
+  public long getQueryTimeoutMs() throws SQLException {
+    checkClosed();
+    return timeout;
+  }
+
+  /**
+   * Sets the queryTimeout limit. When it expires, the query is cancelled as with
+   * {@link #cancel()}.
+   *
+   * @param millis - the new query timeout limit in milliseconds
+   * @throws SQLException if a database access error occurs
+   */
+  public void setQueryTimeoutMs(long millis) throws SQLException {
+    checkClosed();
+
+    if (millis < 0) {
+      throw new TrainDBJdbcException("Query timeout must be a value greater than or equals to 0.",
+          TrainDBState.INVALID_PARAMETER_VALUE);
+    }
+    timeout = millis;
   }
 
   @Override
   public void cancel() throws SQLException {
-		/*
-		if (statementState == StatementCancelState.IDLE) {
-		      return;
-		    }
-		    if (!STATE_UPDATER.compareAndSet(this, StatementCancelState.IN_QUERY,
-		        StatementCancelState.CANCELING)) {
-		      // Not in query, there's nothing to cancel
-		      return;
-		    }
-		    // Synchronize on connection to avoid spinning in killTimerTask
-		    synchronized (connection) {
-		      try {
-		        connection.cancelQuery();
-		      } finally {
-		        STATE_UPDATER.set(this, StatementCancelState.CANCELLED);
-		        connection.notifyAll(); // wake-up killTimerTask
-		      }
-		    }
-		*/
-  }
-
-  @Override
-  public SQLWarning getWarnings() throws SQLException {
-    // TODO Auto-generated method stub
-    return null;
+    if (statementState == StatementCancelState.IDLE) {
+      return;
+    }
+    if (!STATE_UPDATER.compareAndSet(this, StatementCancelState.IN_QUERY,
+        StatementCancelState.CANCELING)) {
+      // Not in query, there's nothing to cancel
+      return;
+    }
+    try {
+      connection.cancelQuery();
+    } finally {
+      // releases killTimerTask, which waits for this state
+      STATE_UPDATER.set(this, StatementCancelState.CANCELLED);
+    }
+  }
+
+  /**
+   * Either initializes new warning wrapper, or adds warning onto the chain.
+   *
+   * <p>Although warnings are expected to be added sequentially, the warnings chain may be cleared
+   * concurrently at any time via {@link #clearWarnings()}, therefore it is possible that a warning
+   * added via this method is placed onto the end of the previous warning chain</p>
+   *
+   * @param warn warning to add
+   */
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/jdbc/PgStatement.java
+  public void addWarning(SQLWarning warn) {
+    // copy reference to avoid NPE from concurrent modification of this.warnings
+    final SQLWarning warnings = this.warnings;
+    if (warnings == null) {
+      this.warnings = warn;
+      this.lastWarning = warn;
+    } else {
+      castNonNull(lastWarning).setNextWarning(warn);
+      this.lastWarning = warn;
+    }
+  }
+
+  @Override
+  public @Nullable SQLWarning getWarnings() throws SQLException {
+    checkClosed();
+    return warnings;
   }
 
   @Override
   public void clearWarnings() throws SQLException {
-    // TODO Auto-generated method stub
+    warnings = null;
+    lastWarning = null;
   }
 
   @Override
@@ -341,8 +817,14 @@ public class TrainDBStatement implements Statement {
 
   @Override
   public int getUpdateCount() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    synchronized (this) {
+      checkClosed();
+      ResultWrapper result = this.result;
+      if (result == null || result.getResultSet() != null) {
+        return -1;
+      }
+      return toIntUpdateCount(result.getUpdateCount());
+    }
   }
 
   @Override
@@ -350,6 +832,15 @@ public class TrainDBStatement implements Statement {
     // TODO Auto-generated method stub
     checkClosed();
 
+    EstimateConvergence convergence = this.convergence;
+    if (convergence != null && convergence.isConverged()) {
+      // the estimates are within the accuracy target, leave the server alone
+      synchronized (this) {
+        result = null;
+      }
+      return false;
+    }
+
     // send request another result set to server
     StatementResultHandler handler = new StatementResultHandler();
 
@@ -359,10 +850,7 @@ public class TrainDBStatement implements Statement {
 
     try {
       startTimer();
-      //System.out.println("==> getMoreResult Start");
       connection.getQueryExecutor().getMoreResult(handler);
-      //System.out.println("==> getMoreResult End");
-      // connection.getQueryExecutor().execute(queryToExecute, handler, maxrows, fetchSize, flags, adaptiveFetch);
     } finally {
       killTimerTask();
     }
@@ -373,11 +861,11 @@ public class TrainDBStatement implements Statement {
       ResultWrapper currentResult = handler.getResults();
 
       result = currentResult;
+      observeEstimate();
     }
 
     synchronized (this) {
       checkClosed();
-      //System.out.println("==> getMoreResult isBeforeFirst : " + result.getResultSet().isBeforeFirst());
       return (result != null && result.getResultSet() != null && result.getResultSet().isBeforeFirst());
     }
   }
@@ -396,42 +884,155 @@ public class TrainDBStatement implements Statement {
 
   @Override
   public int getFetchSize() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    checkClosed();
+    return fetchSize;
   }
 
   @Override
   public void setFetchSize(int rows) throws SQLException {
-    // TODO Auto-generated method stub
-
+    checkClosed();
+    if (rows < 0) {
+      throw new TrainDBJdbcException("Fetch size must be a value greater to or equal to 0.",
+          TrainDBState.INVALID_PARAMETER_VALUE);
+    }
+    fetchSize = rows;
   }
 
   @Override
   public int getResultSetConcurrency() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    checkClosed();
+    return concurrency;
   }
 
   @Override
   public int getResultSetType() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    checkClosed();
+    return resultsettype;
   }
 
   @Override
   public void addBatch(String sql) throws SQLException {
-    // TODO Auto-generated method stub
+    checkClosed();
+
+    if (batchStatements == null) {
+      batchStatements = new ArrayList<String>();
+    }
+    batchStatements.add(sql);
   }
 
   @Override
   public void clearBatch() throws SQLException {
-    // TODO Auto-generated method stub
+    if (batchStatements != null) {
+      batchStatements.clear();
+    }
   }
 
+  /**
+   * Executes the queries of the batch in one pipeline, see {@link #executePipelined(String...)}.
+   * Every query runs even if some of them fail.
+   *
+   * @return the update count of every query, {@link Statement#EXECUTE_FAILED} for the ones that
+   *     failed
+   * @throws BatchUpdateException if a query fails or returns a result set
+   */
   @Override
   public int[] executeBatch() throws SQLException {
-    // TODO Auto-generated method stub
-    return null;
+    checkClosed();
+
+    ArrayList<String> batchStatements = this.batchStatements;
+    if (batchStatements == null || batchStatements.isEmpty()) {
+      return new int[0];
+    }
+
+    String[] queries = batchStatements.toArray(new String[0]);
+    clearBatch();
+    return executeBatchQueries(queries, null, null);
+  }
+
+  /**
+   * Executes the queries of a batch in one pipeline and collects their update counts.
+   *
+   * @param queries        the queries to execute
+   * @param parameterLists the bind values of every query, or null if no query has any
+   * @param rowCounts      the number of batch entries that every query stands for, or null if
+   *                       it is one each. The entries of a query that stands for several get
+   *                       {@link Statement#SUCCESS_NO_INFO}, as their own counts are unknown.
+   * @return the update count of every batch entry
+   * @throws BatchUpdateException if a query fails or returns a result set
+   */
+  protected int[] executeBatchQueries(String[] queries, @Nullable ParameterList[] parameterLists,
+                                      int @Nullable [] rowCounts) throws SQLException {
+    StatementResultHandler[] handlers = new StatementResultHandler[queries.length];
+    for (int i = 0; i < handlers.length; ++i) {
+      handlers[i] = new StatementResultHandler();
+    }
+
+    synchronized (this) {
+      result = null;
+      clearWarnings();
+    }
+
+    try {
+      startTimer();
+      connection.getQueryExecutor().execute(queries, parameterLists, handlers);
+    } finally {
+      killTimerTask();
+    }
+
+    int entries = queries.length;
+    if (rowCounts != null) {
+      entries = 0;
+      for (int rows : rowCounts) {
+        entries += rows;
+      }
+    }
+
+    int[] updateCounts = new int[entries];
+    int entry = 0;
+    int failedEntry = -1;
+    int failedQuery = -1;
+    @Nullable SQLException firstError = null;
+    for (int i = 0; i < handlers.length; ++i) {
+      int rows = rowCounts == null ? 1 : rowCounts[i];
+      int updateCount;
+      try {
+        handlers[i].handleCompletion();
+        ResultWrapper currentResult = handlers[i].getResults();
+        if (currentResult != null && currentResult.getResultSet() != null) {
+          throw new TrainDBJdbcException("A result was returned when none was expected.",
+              TrainDBState.TOO_MANY_RESULTS);
+        }
+        if (rows != 1 || currentResult == null) {
+          updateCount = Statement.SUCCESS_NO_INFO;
+        } else {
+          updateCount = toIntUpdateCount(currentResult.getUpdateCount());
+        }
+      } catch (SQLException e) {
+        updateCount = Statement.EXECUTE_FAILED;
+        if (firstError == null) {
+          firstError = e;
+          failedEntry = entry;
+          failedQuery = i;
+        } else {
+          firstError.setNextException(e);
+        }
+      }
+      for (int row = 0; row < rows; ++row) {
+        updateCounts[entry++] = updateCount;
+      }
+    }
+
+    if (firstError != null) {
+      BatchUpdateException batchError = new BatchUpdateException(
+          MessageFormat.format("Batch entry {0} {1} was aborted: {2}  "
+                  + "Call getNextException to see other errors in the batch.",
+              failedEntry, queries[failedQuery], firstError.getMessage()),
+          firstError.getSQLState(), updateCounts, firstError);
+      batchError.setNextException(firstError);
+      throw batchError;
+    }
+
+    return updateCounts;
   }
 
   @Override
@@ -489,8 +1090,8 @@ public class TrainDBStatement implements Statement {
 
   @Override
   public int getResultSetHoldability() throws SQLException {
-    // TODO Auto-generated method stub
-    return 0;
+    checkClosed();
+    return rsHoldability;
   }
 
   @Override
@@ -522,10 +1123,98 @@ public class TrainDBStatement implements Statement {
     return false;
   }
 
+  /**
+   * Passes the results of an incremental query to an {@link IncrementalResultListener}. An
+   * empty refinement, a response without rows, an error or convergence ends the query.
+   */
+  private final class IncrementalListenerHandler implements IncrementalResultHandler {
+    private final IncrementalResultListener listener;
+    private final @Nullable EstimateConvergence convergence;
+    // System.nanoTime() at which the time budget expires, 0 if there is none
+    private final long deadline;
+    private boolean budgetExpired;
+    private int delivered;
+    private @Nullable ResultWrapper lastResult;
+    private @Nullable SQLException error;
+    private @Nullable RuntimeException listenerFailure;
+
+    IncrementalListenerHandler(IncrementalResultListener listener,
+                               @Nullable EstimateConvergence convergence) {
+      this(listener, convergence, 0);
+    }
+
+    IncrementalListenerHandler(IncrementalResultListener listener,
+                               @Nullable EstimateConvergence convergence, long deadline) {
+      this.listener = listener;
+      this.convergence = convergence;
+      this.deadline = deadline;
+    }
+
+    private boolean isPastDeadline() {
+      return deadline != 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    @Override
+    public ResultHandler newResponseHandler() {
+      return new StatementResultHandler();
+    }
+
+    @Override
+    public boolean handleResponse(ResultHandler response) {
+      StatementResultHandler handler = (StatementResultHandler) response;
+      if (handler.firstException != null && lastResult != null && isPastDeadline()) {
+        // the refinement was cancelled when the time budget expired
+        budgetExpired = true;
+        return false;
+      }
+      try {
+        handler.handleCompletion();
+        ResultWrapper currentResult = handler.getResults();
+        if (currentResult == null || currentResult.getResultSet() == null) {
+          if (delivered == 0) {
+            // a command, whose update count is the result of the statement
+            lastResult = currentResult;
+          }
+          return false;
+        }
+        ResultSet rs = currentResult.getResultSet();
+        if (delivered > 0 && !rs.isBeforeFirst()) {
+          // the server has nothing to refine anymore
+          return false;
+        }
+        boolean converged = convergence != null && convergence.observe(rs);
+        lastResult = currentResult;
+        if (!listener.onResult(rs, delivered++) || converged) {
+          return false;
+        }
+        if (isPastDeadline()) {
+          // the timer may have fired while no refinement was running
+          budgetExpired = true;
+          return false;
+        }
+        return true;
+      } catch (SQLException e) {
+        error = e;
+      } catch (RuntimeException e) {
+        listenerFailure = e;
+      }
+      return false;
+    }
+
+    void handleCompletion() throws SQLException {
+      if (listenerFailure != null) {
+        throw listenerFailure;
+      }
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+
   /**
    * ResultHandler implementations for updates, queries, and either-or.
    */
-  public class StatementResultHandler {
+  public class StatementResultHandler implements ResultHandler {
     private ResultWrapper results;
     private ResultWrapper lastResult;
 
@@ -544,6 +1233,7 @@ public class TrainDBStatement implements Statement {
       }
     }
 
+    @Override
     public void handleResultRows(String fromQuery, Field[] fields, List<Tuple> tuples,
                                  @Nullable ResultCursor cursor) {
       try {
@@ -554,14 +1244,17 @@ public class TrainDBStatement implements Statement {
       }
     }
 
+    @Override
     public void handleCommandStatus(String status, long updateCount, long insertOID) {
       append(new ResultWrapper(updateCount, insertOID));
     }
 
+    @Override
     public void handleWarning(SQLWarning warning) {
-      // TrainDBStatement.this.addWarning(warning);
+      TrainDBStatement.this.addWarning(warning);
     }
 
+    @Override
     public void handleError(SQLException error) {
       if (firstException == null) {
         firstException = lastException = error;
@@ -571,6 +1264,7 @@ public class TrainDBStatement implements Statement {
       this.lastException = error;
     }
 
+    @Override
     public void handleCompletion() throws SQLException {
       SQLException firstException = this.firstException;
       if (firstException != null) {
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import traindb.jdbc.util.TrainDBProperty;
+
+/**
+ * Fetch sizes computed per query text from the largest row seen for that query, so that one
+ * batch of rows fits in the {@code maxResultBuffer} budget: queries returning narrow rows get
+ * big batches and queries returning wide rows small ones.
+ *
+ * <p>Unlike pgjdbc, which forgets a query once its last cursor is closed, the sizes are kept
+ * for the next executions of the same text, up to {@link #MAX_ENTRIES} queries. Not thread
+ * safe; it is guarded by the lock of the owning {@link QueryExecutor}.</p>
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/core/v3/adaptivefetch/AdaptiveFetchCache.java
+public class AdaptiveFetchCache {
+  /**
+   * Fetch size of a query that was not seen yet, unless the statement sets one.
+   */
+  static final int INITIAL_FETCH_SIZE = 100;
+  private static final int MAX_ENTRIES = 256;
+
+  private final Map<String, AdaptiveFetchCacheEntry> adaptiveFetchInfoMap =
+      new LinkedHashMap<String, AdaptiveFetchCacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AdaptiveFetchCacheEntry> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+  private final boolean adaptiveFetch;
+  private final int minimumAdaptiveFetchSize;
+  private final int maximumAdaptiveFetchSize;
+  private final long maximumResultBufferSize;
+
+  public AdaptiveFetchCache(long maximumResultBufferSize, Properties info) throws SQLException {
+    this.adaptiveFetch = TrainDBProperty.ADAPTIVE_FETCH.getBoolean(info);
+    this.minimumAdaptiveFetchSize = TrainDBProperty.ADAPTIVE_FETCH_MINIMUM.getInt(info);
+    this.maximumAdaptiveFetchSize = TrainDBProperty.ADAPTIVE_FETCH_MAXIMUM.getInt(info);
+    this.maximumResultBufferSize = maximumResultBufferSize;
+  }
+
+  /**
+   * Default for the adaptive fetch setting of statements.
+   *
+   * @return the value of the {@code adaptiveFetch} property
+   */
+  public boolean getAdaptiveFetch() {
+    return adaptiveFetch;
+  }
+
+  /**
+   * Whether fetch sizes can be computed at all; that needs a {@code maxResultBuffer} budget.
+   *
+   * @return true if a memory target is set
+   */
+  public boolean isActive() {
+    return maximumResultBufferSize != -1;
+  }
+
+  /**
+   * Fetch size to use for the next batch of a query.
+   *
+   * @param sql       the query text
+   * @param fetchSize the fetch size set on the statement, 0 if none
+   * @return the computed fetch size if the query was seen before, otherwise the statement
+   *     fetch size or {@link #INITIAL_FETCH_SIZE}
+   */
+  public int getFetchSizeForQuery(String sql, int fetchSize) {
+    AdaptiveFetchCacheEntry entry = adaptiveFetchInfoMap.get(sql.trim());
+    if (entry != null) {
+      return entry.size;
+    }
+    return fetchSize > 0 ? fetchSize : adjustFetchSize(INITIAL_FETCH_SIZE);
+  }
+
+  /**
+   * Record the largest row size seen for a query, and compute its fetch size again if that
+   * grew.
+   *
+   * @param sql        the query text
+   * @param maxRowSize the largest row of the last batch in bytes, -1 if it had no rows
+   */
+  public void updateQueryFetchSize(String sql, int maxRowSize) {
+    if (!isActive() || maxRowSize <= 0) {
+      return;
+    }
+
+    String key = sql.trim();
+    AdaptiveFetchCacheEntry entry = adaptiveFetchInfoMap.get(key);
+    if (entry == null) {
+      entry = new AdaptiveFetchCacheEntry();
+      adaptiveFetchInfoMap.put(key, entry);
+    }
+    if (entry.maximumRowSizeBytes < maxRowSize) {
+      long newFetchSize = maximumResultBufferSize / maxRowSize;
+      entry.maximumRowSizeBytes = maxRowSize;
+      entry.size = adjustFetchSize((int) Math.min(Integer.MAX_VALUE, newFetchSize));
+    }
+  }
+
+  private int adjustFetchSize(int actualSize) {
+    int size = adjustMaximumFetchSize(actualSize);
+    size = adjustMinimumFetchSize(size);
+    // a batch always holds at least one row
+    return Math.max(size, 1);
+  }
+
+  private int adjustMinimumFetchSize(int actualSize) {
+    if (minimumAdaptiveFetchSize == 0) {
+      return actualSize;
+    }
+    if (minimumAdaptiveFetchSize > actualSize) {
+      return minimumAdaptiveFetchSize;
+    }
+    return actualSize;
+  }
+
+  private int adjustMaximumFetchSize(int actualSize) {
+    if (maximumAdaptiveFetchSize == -1) {
+      return actualSize;
+    }
+    if (maximumAdaptiveFetchSize < actualSize) {
+      return maximumAdaptiveFetchSize;
+    }
+    return actualSize;
+  }
+
+  private static class AdaptiveFetchCacheEntry {
+    private int size = -1;
+    private int maximumRowSizeBytes = -1;
+  }
+}
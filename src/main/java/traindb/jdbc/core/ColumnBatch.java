@@ -0,0 +1,368 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.io.IOException;
+import java.sql.Types;
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.util.ByteConverter;
+
+/**
+ * Rows of a result sent column by column in a single ColumnBatch ('V') message.
+ *
+ * <p>After the row and column counts the payload holds, for every column in order, a null
+ * bitmap of <code>(rows + 7) / 8</code> bytes (bit <code>row % 8</code> of byte
+ * <code>row / 8</code> is set if the value is NULL) followed by the values. A column whose
+ * field is in binary format and of a fixed width type (SMALLINT, INTEGER, BIGINT, FLOAT,
+ * DOUBLE) stores one big-endian value per row, NULL rows included, as a contiguous vector.
+ * Any other column stores an int4 length and the bytes for every non-NULL row.</p>
+ *
+ * <p>The payload is kept as received; the rows are exposed as {@link Tuple} views that read
+ * from it, and whole columns can be converted in bulk.</p>
+ */
+public class ColumnBatch {
+  private final Field[] fields;
+  private final int rowCount;
+  private final byte[] slab;
+  private final int[] bitmapOffsets;
+  // Width of the values of fixed width columns, 0 for variable width columns
+  private final int[] widths;
+  // Start of the value vector of fixed width columns
+  private final int[] vectorOffsets;
+  // Offset of every value of variable width columns, -1 for NULL
+  private final int @Nullable [][] valueOffsets;
+
+  private ColumnBatch(Field[] fields, int rowCount, byte[] slab, int[] bitmapOffsets,
+                      int[] widths, int[] vectorOffsets, int @Nullable [][] valueOffsets) {
+    this.fields = fields;
+    this.rowCount = rowCount;
+    this.slab = slab;
+    this.bitmapOffsets = bitmapOffsets;
+    this.widths = widths;
+    this.vectorOffsets = vectorOffsets;
+    this.valueOffsets = valueOffsets;
+  }
+
+  /**
+   * Index the columns of a ColumnBatch payload.
+   *
+   * @param slab     the message payload following the row and column counts
+   * @param rowCount the number of rows in the batch
+   * @param fields   the description of the columns
+   * @return a batch that reads its values straight from <code>slab</code>
+   * @throws IOException if the payload does not match the description
+   */
+  public static ColumnBatch fromMessage(byte[] slab, int rowCount, Field[] fields)
+      throws IOException {
+    int columnCount = fields.length;
+    int bitmapSize = (rowCount + 7) / 8;
+    int[] bitmapOffsets = new int[columnCount];
+    int[] widths = new int[columnCount];
+    int[] vectorOffsets = new int[columnCount];
+    int[][] valueOffsets = new int[columnCount][];
+    int pos = 0;
+
+    for (int col = 0; col < columnCount; ++col) {
+      bitmapOffsets[col] = pos;
+      pos += bitmapSize;
+      if (pos > slab.length) {
+        throw new IOException("Invalid ColumnBatch: payload too short for " + columnCount
+            + " columns");
+      }
+
+      int width = fixedWidth(fields[col]);
+      widths[col] = width;
+      if (width > 0) {
+        vectorOffsets[col] = pos;
+        pos += width * rowCount;
+        continue;
+      }
+
+      int[] offsets = new int[rowCount];
+      for (int row = 0; row < rowCount; ++row) {
+        if (isNull(slab, bitmapOffsets[col], row)) {
+          offsets[row] = -1;
+          continue;
+        }
+        if (pos + 4 > slab.length) {
+          throw new IOException("Invalid ColumnBatch: payload too short for " + rowCount
+              + " rows");
+        }
+        int size = ByteConverter.int4(slab, pos);
+        pos += 4;
+        offsets[row] = pos;
+        pos += size;
+      }
+      valueOffsets[col] = offsets;
+    }
+
+    if (pos != slab.length) {
+      throw new IOException(
+          "Invalid ColumnBatch: column data does not match the message length");
+    }
+
+    return new ColumnBatch(fields, rowCount, slab, bitmapOffsets, widths, vectorOffsets,
+        valueOffsets);
+  }
+
+  /**
+   * The width of the values of a column that is sent as a vector, or 0 if its values are
+   * sent with a length each.
+   */
+  static int fixedWidth(Field field) {
+    if (field.format != Field.BINARY_FORMAT) {
+      return 0;
+    }
+    switch (field.type) {
+      case Types.SMALLINT:
+        return 2;
+      case Types.INTEGER:
+      case Types.FLOAT:
+        return 4;
+      case Types.BIGINT:
+      case Types.DOUBLE:
+        return 8;
+      default:
+        return 0;
+    }
+  }
+
+  private static boolean isNull(byte[] slab, int bitmapOffset, int row) {
+    return (slab[bitmapOffset + (row >>> 3)] & (1 << (row & 7))) != 0;
+  }
+
+  public Field[] getFields() {
+    return fields;
+  }
+
+  public @NonNegative int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Number of bytes of the batch, used for accounting.
+   *
+   * @return the payload size
+   */
+  public int length() {
+    return slab.length;
+  }
+
+  public boolean isNull(@NonNegative int row, @NonNegative int col) {
+    return isNull(slab, bitmapOffsets[col], row);
+  }
+
+  /**
+   * Whether the column is stored as a contiguous vector of fixed width values.
+   *
+   * @param col 0-based column position
+   * @return true if {@link #readDoubles} and {@link #readLongs} can convert it in bulk
+   */
+  public boolean isFixedWidth(@NonNegative int col) {
+    return widths[col] > 0;
+  }
+
+  public byte @Nullable [] getBuffer(@NonNegative int row, @NonNegative int col) {
+    return isNull(row, col) ? null : slab;
+  }
+
+  public @NonNegative int getOffset(@NonNegative int row, @NonNegative int col) {
+    int width = widths[col];
+    if (width > 0) {
+      return vectorOffsets[col] + row * width;
+    }
+    int offset = valueOffsets[col][row];
+    return offset < 0 ? 0 : offset;
+  }
+
+  public int getLength(@NonNegative int row, @NonNegative int col) {
+    if (isNull(row, col)) {
+      return -1;
+    }
+    int width = widths[col];
+    if (width > 0) {
+      return width;
+    }
+    return ByteConverter.int4(slab, valueOffsets[col][row] - 4);
+  }
+
+  /**
+   * Convert a fixed width column to doubles. NULL values are read as 0.
+   *
+   * @param col       0-based column position
+   * @param dst       the array to fill
+   * @param dstOffset the position in <code>dst</code> of the first row of this batch
+   */
+  public void readDoubles(@NonNegative int col, double[] dst, @NonNegative int dstOffset) {
+    int pos = vectorOffsets[col];
+    switch (fields[col].type) {
+      case Types.DOUBLE:
+        for (int row = 0; row < rowCount; ++row, pos += 8) {
+          dst[dstOffset + row] = ByteConverter.float8(slab, pos);
+        }
+        break;
+      case Types.FLOAT:
+        for (int row = 0; row < rowCount; ++row, pos += 4) {
+          dst[dstOffset + row] = ByteConverter.float4(slab, pos);
+        }
+        break;
+      case Types.BIGINT:
+        for (int row = 0; row < rowCount; ++row, pos += 8) {
+          dst[dstOffset + row] = ByteConverter.int8(slab, pos);
+        }
+        break;
+      case Types.INTEGER:
+        for (int row = 0; row < rowCount; ++row, pos += 4) {
+          dst[dstOffset + row] = ByteConverter.int4(slab, pos);
+        }
+        break;
+      case Types.SMALLINT:
+        for (int row = 0; row < rowCount; ++row, pos += 2) {
+          dst[dstOffset + row] = ByteConverter.int2(slab, pos);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Column " + (col + 1) + " is not a vector");
+    }
+    clearNulls(col, dst, dstOffset);
+  }
+
+  /**
+   * Convert a fixed width integer column to longs. NULL values are read as 0.
+   *
+   * @param col       0-based column position
+   * @param dst       the array to fill
+   * @param dstOffset the position in <code>dst</code> of the first row of this batch
+   */
+  public void readLongs(@NonNegative int col, long[] dst, @NonNegative int dstOffset) {
+    int pos = vectorOffsets[col];
+    switch (fields[col].type) {
+      case Types.BIGINT:
+        for (int row = 0; row < rowCount; ++row, pos += 8) {
+          dst[dstOffset + row] = ByteConverter.int8(slab, pos);
+        }
+        break;
+      case Types.INTEGER:
+        for (int row = 0; row < rowCount; ++row, pos += 4) {
+          dst[dstOffset + row] = ByteConverter.int4(slab, pos);
+        }
+        break;
+      case Types.SMALLINT:
+        for (int row = 0; row < rowCount; ++row, pos += 2) {
+          dst[dstOffset + row] = ByteConverter.int2(slab, pos);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Column " + (col + 1) + " is not an integer vector");
+    }
+    for (int row = 0; row < rowCount; ++row) {
+      if (isNull(row, col)) {
+        dst[dstOffset + row] = 0;
+      }
+    }
+  }
+
+  private void clearNulls(int col, double[] dst, int dstOffset) {
+    int bitmapOffset = bitmapOffsets[col];
+    for (int i = 0; i < (rowCount + 7) / 8; ++i) {
+      int bits = slab[bitmapOffset + i] & 0xFF;
+      while (bits != 0) {
+        int bit = Integer.numberOfTrailingZeros(bits);
+        dst[dstOffset + i * 8 + bit] = 0;
+        bits &= bits - 1;
+      }
+    }
+  }
+
+  /**
+   * The given row as a tuple reading from this batch.
+   *
+   * @param row 0-based row position
+   * @return a read-only tuple
+   */
+  public Tuple getRow(@NonNegative int row) {
+    return new Row(row);
+  }
+
+  /**
+   * A row of the batch. The values stay in the batch payload.
+   */
+  private class Row extends Tuple {
+    private final int row;
+
+    Row(int row) {
+      this.row = row;
+    }
+
+    @Override
+    public @NonNegative int fieldCount() {
+      return fields.length;
+    }
+
+    @Override
+    public @NonNegative int length() {
+      int length = 0;
+      for (int col = 0; col < fields.length; ++col) {
+        length += Math.max(0, getLength(col));
+      }
+      return length;
+    }
+
+    @Override
+    public byte @Nullable [] get(@NonNegative int index) {
+      if (isNull(index)) {
+        return null;
+      }
+      byte[] value = new byte[getLength(index)];
+      System.arraycopy(slab, getOffset(index), value, 0, value.length);
+      return value;
+    }
+
+    @Override
+    public boolean isNull(@NonNegative int index) {
+      return ColumnBatch.this.isNull(row, index);
+    }
+
+    @Override
+    public byte @Nullable [] getBuffer(@NonNegative int index) {
+      return ColumnBatch.this.getBuffer(row, index);
+    }
+
+    @Override
+    public @NonNegative int getOffset(@NonNegative int index) {
+      return ColumnBatch.this.getOffset(row, index);
+    }
+
+    @Override
+    public int getLength(@NonNegative int index) {
+      return ColumnBatch.this.getLength(row, index);
+    }
+
+    @Override
+    public Tuple updateableCopy() {
+      Tuple copy = new Tuple(fields.length);
+      for (int col = 0; col < fields.length; ++col) {
+        copy.set(col, get(col));
+      }
+      return copy;
+    }
+
+    @Override
+    public Tuple readOnlyCopy() {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rows of one or more {@link ColumnBatch}es, in order, as a list of tuples. Result sets
+ * use it like any other list of rows; columnar readers get at the batches directly.
+ */
+public class ColumnBatchList extends AbstractList<Tuple> {
+  private final List<ColumnBatch> batches = new ArrayList<ColumnBatch>();
+  // Index of the first row of each batch
+  private int[] firstRows = new int[4];
+  private int size;
+
+  public void addBatch(ColumnBatch batch) {
+    if (batches.size() == firstRows.length) {
+      int[] grown = new int[firstRows.length * 2];
+      System.arraycopy(firstRows, 0, grown, 0, firstRows.length);
+      firstRows = grown;
+    }
+    firstRows[batches.size()] = size;
+    batches.add(batch);
+    size += batch.getRowCount();
+  }
+
+  public List<ColumnBatch> getBatches() {
+    return Collections.unmodifiableList(batches);
+  }
+
+  @Override
+  public Tuple get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    int batch = findBatch(index);
+    return batches.get(batch).getRow(index - firstRows[batch]);
+  }
+
+  private int findBatch(int index) {
+    int low = 0;
+    int high = batches.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (firstRows[mid] <= index) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Finds a column by its label, ignoring case like {@link String#equalsIgnoreCase(String)}.
+ * When labels differ only in case, the first column is found, as the JDBC spec requires.
+ *
+ * <p>The index is immutable once built, so one index serves every result set of a row
+ * description, see {@link Field#getLabelIndex()}. It is an open-addressing hash table: a lookup
+ * hashes the label once and usually compares it with a single candidate.</p>
+ */
+public final class ColumnLabelIndex {
+  private final String[] labels;
+  // 1-based index of the column whose label is in the slot, 0 for an empty slot
+  private final int[] columns;
+  private final int mask;
+
+  private ColumnLabelIndex(Field[] fields) {
+    int capacity = Integer.highestOneBit(Math.max(fields.length, 1) * 2 - 1) << 1;
+    this.labels = new String[capacity];
+    this.columns = new int[capacity];
+    this.mask = capacity - 1;
+
+    for (int i = 0; i < fields.length; ++i) {
+      String label = fields[i].name;
+      int slot = hash(label) & mask;
+      while (true) {
+        if (columns[slot] == 0) {
+          labels[slot] = label;
+          columns[slot] = i + 1;
+          break;
+        }
+        if (labels[slot].equalsIgnoreCase(label)) {
+          // the first column with this label is kept
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+  }
+
+  /**
+   * Build the index of a row description, or reuse the index of the previous one if it has the
+   * same labels in the same order.
+   *
+   * @param fields   the columns
+   * @param previous the index of the previous row description, if any
+   * @return the index of the columns
+   */
+  public static ColumnLabelIndex of(Field[] fields, @Nullable ColumnLabelIndex previous) {
+    if (previous != null && previous.hasLabels(fields)) {
+      return previous;
+    }
+    return new ColumnLabelIndex(fields);
+  }
+
+  /**
+   * Find a column by its label.
+   *
+   * @param label the label of the column
+   * @return the first column is 1, the second is 2, ...; 0 if no column has the label
+   */
+  public int indexOf(String label) {
+    int slot = hash(label) & mask;
+    int column;
+    while ((column = columns[slot]) != 0) {
+      String candidate = labels[slot];
+      if (candidate == label || candidate.equalsIgnoreCase(label)) {
+        return column;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return 0;
+  }
+
+  /**
+   * Tell whether this is the index of columns with exactly these labels, in this order.
+   */
+  private boolean hasLabels(Field[] fields) {
+    int count = 0;
+    for (int column : columns) {
+      if (column != 0) {
+        ++count;
+      }
+    }
+    // labels that differ only in case are indexed once, so such fields are never matched
+    if (count != fields.length) {
+      return false;
+    }
+    for (int slot = 0; slot < columns.length; ++slot) {
+      int column = columns[slot];
+      if (column != 0 && !labels[slot].equals(fields[column - 1].name)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A hash that is the same for labels that are equal ignoring case, cheap for ASCII.
+   */
+  private static int hash(String label) {
+    int h = 0;
+    for (int i = 0; i < label.length(); ++i) {
+      char c = label.charAt(i);
+      if (c < 0x80) {
+        if (c >= 'A' && c <= 'Z') {
+          c += 'a' - 'A';
+        }
+      } else {
+        c = Character.toLowerCase(Character.toUpperCase(c));
+      }
+      h = 31 * h + c;
+    }
+    // spread the bits that the mask drops
+    return h ^ (h >>> 16);
+  }
+}
@@ -16,15 +16,32 @@ package traindb.jdbc.core;
 
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.security.SecureRandom;
+import java.sql.JDBCType;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.SocketFactory;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.hostchooser.GlobalHostStatusTracker;
+import traindb.jdbc.hostchooser.HostChooser;
+import traindb.jdbc.hostchooser.HostChooserFactory;
+import traindb.jdbc.hostchooser.HostStatus;
 import traindb.jdbc.util.HostSpec;
+import traindb.jdbc.util.TrainDBJdbcException;
 import traindb.jdbc.util.TrainDBProperty;
+import traindb.jdbc.util.TrainDBState;
 
 /**
  * ConnectionFactory implementation for connections.
@@ -32,35 +49,118 @@ import traindb.jdbc.util.TrainDBProperty;
 public class ConnectionFactoryImpl extends ConnectionFactory {
   private static final Logger LOGGER = Logger.getLogger(ConnectionFactoryImpl.class.getName());
 
+  /**
+   * Types that TrainDBResultSet can read in binary format: fixed-width big-endian values.
+   */
+  private static final Set<Integer> SUPPORTED_BINARY_TYPES = Collections.unmodifiableSet(
+      new HashSet<Integer>(Arrays.asList(
+          Types.SMALLINT,
+          Types.INTEGER,
+          Types.BIGINT,
+          Types.FLOAT,
+          Types.DOUBLE)));
+
+  // Source of the keys that identify a session in cancel requests
+  private static final SecureRandom CANCEL_KEY_GENERATOR = new SecureRandom();
+
   @Override
   public QueryExecutor openConnectionImpl(String url, Properties info) throws SQLException {
     SocketFactory socketFactory = SocketFactory.getDefault();// .getSocketFactory(info);
 
-    TrainDBStream newStream = null;
+    long cancelKey = CANCEL_KEY_GENERATOR.nextLong();
+    HostSpec[] hostSpecs = hostSpecs(info);
+    HostChooser hostChooser = HostChooserFactory.createHostChooser(hostSpecs, info);
 
-    try {
-      newStream = tryConnect(url, info, socketFactory);
-    } catch (SQLException e) {
+    // Try every candidate in turn; the chooser puts hosts that failed recently last
+    IOException lastException = null;
+    for (HostSpec hostSpec : hostChooser) {
+      LOGGER.log(Level.FINE, "Trying to establish a connection to {0}", hostSpec);
 
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+      TrainDBStream newStream;
+      try {
+        newStream = tryConnect(url, info, socketFactory, hostSpec, cancelKey);
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "Connection to " + hostSpec + " failed", e);
+        GlobalHostStatusTracker.reportHostStatus(hostSpec, HostStatus.ConnectFail);
+        lastException = e;
+        continue;
+      }
+      GlobalHostStatusTracker.reportHostStatus(hostSpec, HostStatus.ConnectOK);
 
-    QueryExecutor queryExecutor = new QueryExecutor(newStream, info);
+      QueryExecutor queryExecutor = new QueryExecutor(newStream, info);
+      queryExecutor.setCancelKey(cancelKey);
+      GlobalHostStatusTracker.connectionOpened(hostSpec);
 
-    // runInitialQueries(queryExecutor, info);
+      // runInitialQueries(queryExecutor, info);
 
-    return queryExecutor;
+      return queryExecutor;
+    }
+
+    throw new TrainDBJdbcException(
+        MessageFormat.format("Could not connect to any of the hosts {0}.",
+            Arrays.toString(hostSpecs)),
+        TrainDBState.CONNECTION_UNABLE_TO_CONNECT, lastException);
   }
 
-  private TrainDBStream tryConnect(String url, Properties info, SocketFactory socketFactory)
+  /**
+   * The hosts of the {@code server.host} and {@code server.port} lists set by
+   * {@link traindb.jdbc.Driver#parseURL(String, Properties)} or given as URL arguments. A single
+   * port applies to every host.
+   */
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/Driver.java
+  private static HostSpec[] hostSpecs(Properties info) throws SQLException {
+    String[] hosts = info.getProperty("server.host", "localhost").split(",");
+    String[] ports = info.getProperty("server.port", "").split(",");
+    if (ports.length == 1 && hosts.length > 1) {
+      String port = ports[0];
+      ports = new String[hosts.length];
+      Arrays.fill(ports, port);
+    }
+    if (hosts.length != ports.length) {
+      throw new TrainDBJdbcException(
+          MessageFormat.format("Got {0} hosts but {1} ports.", hosts.length, ports.length),
+          TrainDBState.INVALID_PARAMETER_VALUE);
+    }
+    HostSpec[] hostSpecs = new HostSpec[hosts.length];
+    for (int i = 0; i < hostSpecs.length; ++i) {
+      try {
+        hostSpecs[i] = new HostSpec(hosts[i].trim(), Integer.parseInt(ports[i].trim()));
+      } catch (NumberFormatException e) {
+        throw new TrainDBJdbcException(
+            MessageFormat.format("Invalid port number: {0}", ports[i]),
+            TrainDBState.INVALID_PARAMETER_VALUE, e);
+      }
+    }
+    return hostSpecs;
+  }
+
+  private TrainDBStream tryConnect(String url, Properties info, SocketFactory socketFactory,
+                                   HostSpec hostSpec, long cancelKey)
       throws SQLException, IOException {
     int connectTimeout = TrainDBProperty.CONNECT_TIMEOUT.getInt(info) * 1000;
 
-    HostSpec hostSpec = new HostSpec(info.getProperty("server.host"),
-        Integer.parseInt(info.getProperty("server.port")));
+    TrainDBStream newStream = TrainDBProperty.SOCKET_CHANNEL.getBoolean(info)
+        ? new NioTrainDBStream(socketFactory, hostSpec, connectTimeout)
+        : new TrainDBStream(socketFactory, hostSpec, connectTimeout);
+    try {
+      setupStream(newStream, url, info, cancelKey);
+    } catch (SQLException | IOException e) {
+      // do not leak the socket of a host we give up on
+      try {
+        newStream.close();
+      } catch (IOException ignored) {
+        // nothing to do
+      }
+      throw e;
+    }
+    return newStream;
+  }
 
-    TrainDBStream newStream = new TrainDBStream(socketFactory, hostSpec, connectTimeout);
+  private void setupStream(TrainDBStream newStream, String url, Properties info, long cancelKey)
+      throws SQLException, IOException {
+
+    // Set the heap budget for result rows
+    newStream.setMaxResultBuffer(TrainDBProperty.MAX_RESULT_BUFFER.get(info));
 
     // Set the socket timeout if the "socketTimeout" property has been set.
     int socketTimeout = TrainDBProperty.SOCKET_TIMEOUT.getInt(info);
@@ -131,10 +231,70 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
     paramList.add(new String[] {"url", url});
     paramList.add(new String[] {"user", info.getProperty("user")});
     paramList.add(new String[] {"password", info.getProperty("password", "")});
+    paramList.add(new String[] {"cancelKey", Long.toString(cancelKey)});
+
+    Set<Integer> binaryTypes = getBinaryEnabledTypes(info);
+    if (!binaryTypes.isEmpty()) {
+      paramList.add(new String[] {"binaryTypes", joinTypes(binaryTypes)});
+    }
+    if (TrainDBProperty.COLUMNAR_RESULTS.getBoolean(info)) {
+      paramList.add(new String[] {"columnarResults", "true"});
+    }
 
     sendStartupPacket(newStream, paramList);
+  }
 
-    return newStream;
+  /**
+   * The column types whose values the server is asked to send in binary. The server answers
+   * per column through the format of the RowDescription, so a server that does not know the
+   * request keeps sending text and nothing else changes.
+   */
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/jdbc/PgConnection.java
+  private static Set<Integer> getBinaryEnabledTypes(Properties info) {
+    boolean binaryTransfer = TrainDBProperty.BINARY_TRANSFER.getBoolean(info);
+    // Build up set of binary enabled types
+    Set<Integer> binaryTypes = new HashSet<Integer>(32);
+    if (binaryTransfer) {
+      binaryTypes.addAll(SUPPORTED_BINARY_TYPES);
+    }
+    binaryTypes.addAll(getTypeSet(TrainDBProperty.BINARY_TRANSFER_ENABLE.get(info)));
+    binaryTypes.removeAll(getTypeSet(TrainDBProperty.BINARY_TRANSFER_DISABLE.get(info)));
+    binaryTypes.retainAll(SUPPORTED_BINARY_TYPES);
+    return binaryTypes;
+  }
+
+  private static Set<Integer> getTypeSet(@Nullable String types) {
+    Set<Integer> typeSet = new HashSet<Integer>();
+    if (types == null) {
+      return typeSet;
+    }
+    for (String type : types.split(",")) {
+      type = type.trim();
+      if (type.isEmpty()) {
+        continue;
+      }
+      try {
+        if (Character.isDigit(type.charAt(0)) || type.charAt(0) == '-') {
+          typeSet.add(JDBCType.valueOf(Integer.parseInt(type)).getVendorTypeNumber());
+        } else {
+          typeSet.add(JDBCType.valueOf(type.toUpperCase(Locale.ROOT)).getVendorTypeNumber());
+        }
+      } catch (IllegalArgumentException e) {
+        LOGGER.log(Level.WARNING, "Ignore unknown type in binary transfer list: {0}", type);
+      }
+    }
+    return typeSet;
+  }
+
+  private static String joinTypes(Set<Integer> types) {
+    StringBuilder sb = new StringBuilder();
+    for (Integer type : new TreeSet<Integer>(types)) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(type);
+    }
+    return sb.toString();
   }
 
   private void sendStartupPacket(TrainDBStream stream, List<String[]> params) throws IOException {
@@ -144,11 +304,7 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
       pros.setProperty(params.get(i)[0], params.get(i)[1]);
     }
 
-    byte[] data = new Gson().toJson(pros).getBytes();
-
-    stream.sendChar('S');
-    stream.sendInteger4(4 + data.length);
-    stream.send(data);
+    stream.sendStringMessage('S', new Gson().toJson(pros));
     stream.flush();
   }
 }
\ No newline at end of file
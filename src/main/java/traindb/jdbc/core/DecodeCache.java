@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.io.IOException;
+
+/**
+ * Decodes the values of one result set so that a value repeated in many rows is decoded once,
+ * and every row gets the same {@code String}. Meant for columns with few distinct values, like
+ * the group keys of an aggregate. Only ASCII values are shared, and only the first
+ * {@code maxSize} distinct ones; the others are decoded every time.
+ */
+public final class DecodeCache {
+  private final AsciiStringInterner interner = new AsciiStringInterner();
+  private final Encoding encoding;
+  private final int maxSize;
+
+  /**
+   * @param encoding the encoding of the values
+   * @param maxSize  maximum number of distinct values kept
+   */
+  public DecodeCache(Encoding encoding, int maxSize) {
+    this.encoding = encoding;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Decode a value, or return the {@code String} decoded earlier from the same bytes.
+   *
+   * @param bytes  the buffer holding the value
+   * @param offset the first byte of the value
+   * @param length the length of the value
+   * @return the decoded value
+   * @throws IOException if the bytes are not valid in the encoding
+   */
+  public String decode(byte[] bytes, int offset, int length) throws IOException {
+    // if the digits are not ascii, no value is
+    if (!encoding.hasAsciiNumbers()) {
+      return encoding.decode(bytes, offset, length);
+    }
+    return interner.cache.size() < maxSize
+        ? interner.getString(bytes, offset, length, encoding)
+        : interner.getStringIfPresent(bytes, offset, length, encoding);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A JVM wide pool of direct byte buffers of one size.
+ *
+ * <p>Direct buffers are expensive to allocate and are only freed when they are garbage
+ * collected, so the buffers of closed connections are kept for the next connection. At most
+ * {@link #MAX_POOLED} buffers are retained; buffers released beyond that are left to the
+ * garbage collector.</p>
+ */
+final class DirectBufferPool {
+  /**
+   * Capacity of every pooled buffer.
+   */
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int MAX_POOLED = 64;
+
+  private static final ConcurrentLinkedQueue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger POOLED = new AtomicInteger();
+
+  private DirectBufferPool() {
+  }
+
+  /**
+   * Takes a buffer from the pool, allocating a new one if the pool is empty.
+   *
+   * @return a cleared, big-endian direct buffer of {@link #BUFFER_SIZE} bytes
+   */
+  static ByteBuffer acquire() {
+    ByteBuffer buffer = POOL.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+    }
+    POOLED.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool. Buffers that were not acquired from the pool are ignored.
+   *
+   * @param buffer the buffer to return; it must not be used by the caller afterwards
+   */
+  static void release(ByteBuffer buffer) {
+    if (!buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+      return;
+    }
+    if (POOLED.incrementAndGet() > MAX_POOLED) {
+      POOLED.decrementAndGet();
+      return;
+    }
+    POOL.offer(buffer);
+  }
+}
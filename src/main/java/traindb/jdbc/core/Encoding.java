@@ -251,6 +251,29 @@ public class Encoding {
     return s.getBytes(encoding);
   }
 
+  /**
+   * The number of bytes of the encoded form of a string, if it can be told without encoding
+   * the string.
+   *
+   * @param s the string
+   * @return the encoded length, or -1 if the string has to be encoded to know it
+   */
+  public int encodedLength(String s) {
+    return -1;
+  }
+
+  /**
+   * Encode a string straight to a stream. Encodings that know their {@link #encodedLength
+   * encoded length} do this without building an encoded copy of the string.
+   *
+   * @param s   the string to encode
+   * @param out the stream to write the encoded bytes to
+   * @throws IOException if something goes wrong
+   */
+  public void encode(String s, OutputStream out) throws IOException {
+    out.write(encode(s));
+  }
+
   /**
    * Decode an array of bytes possibly into a canonicalized string.
    *
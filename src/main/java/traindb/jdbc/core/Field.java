@@ -14,6 +14,8 @@
 
 package traindb.jdbc.core;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 public class Field {
   public static final int TEXT_FORMAT = 0;
   public static final int BINARY_FORMAT = 1;
@@ -21,6 +23,8 @@ public class Field {
   public final int size;
   public final int format;
   public String name;
+  // Shared by all the fields of a row description
+  private @Nullable ColumnLabelIndex labelIndex;
 
   public Field(String name, int type, int size, int format) {
     this.name = name;
@@ -29,4 +33,25 @@ public class Field {
     this.format = format;
   }
 
+  /**
+   * The index of the labels of the row description this field is part of.
+   *
+   * @return the index, or null if the fields were not built from a row description
+   */
+  public @Nullable ColumnLabelIndex getLabelIndex() {
+    return labelIndex;
+  }
+
+  /**
+   * Share one label index between all the fields of a row description.
+   *
+   * @param fields     the fields of the row description
+   * @param labelIndex the index of their labels
+   */
+  static void setLabelIndex(Field[] fields, ColumnLabelIndex labelIndex) {
+    for (Field field : fields) {
+      field.labelIndex = labelIndex;
+    }
+  }
+
 }
@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+/**
+ * Callback interface for the successive responses of an incremental query, see
+ * {@link QueryExecutor#executeIncremental(String, IncrementalResultHandler)}: the first
+ * estimate, then every refinement of it.
+ */
+public interface IncrementalResultHandler {
+  /**
+   * Called before a response is read.
+   *
+   * @return the handler for the results of the response
+   */
+  ResultHandler newResponseHandler();
+
+  /**
+   * Called once a response was read completely. This runs while the query executor is busy
+   * with the query, so it must not use the connection.
+   *
+   * @param response the handler returned by the matching {@link #newResponseHandler()}
+   * @return true to get the next refinement, false to stop
+   */
+  boolean handleResponse(ResultHandler response);
+}
@@ -0,0 +1,447 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.util.HostSpec;
+
+/**
+ * A {@link TrainDBStream} that talks to the backend through a non-blocking {@link SocketChannel}
+ * and a pair of direct buffers taken from {@link DirectBufferPool}.
+ *
+ * <p>Integers are read with absolute {@link ByteBuffer#getInt(int)} calls on the receive
+ * buffer, and payloads larger than what is buffered are transferred straight between the
+ * channel and the caller's array. Read timeouts are implemented with a {@link Selector} since
+ * {@link Socket#setSoTimeout(int)} has no effect on channels.</p>
+ *
+ * <p>The socket is created by the channel, so the connection's {@link SocketFactory} is not used
+ * and the host is always resolved locally.</p>
+ */
+public class NioTrainDBStream extends TrainDBStream {
+  private final OutputStream outputAdapter = new OutputStream() {
+    @Override
+    public void write(int b) throws IOException {
+      sendChar(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      writeBytes(b, off, len);
+    }
+  };
+
+  private @Nullable Socket socket;
+  private @Nullable SocketChannel channel;
+  private @Nullable Selector selector;
+  private @Nullable SelectionKey key;
+
+  /**
+   * Receive buffer, kept in read mode: the unread bytes are between position and limit.
+   */
+  private @Nullable ByteBuffer in;
+
+  /**
+   * Send buffer, kept in write mode: the pending bytes are between zero and position.
+   */
+  private @Nullable ByteBuffer out;
+
+  private byte[] scratch = new byte[256];
+  private int networkTimeout;
+
+  public NioTrainDBStream(SocketFactory socketFactory, HostSpec hostSpec, int timeout)
+      throws IOException {
+    super(socketFactory, hostSpec);
+
+    SocketChannel newChannel = SocketChannel.open();
+    try {
+      Socket newSocket = newChannel.socket();
+      String localSocketAddress = hostSpec.getLocalSocketAddress();
+      if (localSocketAddress != null) {
+        newSocket.bind(new InetSocketAddress(InetAddress.getByName(localSocketAddress), 0));
+      }
+      // the channel is still blocking here, so the connect timeout applies as usual
+      newSocket.connect(new InetSocketAddress(hostSpec.getHost(), hostSpec.getPort()), timeout);
+      changeSocket(newSocket);
+    } catch (IOException e) {
+      newChannel.close();
+      throw e;
+    }
+    setEncoding(Encoding.getJVMEncoding("UTF-8"));
+  }
+
+  @Override
+  public Socket getSocket() {
+    return socket;
+  }
+
+  @Override
+  public void changeSocket(Socket socket) throws IOException {
+    SocketChannel newChannel = socket.getChannel();
+    if (newChannel == null) {
+      throw new IOException("The socket was not created by a SocketChannel");
+    }
+
+    this.socket = socket;
+    this.channel = newChannel;
+
+    socket.setTcpNoDelay(true);
+    newChannel.configureBlocking(false);
+    if (selector != null) {
+      selector.close();
+    }
+    selector = Selector.open();
+    key = newChannel.register(selector, SelectionKey.OP_READ);
+
+    if (in == null) {
+      in = DirectBufferPool.acquire();
+      in.flip();
+    }
+    if (out == null) {
+      out = DirectBufferPool.acquire();
+    }
+  }
+
+  @Override
+  protected OutputStream getOutputStream() {
+    return outputAdapter;
+  }
+
+  /*
+   * Sending
+   */
+
+  @Override
+  public void sendByte(byte val) throws IOException {
+    reserve(1).put(val);
+  }
+
+  @Override
+  public void sendChar(int val) throws IOException {
+    reserve(1).put((byte) val);
+  }
+
+  @Override
+  public void sendInteger4(int val) throws IOException {
+    reserve(4).putInt(val);
+  }
+
+  @Override
+  public void sendInteger2(int val) throws IOException {
+    if (val < Short.MIN_VALUE || val > Short.MAX_VALUE) {
+      throw new IOException("Tried to send an out-of-range integer as a 2-byte value: " + val);
+    }
+    reserve(2).putShort((short) val);
+  }
+
+  @Override
+  public void send(byte[] buf) throws IOException {
+    writeBytes(buf, 0, buf.length);
+  }
+
+  @Override
+  public void send(byte[] buf, int off, int siz) throws IOException {
+    int bufamt = buf.length - off;
+    writeBytes(buf, off, bufamt < siz ? bufamt : siz);
+    for (int i = bufamt; i < siz; ++i) {
+      sendChar(0);
+    }
+  }
+
+  private ByteBuffer reserve(int n) throws IOException {
+    if (out.remaining() < n) {
+      flushBuffer();
+    }
+    return out;
+  }
+
+  private void writeBytes(byte[] buf, int off, int len) throws IOException {
+    if (len <= out.remaining()) {
+      out.put(buf, off, len);
+      return;
+    }
+    flushBuffer();
+    if (len <= out.remaining()) {
+      out.put(buf, off, len);
+    } else {
+      // too large to stage: write it to the channel from the caller's array
+      writeFully(ByteBuffer.wrap(buf, off, len));
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    out.flip();
+    try {
+      writeFully(out);
+    } finally {
+      out.clear();
+    }
+  }
+
+  private void writeFully(ByteBuffer src) throws IOException {
+    while (src.hasRemaining()) {
+      if (channel.write(src) == 0) {
+        await(SelectionKey.OP_WRITE, 0);
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (out.position() > 0) {
+      flushBuffer();
+    }
+  }
+
+  /*
+   * Receiving
+   */
+
+  @Override
+  public int receiveChar() throws IOException {
+    ensure(1);
+    return in.get() & 0xFF;
+  }
+
+  @Override
+  public int receiveInteger4() throws IOException {
+    ensure(4);
+    int pos = in.position();
+    int val = in.getInt(pos);
+    in.position(pos + 4);
+    return val;
+  }
+
+  @Override
+  public int receiveInteger2() throws IOException {
+    ensure(2);
+    int pos = in.position();
+    int val = in.getShort(pos) & 0xFFFF;
+    in.position(pos + 2);
+    return val;
+  }
+
+  @Override
+  public String receiveCanonicalString() throws IOException {
+    int len = scanCStringLength();
+    byte[] bytes = copyOut(len);
+    return getEncoding().decodeCanonicalized(bytes, 0, len - 1);
+  }
+
+  @Override
+  public String receiveString() throws IOException {
+    int len = scanCStringLength();
+    byte[] bytes = copyOut(len);
+    return getEncoding().decode(bytes, 0, len - 1);
+  }
+
+  @Override
+  public String receiveString(int len) throws IOException {
+    ensure(len);
+    byte[] bytes = copyOut(len);
+    return getEncoding().decode(bytes, 0, len);
+  }
+
+  @Override
+  public EncodingPredictor.DecodeResult receiveErrorString(int len) throws IOException {
+    ensure(len);
+    byte[] bytes = copyOut(len);
+
+    EncodingPredictor.DecodeResult res;
+    try {
+      String value = getEncoding().decode(bytes, 0, len);
+      // no autodetect warning as the message was converted on its own
+      res = new EncodingPredictor.DecodeResult(value, null);
+    } catch (IOException e) {
+      res = EncodingPredictor.decode(bytes, 0, len);
+      if (res == null) {
+        Encoding enc = Encoding.defaultEncoding();
+        String value = enc.decode(bytes, 0, len);
+        res = new EncodingPredictor.DecodeResult(value, enc.name());
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public void receive(byte[] buf, int off, int siz) throws IOException {
+    int buffered = Math.min(in.remaining(), siz);
+    in.get(buf, off, buffered);
+    if (buffered == siz) {
+      return;
+    }
+
+    // the rest of the payload goes straight from the channel into the caller's array
+    ByteBuffer dst = ByteBuffer.wrap(buf, off + buffered, siz - buffered);
+    while (dst.hasRemaining()) {
+      readFromChannel(dst);
+    }
+  }
+
+  @Override
+  public void skip(int size) throws IOException {
+    int remaining = size;
+    while (true) {
+      int buffered = Math.min(in.remaining(), remaining);
+      in.position(in.position() + buffered);
+      remaining -= buffered;
+      if (remaining == 0) {
+        return;
+      }
+      fill();
+    }
+  }
+
+  /**
+   * Copies the next <code>len</code> buffered bytes into the scratch array and consumes them.
+   */
+  private byte[] copyOut(int len) {
+    if (scratch.length < len) {
+      scratch = new byte[Math.max(len, scratch.length * 2)];
+    }
+    in.get(scratch, 0, len);
+    return scratch;
+  }
+
+  /**
+   * Buffers the next null terminated string.
+   *
+   * @return the length of the string including the terminator
+   */
+  private int scanCStringLength() throws IOException {
+    int scanned = 0;
+    while (true) {
+      int start = in.position();
+      int limit = in.limit();
+      for (int i = start + scanned; i < limit; ++i) {
+        if (in.get(i) == '\0') {
+          return i - start + 1;
+        }
+      }
+      scanned = limit - start;
+      ensure(scanned + 1);
+    }
+  }
+
+  /**
+   * Makes sure at least <code>n</code> bytes are buffered.
+   */
+  private void ensure(int n) throws IOException {
+    if (in.remaining() >= n) {
+      return;
+    }
+    if (in.capacity() < n) {
+      int capacity = Math.max(n, 2 * in.capacity());
+      ByteBuffer larger = ByteBuffer.allocateDirect(capacity).order(ByteOrder.BIG_ENDIAN);
+      larger.put(in);
+      larger.flip();
+      DirectBufferPool.release(in);
+      in = larger;
+    }
+    while (in.remaining() < n) {
+      fill();
+    }
+  }
+
+  /**
+   * Reads whatever the channel has available, blocking until at least one byte arrived.
+   */
+  private void fill() throws IOException {
+    in.compact();
+    try {
+      readFromChannel(in);
+    } finally {
+      in.flip();
+    }
+  }
+
+  private void readFromChannel(ByteBuffer dst) throws IOException {
+    int n;
+    while ((n = channel.read(dst)) == 0) {
+      await(SelectionKey.OP_READ, networkTimeout);
+    }
+    if (n < 0) {
+      throw new EOFException();
+    }
+  }
+
+  /**
+   * Blocks until the channel is ready for the given operations.
+   *
+   * @param ops     the {@link SelectionKey} interest set
+   * @param timeout the timeout in milliseconds, or zero to wait forever
+   */
+  private void await(int ops, int timeout) throws IOException {
+    key.interestOps(ops);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    long wait = timeout;
+    while (selector.select(wait) == 0) {
+      if (timeout > 0) {
+        // woken up early; select(0) would block forever, so a spent deadline is a timeout
+        wait = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (wait <= 0) {
+          throw new SocketTimeoutException("Read timed out");
+        }
+      }
+    }
+    selector.selectedKeys().clear();
+  }
+
+  @Override
+  public int getNetworkTimeout() throws IOException {
+    return networkTimeout;
+  }
+
+  @Override
+  public void setNetworkTimeout(int milliseconds) throws IOException {
+    networkTimeout = milliseconds;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return !channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!channel.isOpen()) {
+      return;
+    }
+    try {
+      flush();
+    } finally {
+      try {
+        selector.close();
+      } finally {
+        channel.close();
+        DirectBufferPool.release(in);
+        DirectBufferPool.release(out);
+      }
+    }
+  }
+}
@@ -15,6 +15,7 @@
 package traindb.jdbc.core;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
@@ -32,10 +33,87 @@ abstract class OptimizedUTF8Encoder extends Encoding {
 
   private final int thresholdSize = 8 * 1024;
   private char[] decoderArray;
+  private final byte[] encoderArray;
 
   OptimizedUTF8Encoder() {
     super(StandardCharsets.UTF_8, true);
     decoderArray = new char[1024];
+    encoderArray = new byte[2048];
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Counts like {@link String#getBytes(java.nio.charset.Charset)}: an unpaired surrogate
+   * is encoded as {@code '?'}.</p>
+   */
+  @Override
+  public int encodedLength(String s) {
+    final int length = s.length();
+    int bytes = length;
+    for (int i = 0; i < length; ++i) {
+      char c = s.charAt(i);
+      if (c < MIN_2_BYTES) {
+        continue;
+      }
+      if (c < MIN_3_BYTES) {
+        bytes += 1;
+      } else if (!Character.isSurrogate(c)) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        // four bytes for the two chars of the pair
+        bytes += 2;
+        i++;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Encodes <i>s</i> as utf-8 through a reusable chunk buffer, so that no encoded copy of the
+   * whole string is built. An unpaired surrogate is encoded as {@code '?'}, as
+   * {@link String#getBytes(java.nio.charset.Charset)} does.
+   */
+  @Override
+  public void encode(String s, OutputStream out) throws IOException {
+    final byte[] buf = encoderArray;
+    // room for the longest sequence at any point of the loop
+    final int limit = buf.length - 4;
+    final int length = s.length();
+    int pos = 0;
+
+    for (int i = 0; i < length; ++i) {
+      if (pos > limit) {
+        out.write(buf, 0, pos);
+        pos = 0;
+      }
+
+      char c = s.charAt(i);
+      if (c < MIN_2_BYTES) {
+        buf[pos++] = (byte) c;
+      } else if (c < MIN_3_BYTES) {
+        buf[pos++] = (byte) (0xc0 | (c >> 6));
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (!Character.isSurrogate(c)) {
+        buf[pos++] = (byte) (0xe0 | (c >> 12));
+        buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        buf[pos++] = (byte) (0xf0 | (cp >> 18));
+        buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+      } else {
+        buf[pos++] = (byte) '?';
+      }
+    }
+
+    if (pos > 0) {
+      out.write(buf, 0, pos);
+    }
   }
 
   /**
@@ -35,15 +35,33 @@ public class ParameterList {
   private final int[] paramTypes;
   private final byte[] flags;
 
-  public ParameterList(String sql) {
-    this.paramCount = getParamCount(sql);
+  /**
+   * Create the parameter list of a query.
+   *
+   * @param paramCount the number of placeholders, see {@link ParsedSql#getBindCount()}
+   */
+  public ParameterList(int paramCount) {
+    this.paramCount = paramCount;
     this.paramValues = new Object[this.paramCount];
     this.paramTypes = new int[this.paramCount];
     this.flags = new byte[paramCount];
   }
 
-  private int getParamCount(String sql) {
-    return (int) sql.chars().filter(c -> c == '?').count();
+  private ParameterList(ParameterList other) {
+    this.paramCount = other.paramCount;
+    this.paramValues = other.paramValues.clone();
+    this.paramTypes = other.paramTypes.clone();
+    this.flags = other.flags.clone();
+  }
+
+  /**
+   * Copy the parameters as they are bound now, for a batch. The values are never modified in
+   * place, so they are shared rather than copied.
+   *
+   * @return a list with the same values, which later binds to this list do not affect
+   */
+  public ParameterList copy() {
+    return new ParameterList(this);
   }
 
   public int getParamCount() {
@@ -83,6 +101,13 @@ public class ParameterList {
     bind(paramIndex, data, Types.INTEGER, BINARY);
   }
 
+  /**
+   * Bind the big-endian binary form of a numeric value, see {@link ByteConverter}.
+   */
+  public void setBinaryParameter(int paramIndex, byte[] value, int type) throws SQLException {
+    bind(paramIndex, value, type, BINARY);
+  }
+
   public void setLiteralParameter(int paramIndex, String s, int type) throws SQLException {
     bind(paramIndex, s, type, TEXT);
   }
@@ -95,6 +120,70 @@ public class ParameterList {
     return flags;
   }
 
+  /**
+   * The declared types of the parameters, {@link Types#NULL} where none was bound yet.
+   *
+   * @return the {@link Types} of every parameter
+   */
+  public int[] getParamTypes() {
+    return paramTypes;
+  }
+
+  /**
+   * Tell whether a parameter was bound, possibly to NULL.
+   *
+   * @param index the 1-based index of the parameter
+   * @return true if a value was set
+   */
+  public boolean isSet(int index) {
+    return paramValues[index - 1] != null;
+  }
+
+  public boolean isNull(int index) {
+    return paramValues[index - 1] == NULL_OBJECT;
+  }
+
+  /**
+   * Tell whether a parameter holds its value in binary, as the big-endian bytes of a number or
+   * the raw bytes of a binary string.
+   *
+   * @param index the 1-based index of the parameter
+   * @return true if the value is binary
+   */
+  public boolean isBinary(int index) {
+    return (flags[index - 1] & BINARY) == BINARY;
+  }
+
+  /**
+   * The value of a binary parameter, see {@link #isBinary(int)}.
+   *
+   * @param index the 1-based index of the parameter
+   * @return the bytes of the value
+   */
+  public byte[] getBinaryValue(int index) {
+    Object paramValue = paramValues[index - 1];
+    if (paramValue instanceof ByteArray) {
+      ByteArray array = (ByteArray) paramValue;
+      if (array.getOffset() == 0 && array.getLength() == array.getArray().length) {
+        return array.getArray();
+      }
+      byte[] copy = new byte[array.getLength()];
+      System.arraycopy(array.getArray(), array.getOffset(), copy, 0, copy.length);
+      return copy;
+    }
+    return (byte[]) paramValue;
+  }
+
+  /**
+   * The value of a text parameter, unquoted.
+   *
+   * @param index the 1-based index of the parameter
+   * @return the text of the value
+   */
+  public String getTextValue(int index) {
+    return paramValues[index - 1].toString();
+  }
+
   public String toString(int index, boolean standardConformingStrings) {
     --index;
     Object paramValue = paramValues[index];
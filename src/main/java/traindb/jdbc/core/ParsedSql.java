@@ -0,0 +1,390 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+/**
+ * A query text split at its {@code ?} placeholders. The text is lexed once: placeholders in
+ * string literals, quoted identifiers and comments are not parameters.
+ *
+ * <p>The lexer also recognizes a plain {@code INSERT ... VALUES (...)} of a single row, whose
+ * row can be repeated to insert many rows with one statement, see
+ * {@link #toMultiRowNativeSql(ParameterList[], int, int, StringBuilder)}.</p>
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/core/Parser.java
+public final class ParsedSql {
+  private static final int[] NO_BINDS = new int[0];
+  // Keywords of a query that locks rows, stores its result, or changes data: FOR UPDATE,
+  // FOR [KEY] SHARE, LOCK IN SHARE MODE, SELECT ... INTO, WITH ... INSERT/UPDATE/DELETE/MERGE
+  private static final String[] WRITE_KEYWORDS = {
+      "update", "share", "lock", "into", "insert", "delete", "merge"
+  };
+
+  private final String sql;
+  private final int[] bindPositions;
+  // Offsets of the parentheses around the row of a multi-row capable INSERT, -1 otherwise
+  private final int valuesOpen;
+  private final int valuesClose;
+  private final boolean query;
+  private final boolean sessionChange;
+  private final boolean approximate;
+
+  private ParsedSql(String sql, int[] bindPositions, int valuesOpen, int valuesClose,
+                    boolean query, boolean sessionChange, boolean approximate) {
+    this.sql = sql;
+    this.bindPositions = bindPositions;
+    this.valuesOpen = valuesOpen;
+    this.valuesClose = valuesClose;
+    this.query = query;
+    this.sessionChange = sessionChange;
+    this.approximate = approximate;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * The number of {@code ?} placeholders.
+   *
+   * @return the number of parameters of the query
+   */
+  public int getBindCount() {
+    return bindPositions.length;
+  }
+
+  /**
+   * Append the query text with every placeholder replaced by the literal of its value, see
+   * {@link ParameterList#toString(int, boolean)}.
+   *
+   * @param parameters the parameter values
+   * @param sb         the buffer to append to
+   * @return the buffer
+   */
+  public StringBuilder toNativeSql(ParameterList parameters, StringBuilder sb) {
+    appendNativeSql(0, sql.length(), parameters, sb);
+    return sb;
+  }
+
+  /**
+   * Tell whether the statement only reads, that is whether it starts with SELECT, WITH or
+   * VALUES, and neither locks rows, stores its result nor changes data.
+   *
+   * @return true if running the statement twice gives the same as running it once
+   */
+  public boolean isQuery() {
+    return query;
+  }
+
+  /**
+   * Tell whether the statement changes the state of the session, that is whether it starts
+   * with USE or SET: the same query may then read other data.
+   *
+   * @return true if the statement may change the database or the schema of the session
+   */
+  public boolean isSessionChange() {
+    return sessionChange;
+  }
+
+  /**
+   * Tell whether the statement is an approximate query, that is whether it starts with
+   * {@code SELECT APPROXIMATE} or {@code SELECT INCREMENTAL}: only those have estimates that
+   * the server refines.
+   *
+   * @return true if the query is approximate
+   */
+  public boolean isApproximate() {
+    return approximate;
+  }
+
+  /**
+   * Tell whether the query is an INSERT of a single {@code VALUES} row, with every placeholder
+   * in that row and nothing but a semicolon after it. Such a query can insert several rows at
+   * once, see {@link #toMultiRowNativeSql(ParameterList[], int, int, StringBuilder)}.
+   *
+   * @return true if the row of the query can be repeated
+   */
+  public boolean isMultiRowInsert() {
+    return valuesClose >= 0;
+  }
+
+  /**
+   * Append the query text with its {@code VALUES} row repeated for several parameter sets, so
+   * that one statement inserts all of them. Only valid if {@link #isMultiRowInsert()}.
+   *
+   * @param rows the parameter values of the rows
+   * @param from the index of the first row to insert
+   * @param to   the index after the last row to insert
+   * @param sb   the buffer to append to
+   * @return the buffer
+   */
+  public StringBuilder toMultiRowNativeSql(ParameterList[] rows, int from, int to,
+                                          StringBuilder sb) {
+    appendNativeSql(0, valuesClose + 1, rows[from], sb);
+    for (int row = from + 1; row < to; ++row) {
+      sb.append(',');
+      appendNativeSql(valuesOpen, valuesClose + 1, rows[row], sb);
+    }
+    sb.append(sql, valuesClose + 1, sql.length());
+    return sb;
+  }
+
+  /**
+   * Append a range of the query text with its placeholders replaced by the literals of their
+   * values.
+   */
+  private void appendNativeSql(int start, int end, ParameterList parameters, StringBuilder sb) {
+    int last = start;
+    for (int i = 0; i < bindPositions.length; ++i) {
+      int position = bindPositions[i];
+      if (position < start) {
+        continue;
+      }
+      if (position >= end) {
+        break;
+      }
+      sb.append(sql, last, position);
+      sb.append(parameters.toString(i + 1, true));
+      last = position + 1;
+    }
+    sb.append(sql, last, end);
+  }
+
+  /**
+   * Find the placeholders of a query.
+   *
+   * @param sql the query text
+   * @return the parsed query
+   */
+  public static ParsedSql parse(String sql) {
+    char[] aChars = sql.toCharArray();
+    int[] positions = NO_BINDS;
+    int count = 0;
+
+    // state of the multi-row INSERT detection
+    int keywordCount = 0;
+    boolean isQuery = false;
+    boolean isSessionChange = false;
+    boolean isSelect = false;
+    boolean isApproximate = false;
+    boolean isInsert = false;
+    boolean afterValues = false;
+    boolean multiRow = true;
+    int parenDepth = 0;
+    int valuesOpen = -1;
+    int valuesClose = -1;
+
+    for (int i = 0; i < aChars.length; ++i) {
+      char aChar = aChars[i];
+      if (afterValues && (valuesOpen < 0 || valuesClose >= 0)
+          && !Character.isWhitespace(aChar) && !isCommentStart(aChars, i)
+          && (valuesOpen >= 0 ? aChar != ';' : aChar != '(')) {
+        // VALUES not followed by a row, or something follows the row
+        multiRow = false;
+      }
+
+      switch (aChar) {
+        case '\'': // single-quotes
+          i = parseSingleQuotes(aChars, i);
+          break;
+
+        case '"': // double-quotes
+        case '`': // back-quoted identifiers of the underlying DBMS
+          i = parseQuotedIdentifier(aChars, i, aChar);
+          break;
+
+        case '-': // possibly -- style comment
+          i = parseLineComment(aChars, i);
+          break;
+
+        case '/': // possibly /* */ style comment
+          i = parseBlockComment(aChars, i);
+          break;
+
+        case '?':
+          if (count == positions.length) {
+            int[] grown = new int[Math.max(4, positions.length * 2)];
+            System.arraycopy(positions, 0, grown, 0, count);
+            positions = grown;
+          }
+          positions[count++] = i;
+          break;
+
+        case '(':
+          if (afterValues && parenDepth == 0 && valuesOpen < 0) {
+            valuesOpen = i;
+          }
+          ++parenDepth;
+          break;
+
+        case ')':
+          --parenDepth;
+          if (parenDepth == 0 && valuesOpen >= 0 && valuesClose < 0) {
+            valuesClose = i;
+          }
+          break;
+
+        default:
+          if (Character.isLetter(aChar) && (i == 0 || !isIdentifierChar(aChars[i - 1]))) {
+            int end = i + 1;
+            while (end < aChars.length && isIdentifierChar(aChars[end])) {
+              ++end;
+            }
+            if (keywordCount++ == 0) {
+              isQuery = matchesKeyword(aChars, i, end, "select")
+                  || matchesKeyword(aChars, i, end, "with")
+                  || matchesKeyword(aChars, i, end, "values");
+              isInsert = matchesKeyword(aChars, i, end, "insert");
+              isSessionChange = matchesKeyword(aChars, i, end, "use")
+                  || matchesKeyword(aChars, i, end, "set");
+              isSelect = matchesKeyword(aChars, i, end, "select");
+            } else if (keywordCount == 2 && isSelect
+                && (matchesKeyword(aChars, i, end, "approximate")
+                    || matchesKeyword(aChars, i, end, "incremental"))) {
+              isApproximate = true;
+            } else if (isQuery && isWriteKeyword(aChars, i, end)) {
+              isQuery = false;
+            } else if (isInsert && parenDepth == 0 && !afterValues
+                && matchesKeyword(aChars, i, end, "values")) {
+              afterValues = true;
+            }
+            i = end - 1;
+          }
+          break;
+      }
+    }
+
+    if (count != positions.length) {
+      int[] trimmed = new int[count];
+      System.arraycopy(positions, 0, trimmed, 0, count);
+      positions = trimmed;
+    }
+
+    if (!isInsert || !multiRow || valuesClose < 0
+        || (count > 0 && (positions[0] < valuesOpen || positions[count - 1] > valuesClose))) {
+      valuesOpen = -1;
+      valuesClose = -1;
+    }
+    return new ParsedSql(sql, positions, valuesOpen, valuesClose, isQuery, isSessionChange,
+        isApproximate);
+  }
+
+  private static boolean isWriteKeyword(char[] chars, int start, int end) {
+    for (String keyword : WRITE_KEYWORDS) {
+      if (matchesKeyword(chars, start, end, keyword)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isIdentifierChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+  }
+
+  private static boolean matchesKeyword(char[] query, int start, int end, String keyword) {
+    if (end - start != keyword.length()) {
+      return false;
+    }
+    for (int i = 0; i < keyword.length(); ++i) {
+      if (Character.toLowerCase(query[start + i]) != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isCommentStart(char[] query, int offset) {
+    return offset + 1 < query.length
+        && ((query[offset] == '-' && query[offset + 1] == '-')
+        || (query[offset] == '/' && query[offset + 1] == '*'));
+  }
+
+  /**
+   * Find the end of the single-quoted string starting at the given offset. A quote is escaped
+   * by doubling it; strings are standard conforming, so backslashes are not escapes.
+   *
+   * @param query  the query text
+   * @param offset the offset of the opening quote
+   * @return the offset of the closing quote, or of the last character if there is none
+   */
+  private static int parseSingleQuotes(final char[] query, int offset) {
+    while (++offset < query.length) {
+      if (query[offset] == '\'') {
+        if (offset + 1 < query.length && query[offset + 1] == '\'') {
+          ++offset;
+        } else {
+          return offset;
+        }
+      }
+    }
+    return query.length;
+  }
+
+  private static int parseQuotedIdentifier(final char[] query, int offset, char quote) {
+    while (++offset < query.length) {
+      if (query[offset] == quote) {
+        if (offset + 1 < query.length && query[offset + 1] == quote) {
+          ++offset;
+        } else {
+          return offset;
+        }
+      }
+    }
+    return query.length;
+  }
+
+  private static int parseLineComment(final char[] query, int offset) {
+    if (offset + 1 < query.length && query[offset + 1] == '-') {
+      while (offset + 1 < query.length) {
+        offset++;
+        if (query[offset] == '\r' || query[offset] == '\n') {
+          break;
+        }
+      }
+    }
+    return offset;
+  }
+
+  private static int parseBlockComment(final char[] query, int offset) {
+    if (offset + 1 < query.length && query[offset + 1] == '*') {
+      // /* /* */ */ nest, according to SQL spec
+      int level = 1;
+      for (offset += 2; offset < query.length; ++offset) {
+        switch (query[offset - 1]) {
+          case '*':
+            if (query[offset] == '/') {
+              --level;
+              ++offset; // don't parse / in */* twice
+            }
+            break;
+          case '/':
+            if (query[offset] == '*') {
+              ++level;
+              ++offset; // don't parse * in /*/ twice
+            }
+            break;
+          default:
+            break;
+        }
+
+        if (level == 0) {
+          --offset; // reset position to last '/' char
+          break;
+        }
+      }
+    }
+    return offset;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.util.TrainDBProperty;
+
+/**
+ * The server-side prepared statements of a connection, per query text. A query is counted on
+ * every execution and prepared once it reaches {@code prepareThreshold}; from then on its
+ * executions only bind the parameter values to the named statement.
+ *
+ * <p>At most {@code preparedStatementCacheQueries} queries are kept, least recently used
+ * first out. The statements of evicted queries are closed on the server with the next
+ * prepared execution. Not thread safe; it is guarded by the lock of the owning
+ * {@link QueryExecutor}.</p>
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/core/QueryExecutorBase.java
+class PreparedStatementCache {
+  private final int prepareThreshold;
+  private final int maxEntries;
+  private final Map<String, Entry> statements;
+  // Names of server-side statements to close
+  private final List<String> pendingCloses = new ArrayList<String>();
+  private long nextUniqueId = 1;
+
+  PreparedStatementCache(Properties info) throws SQLException {
+    this.prepareThreshold = TrainDBProperty.PREPARE_THRESHOLD.getInt(info);
+    this.maxEntries = TrainDBProperty.PREPARED_STATEMENT_CACHE_QUERIES.getInt(info);
+    // Entry alone would be the inherited Map.Entry in the body of the map
+    this.statements = new LinkedHashMap<String, PreparedStatementCache.Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String, PreparedStatementCache.Entry> eldest) {
+        if (size() <= maxEntries) {
+          return false;
+        }
+        unprepare(eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Count an execution of a query.
+   *
+   * @param sql the query text
+   * @return the entry of the query if this execution should use a server-side statement,
+   *     null if it should be sent as a plain query
+   */
+  @Nullable Entry onExecute(String sql) {
+    if (prepareThreshold == 0 || maxEntries <= 0) {
+      return null;
+    }
+    Entry entry = statements.get(sql);
+    if (entry == null) {
+      entry = new Entry(sql);
+      statements.put(sql, entry);
+    }
+    if (entry.executions < Integer.MAX_VALUE) {
+      entry.executions++;
+    }
+    return prepareThreshold < 0 || entry.executions >= prepareThreshold ? entry : null;
+  }
+
+  String nextStatementName() {
+    return "S_" + (nextUniqueId++);
+  }
+
+  /**
+   * Forget the server-side statement of a query; it is closed with the next prepared
+   * execution.
+   *
+   * @param entry the query
+   */
+  void unprepare(Entry entry) {
+    String statementName = entry.statementName;
+    if (statementName != null) {
+      pendingCloses.add(statementName);
+      entry.statementName = null;
+      entry.paramTypes = null;
+    }
+  }
+
+  /**
+   * Take the names of the server-side statements to close.
+   *
+   * @return the statement names, in the order they were given up
+   */
+  List<String> takePendingCloses() {
+    if (pendingCloses.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<String> closes = new ArrayList<String>(pendingCloses);
+    pendingCloses.clear();
+    return closes;
+  }
+
+  /**
+   * A query seen by the connection.
+   */
+  static class Entry {
+    final String sql;
+    int executions;
+    // The server-side statement, and the parameter types it was prepared with
+    @Nullable String statementName;
+    int @Nullable [] paramTypes;
+
+    Entry(String sql) {
+      this.sql = sql;
+    }
+  }
+}
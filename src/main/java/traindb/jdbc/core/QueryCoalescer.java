@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.util.TrainDBJdbcException;
+import traindb.jdbc.util.TrainDBState;
+
+/**
+ * Lets identical queries that run at the same time share one execution, across connections.
+ * The first caller of a query runs it; whoever asks for the same query before it completes
+ * waits for it and gets the same rows. The rows are never modified once read, so every caller
+ * builds its own result set over the same list.
+ *
+ * <p>Only the queries of connections with {@code coalesceQueries} take part, and only those that
+ * read: see {@link ParsedSql#isQuery()}. Queries are the same if they go to the same server
+ * as the same user and have the same text once the parameters are in it and the whitespace is
+ * collapsed. Only a response of a single, complete set of rows is shared; if the first caller
+ * fails or gets anything else, the callers that waited run the query themselves.</p>
+ *
+ * <p>A caller that waits is not running anything on its connection, so the cancel of its
+ * statement, e.g. by the query timeout, goes to its {@link Waiter} instead of the server.</p>
+ */
+final class QueryCoalescer {
+  private static final Logger LOGGER = Logger.getLogger(QueryCoalescer.class.getName());
+
+  static final QueryCoalescer INSTANCE = new QueryCoalescer();
+
+  private final ConcurrentHashMap<String, Execution> inFlight =
+      new ConcurrentHashMap<String, Execution>();
+
+  private QueryCoalescer() {
+  }
+
+  /**
+   * Run a query, or share the execution of the same query that is running already.
+   *
+   * @param scope    identifies the server and the user of the connection
+   * @param sql      the text of the query with its parameters in it
+   * @param handler  the handler for the results
+   * @param waiter   cancels the wait of the caller
+   * @param executor runs the query on the connection of the caller
+   * @throws SQLException if the query fails, the handler fails it, or the wait is cancelled
+   */
+  void execute(String scope, String sql, ResultHandler handler, Waiter waiter,
+               Execute executor) throws SQLException {
+    String key = scope + '\0' + normalize(sql);
+    Execution execution = new Execution();
+    Execution running = inFlight.putIfAbsent(key, execution);
+
+    if (running == null) {
+      try {
+        executor.execute(execution.capture(handler));
+      } finally {
+        inFlight.remove(key, execution);
+        execution.complete();
+      }
+      return;
+    }
+
+    boolean completed = waiter.await(running);
+    if (completed && running.replay(handler)) {
+      LOGGER.log(Level.FINEST, "Shared the response of a concurrent execution of {0}", sql);
+      handler.handleCompletion();
+      return;
+    }
+    // nothing to share; run it alone rather than wait for another execution
+    waiter.checkCancelled();
+    executor.execute(handler);
+  }
+
+  /**
+   * Collapse the runs of whitespace outside of literals and quoted identifiers, and trim.
+   */
+  static String normalize(String sql) {
+    StringBuilder sb = new StringBuilder(sql.length());
+    char quote = 0;
+    boolean space = false;
+    for (int i = 0; i < sql.length(); ++i) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        sb.append(c);
+        if (c == quote) {
+          quote = 0;
+        }
+        continue;
+      }
+      if (Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+        continue;
+      }
+      if (space) {
+        sb.append(' ');
+        space = false;
+      }
+      if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Runs a query on a connection.
+   */
+  @FunctionalInterface
+  interface Execute {
+    void execute(ResultHandler handler) throws SQLException;
+  }
+
+  /**
+   * Lets a caller that waits for the execution of another be cancelled.
+   */
+  static final class Waiter {
+    private @Nullable Execution waitingFor;
+    private boolean cancelled;
+
+    /**
+     * Cancel the wait, or the one that is about to begin.
+     *
+     * @return true if the caller waits for another execution, so it runs nothing to cancel
+     */
+    boolean cancel() {
+      Execution execution;
+      synchronized (this) {
+        cancelled = true;
+        execution = waitingFor;
+      }
+      if (execution == null) {
+        return false;
+      }
+      synchronized (execution) {
+        execution.notifyAll();
+      }
+      return true;
+    }
+
+    /**
+     * Wait until the execution completes, or the wait is cancelled.
+     *
+     * @return false if the thread was interrupted while waiting
+     * @throws SQLException if the wait is cancelled
+     */
+    boolean await(Execution execution) throws SQLException {
+      synchronized (this) {
+        waitingFor = execution;
+      }
+      try {
+        synchronized (execution) {
+          while (!execution.completed) {
+            checkCancelled();
+            execution.wait();
+          }
+        }
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        synchronized (this) {
+          waitingFor = null;
+        }
+      }
+    }
+
+    synchronized void checkCancelled() throws SQLException {
+      if (cancelled) {
+        throw new TrainDBJdbcException("Canceling statement due to user request",
+            TrainDBState.QUERY_CANCELED);
+      }
+    }
+  }
+
+  /**
+   * One execution of a query, and what the callers that waited for it may share.
+   */
+  private static final class Execution {
+    // guarded by this; the fields below are written before it is set
+    private boolean completed;
+    private @Nullable String fromQuery;
+    private Field @Nullable [] fields;
+    private @Nullable List<Tuple> tuples;
+    private @Nullable List<SQLWarning> warnings;
+    private boolean shareable = true;
+
+    ResultHandler capture(ResultHandler handler) {
+      return new ResultHandler() {
+        @Override
+        public void handleResultRows(String fromQuery, Field[] fields, List<Tuple> tuples,
+                                     @Nullable ResultCursor cursor) {
+          if (Execution.this.tuples != null || cursor != null
+              || tuples instanceof SpilledTupleList) {
+            // spill files are deleted when the result set is closed, so they are not shared
+            shareable = false;
+          } else {
+            Execution.this.fromQuery = fromQuery;
+            Execution.this.fields = fields;
+            Execution.this.tuples = tuples;
+          }
+          handler.handleResultRows(fromQuery, fields, tuples, cursor);
+        }
+
+        @Override
+        public void handleCommandStatus(String status, long updateCount, long insertOID) {
+          shareable = false;
+          handler.handleCommandStatus(status, updateCount, insertOID);
+        }
+
+        @Override
+        public void handleWarning(SQLWarning warning) {
+          if (warnings == null) {
+            warnings = new ArrayList<SQLWarning>();
+          }
+          warnings.add(warning);
+          handler.handleWarning(warning);
+        }
+
+        @Override
+        public void handleError(SQLException error) {
+          shareable = false;
+          handler.handleError(error);
+        }
+
+        @Override
+        public void handleCompletion() throws SQLException {
+          handler.handleCompletion();
+        }
+      };
+    }
+
+    synchronized void complete() {
+      completed = true;
+      notifyAll();
+    }
+
+    /**
+     * Pass the shared response to the handler of another caller.
+     *
+     * @return false if there is nothing to share
+     */
+    boolean replay(ResultHandler handler) {
+      List<Tuple> tuples = this.tuples;
+      if (!shareable || tuples == null) {
+        return false;
+      }
+      if (warnings != null) {
+        for (SQLWarning warning : warnings) {
+          // every caller chains its warnings, so each gets its own copy
+          handler.handleWarning(new SQLWarning(warning.getMessage(), warning.getSQLState(),
+              warning.getErrorCode()));
+        }
+      }
+      handler.handleResultRows(fromQuery, fields, tuples, null);
+      return true;
+    }
+  }
+}
@@ -14,29 +14,208 @@
 
 package traindb.jdbc.core;
 
+import static traindb.jdbc.util.Nullness.castNonNull;
+
 import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import traindb.jdbc.TrainDBStatement.StatementResultHandler;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.hostchooser.GlobalHostStatusTracker;
+import traindb.jdbc.util.ByteConverter;
 import traindb.jdbc.util.ServerErrorMessage;
 import traindb.jdbc.util.TrainDBJdbcException;
+import traindb.jdbc.util.TrainDBProperty;
 import traindb.jdbc.util.TrainDBState;
+import traindb.jdbc.util.TrainDBWarning;
 
 public class QueryExecutor {
   private static final Logger LOGGER = Logger.getLogger(QueryExecutor.class.getName());
   int QUERY_NO_RESULTS = 4;
   int QUERY_BOTH_ROWS_AND_STATUS = 64;
+  /**
+   * Maximum number of queries whose responses may be outstanding in pipelined execution. The
+   * backend answers while we are still writing; if both sides fill their socket buffers they
+   * deadlock, so a long pipeline is sent in windows of this many queries.
+   */
+  private static final int MAX_PIPELINED_QUERIES = 64;
+  /**
+   * The query that asks the server for the next refinement of an incremental query.
+   */
+  private static final String MORE_RESULTS_QUERY = "incremental rows";
+  private static final int INITIAL_BUFFER_SIZE = 256;
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
   private TrainDBStream stream;
-  private boolean closed = false;
+  private volatile boolean closed = false;
+  private final AtomicBoolean hostReleased = new AtomicBoolean();
   private String currentQuery = null;
   private Field[] currentFields = null;
-
-  public QueryExecutor(TrainDBStream stream, Properties info) {
+  // Label index of the last row description, reused while the labels stay the same
+  private @Nullable ColumnLabelIndex lastLabelIndex = null;
+  // Fields of the row descriptions received lately, by the fingerprint of their bytes
+  private final Map<Integer, RowDescription> rowDescriptionCache;
+  // Reused to read the bytes of row descriptions
+  private byte[] rowDescriptionBuffer = new byte[INITIAL_BUFFER_SIZE];
+  // Response that is still being streamed to a forward-only result set
+  private @Nullable StreamingCursor activeCursor = null;
+  // Spill file of the response being read, until its rows are handed to a handler
+  private @Nullable SpilledTupleList pendingSpill = null;
+  private final AdaptiveFetchCache adaptiveFetchCache;
+  // Query text whose fetch size is adapted from the response being read, if any
+  private @Nullable String adaptiveFetchQuery = null;
+  // Identifies this session in cancel requests, sent to the server at startup
+  private long cancelKey;
+  private final int cancelSignalTimeout;
+  private final boolean rewriteBatchedInserts;
+  private final int incrementalPrefetch;
+  private final boolean timeoutAsTimeBudget;
+  private final int decodeCacheSize;
+  // Server and user of the connection if it coalesces queries, null otherwise or once a
+  // statement may have changed the database or schema of the session
+  private volatile @Nullable String coalescingScope;
+  // Set while a query of the connection is coalesced, to cancel its wait
+  private volatile QueryCoalescer.@Nullable Waiter coalescingWaiter;
+  private final PreparedStatementCache preparedStatements;
+  private final int parsedSqlCacheSize;
+  private final Map<String, ParsedSql> parsedSqlCache;
+  // Reused to build the text of queries with parameters
+  private StringBuilder nativeSqlBuffer = new StringBuilder(INITIAL_BUFFER_SIZE);
+  // SQLSTATE of the last error response, to tell a lost server-side statement
+  private @Nullable String lastErrorState = null;
+
+  public QueryExecutor(TrainDBStream stream, Properties info) throws SQLException {
     this.stream = stream;
+    this.adaptiveFetchCache = new AdaptiveFetchCache(stream.getMaxResultBuffer(), info);
+    long cancelSignalTimeout = (long) TrainDBProperty.CANCEL_SIGNAL_TIMEOUT.getInt(info) * 1000;
+    this.cancelSignalTimeout = (int) Math.min(cancelSignalTimeout, Integer.MAX_VALUE);
+    this.rewriteBatchedInserts = TrainDBProperty.REWRITE_BATCHED_INSERTS.getBoolean(info);
+    this.incrementalPrefetch = Math.max(TrainDBProperty.INCREMENTAL_PREFETCH.getInt(info), 0);
+    this.timeoutAsTimeBudget = TrainDBProperty.TIMEOUT_AS_TIME_BUDGET.getBoolean(info);
+    this.decodeCacheSize = Math.max(TrainDBProperty.DECODE_CACHE_SIZE.getInt(info), 0);
+    this.coalescingScope = TrainDBProperty.COALESCE_QUERIES.getBoolean(info)
+        ? stream.getHostSpec() + "/" + TrainDBProperty.TRAINDB_DBNAME.get(info)
+            + "/" + TrainDBProperty.USER.get(info)
+        : null;
+    this.preparedStatements = new PreparedStatementCache(info);
+    this.parsedSqlCacheSize = TrainDBProperty.PREPARED_STATEMENT_CACHE_QUERIES.getInt(info);
+    this.parsedSqlCache = new LinkedHashMap<String, ParsedSql>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ParsedSql> eldest) {
+        return size() > parsedSqlCacheSize;
+      }
+    };
+    this.rowDescriptionCache = new LinkedHashMap<Integer, RowDescription>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, RowDescription> eldest) {
+        return size() > parsedSqlCacheSize;
+      }
+    };
+  }
+
+  void setCancelKey(long cancelKey) {
+    this.cancelKey = cancelKey;
+  }
+
+  /**
+   * Ask the server to cancel the query that is running on this connection. The connection is
+   * busy with that query, so the request goes over a new connection to the same host, which
+   * carries nothing but the cancel key of this session. The server answers the cancelled
+   * query with an error. Errors on the side connection are ignored: there may simply have been
+   * nothing to cancel anymore.
+   */
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/core/QueryExecutorBase.java
+  public void sendQueryCancel() {
+    QueryCoalescer.Waiter waiter = coalescingWaiter;
+    if (waiter != null && waiter.cancel()) {
+      // the query waits for the execution of another connection; nothing runs on this one
+      LOGGER.log(Level.FINEST, " FE cancels the wait for a coalesced query");
+      return;
+    }
+
+    TrainDBStream cancelStream = null;
+
+    // Now we need to construct and send a cancel packet
+    try {
+      LOGGER.log(Level.FINEST, " FE=> CancelRequest");
+
+      cancelStream = new TrainDBStream(stream.getSocketFactory(), stream.getHostSpec(),
+          cancelSignalTimeout);
+      if (cancelSignalTimeout > 0) {
+        cancelStream.setNetworkTimeout(cancelSignalTimeout);
+      }
+      cancelStream.sendChar('K');
+      cancelStream.sendInteger4(4 + 8);
+      cancelStream.sendInteger4((int) (cancelKey >>> 32));
+      cancelStream.sendInteger4((int) cancelKey);
+      cancelStream.flush();
+      cancelStream.receiveEOF();
+    } catch (IOException | SQLException e) {
+      // Safe to ignore.
+      LOGGER.log(Level.FINEST, "Ignoring exception on cancel request:", e);
+    } finally {
+      if (cancelStream != null) {
+        try {
+          cancelStream.close();
+        } catch (IOException e) {
+          // Ignored.
+        }
+      }
+    }
+  }
+
+  /**
+   * Default for the adaptive fetch setting of statements, see {@link AdaptiveFetchCache}.
+   *
+   * @return the value of the {@code adaptiveFetch} property
+   */
+  public boolean getAdaptiveFetch() {
+    return adaptiveFetchCache.getAdaptiveFetch();
+  }
+
+  /**
+   * Tell whether batches of a single-row INSERT are sent as multi-row INSERTs.
+   *
+   * @return the value of the {@code reWriteBatchedInserts} property
+   */
+  public boolean getRewriteBatchedInserts() {
+    return rewriteBatchedInserts;
+  }
+
+  /**
+   * The default of {@code TrainDBStatement#setTimeoutAsTimeBudget(boolean)}.
+   *
+   * @return the value of the {@code timeoutAsTimeBudget} property
+   */
+  public boolean getTimeoutAsTimeBudget() {
+    return timeoutAsTimeBudget;
+  }
+
+  /**
+   * Maximum number of string values a result set decodes once and shares, see
+   * {@link DecodeCache}.
+   *
+   * @return the value of the {@code decodeCacheSize} property
+   */
+  public int getDecodeCacheSize() {
+    return decodeCacheSize;
+  }
+
+  /**
+   * The encoding of the text sent and received on the connection.
+   *
+   * @return the current encoding of the stream
+   */
+  public Encoding getEncoding() {
+    return stream.getEncoding();
   }
 
   public void abort() {
@@ -47,6 +226,7 @@ public class QueryExecutor {
     }
 
     closed = true;
+    releaseHost();
   }
 
   public void close() {
@@ -64,122 +244,647 @@ public class QueryExecutor {
     }
 
     closed = true;
+    releaseHost();
+  }
+
+  /**
+   * Take this connection off the open connection count of its host, once, whether it is
+   * closed or aborted.
+   */
+  private void releaseHost() {
+    if (hostReleased.compareAndSet(false, true)) {
+      GlobalHostStatusTracker.connectionClosed(stream.getHostSpec());
+    }
   }
 
   public boolean isClosed() {
     return closed;
   }
 
+  /**
+   * Tell, without a round trip, whether the connection can still be used: it was not closed
+   * and no I/O error broke it.
+   *
+   * @return true if the connection looks usable
+   */
+  public boolean isAlive() {
+    return !closed && !stream.isClosed();
+  }
+
   public void sendCloseMessage() throws IOException {
     // TODO Auto-generated method stub
   }
 
-  public synchronized void execute(String sql, StatementResultHandler handler) throws SQLException {
+  public void execute(String sql, ResultHandler handler) throws SQLException {
+    execute(sql, null, handler, 0);
+  }
+
+  public void execute(String sql, ParameterList parameters, ResultHandler handler)
+      throws SQLException {
+    execute(sql, parameters, handler, 0);
+  }
+
+  /**
+   * Execute a query and pass its results to the handler.
+   *
+   * @param sql        the query text
+   * @param parameters the bind values, or null for a plain statement
+   * @param handler    the handler for the results
+   * @param fetchSize  if positive, hand over rows in batches of this size through a
+   *                   {@link StreamingCursor} instead of buffering the whole response
+   * @throws SQLException if the query fails or the connection is broken
+   */
+  public void execute(String sql, @Nullable ParameterList parameters, ResultHandler handler,
+                      int fetchSize) throws SQLException {
+    execute(sql, parameters, handler, fetchSize, false);
+  }
+
+  /**
+   * Execute a query and pass its results to the handler. With {@code coalesceQueries}, a
+   * read-only query whose response is buffered may share the execution of the same query that
+   * is running on another connection, see {@link QueryCoalescer}.
+   *
+   * @param sql           the query text
+   * @param parameters    the bind values, or null for a plain statement
+   * @param handler       the handler for the results
+   * @param fetchSize     if positive, hand over rows in batches of this size through a
+   *                      {@link StreamingCursor} instead of buffering the whole response
+   * @param adaptiveFetch if true and {@code maxResultBuffer} is set, stream the rows in
+   *                      batches sized by the {@link AdaptiveFetchCache} for the query text
+   *                      instead, whatever the fetch size
+   * @throws SQLException if the query fails or the connection is broken
+   */
+  public void execute(String sql, @Nullable ParameterList parameters, ResultHandler handler,
+                      int fetchSize, boolean adaptiveFetch) throws SQLException {
+    String coalescingScope = this.coalescingScope;
+    if (coalescingScope != null) {
+      ParsedSql parsed = parseSql(sql);
+      if (parsed.isSessionChange()) {
+        stopCoalescing(sql);
+      } else if (fetchSize == 0 && !(adaptiveFetch && adaptiveFetchCache.isActive())
+          && parsed.isQuery()) {
+        String nativeSql = parameters != null ? getNativeSql(sql, parameters) : sql;
+        QueryCoalescer.Waiter waiter = new QueryCoalescer.Waiter();
+        coalescingWaiter = waiter;
+        try {
+          QueryCoalescer.INSTANCE.execute(coalescingScope, nativeSql, handler, waiter,
+              h -> executeOnConnection(sql, parameters, h, 0, false));
+        } finally {
+          coalescingWaiter = null;
+        }
+        return;
+      }
+    }
+    executeOnConnection(sql, parameters, handler, fetchSize, adaptiveFetch);
+  }
+
+  /**
+   * Stop coalescing the queries of the connection once a statement may have changed its
+   * database or schema: the scope no longer tells what the queries read.
+   */
+  private void stopCoalescing(String sql) {
+    LOGGER.log(Level.FINEST, "Stopped coalescing queries after {0}", sql);
+    coalescingScope = null;
+  }
+
+  /**
+   * Stop coalescing if the statement may change the database or schema of the session.
+   */
+  private void checkSessionChange(String sql) {
+    if (coalescingScope != null && parseSql(sql).isSessionChange()) {
+      stopCoalescing(sql);
+    }
+  }
+
+  private synchronized void executeOnConnection(String sql, @Nullable ParameterList parameters,
+                                                ResultHandler handler, int fetchSize,
+                                                boolean adaptiveFetch) throws SQLException {
+    if (adaptiveFetch && adaptiveFetchCache.isActive()) {
+      fetchSize = adaptiveFetchCache.getFetchSizeForQuery(sql, fetchSize);
+      adaptiveFetchQuery = sql;
+    }
+
     try {
-      sendSimpleQuery(sql, null, handler);
-      handler.handleCompletion();
+      drainActiveCursor();
+      PreparedStatementCache.Entry prepared =
+          parameters != null ? preparedStatements.onExecute(sql) : null;
+      if (prepared != null) {
+        sendPreparedQuery(prepared, castNonNull(parameters), handler, fetchSize);
+      } else {
+        sendSimpleQuery(sql, parameters, handler, fetchSize);
+      }
     } catch (IOException e) {
-      e.printStackTrace();
+      // the state of the stream is unknown, so the connection cannot be used again
+      abort();
+      handler.handleError(
+          new TrainDBJdbcException("An I/O error occurred while sending to the backend.",
+              TrainDBState.CONNECTION_FAILURE, e));
+    } finally {
+      adaptiveFetchQuery = null;
     }
+
+    handler.handleCompletion();
   }
 
-  public synchronized void execute(String sql, ParameterList parameters,
-                                   StatementResultHandler handler) throws SQLException {
+  /**
+   * Execute several queries in a pipeline: the queries of a window are written back-to-back
+   * with a single flush, then the responses are read in order. The i-th handler receives the
+   * results of the i-th query; a failing query does not stop the ones after it. Completion of
+   * the handlers is left to the caller. The responses are always read completely, so no
+   * {@link StreamingCursor} is handed out.
+   *
+   * @param queries        the query texts
+   * @param parameterLists the bind values of every query, or null if no query has any
+   * @param handlers       the handlers for the results, one per query
+   * @throws SQLException if the connection is in a state where queries cannot be sent
+   */
+  public synchronized void execute(String[] queries, @Nullable ParameterList[] parameterLists,
+                                   ResultHandler[] handlers) throws SQLException {
+    for (String query : queries) {
+      checkSessionChange(query);
+    }
+    String[] nativeQueries = new String[queries.length];
+    int received = 0;
+
     try {
-      sendSimpleQuery(sql, parameters, handler);
-      handler.handleCompletion();
+      drainActiveCursor();
+
+      int sent = 0;
+      while (received < queries.length) {
+        int window = Math.min(queries.length, received + MAX_PIPELINED_QUERIES);
+        for (; sent < window; ++sent) {
+          ParameterList parameters = parameterLists != null ? parameterLists[sent] : null;
+          nativeQueries[sent] = parameters != null
+              ? getNativeSql(queries[sent], parameters) : queries[sent];
+          LOGGER.log(Level.FINEST, " FE=> SimpleQuery(query=\"{0}\")", nativeQueries[sent]);
+          sendQuery(nativeQueries[sent]);
+        }
+        stream.flush();
+
+        for (; received < sent; ++received) {
+          currentQuery = nativeQueries[received];
+          processResults(handlers[received], 0, 0);
+        }
+      }
     } catch (IOException e) {
-      e.printStackTrace();
+      // the responses that were not read yet are lost with the connection
+      abort();
+      for (; received < queries.length; ++received) {
+        handlers[received].handleError(
+            new TrainDBJdbcException("An I/O error occurred while sending to the backend.",
+                TrainDBState.CONNECTION_FAILURE, e));
+      }
     }
   }
 
-  private void sendSimpleQuery(String sql, ParameterList parameters, StatementResultHandler handler)
-      throws IOException {
+  private void sendSimpleQuery(String sql, @Nullable ParameterList parameters,
+                               ResultHandler handler, int fetchSize) throws IOException {
     LOGGER.log(Level.FINEST, " FE=> SimpleQuery(query=\"{0}\")", sql);
-    // Encoding encoding = stream.getEncoding();
 
     if (parameters != null) {
       sql = getNativeSql(sql, parameters);
     }
 
-    byte[] data = sql.getBytes();
-    stream.sendChar('E');
-    stream.sendInteger4(4 + data.length);
-    stream.send(data);
+    sendQuery(sql);
     stream.flush();
     currentQuery = sql;
 
-    processResults(handler, 0, false);
+    processResults(handler, 0, fetchSize);
   }
 
-  public String getNativeSql(String sql, ParameterList parameters) {
-    String nativeSql = sql;
+  /**
+   * Execute a query through its server-side statement, preparing it first if needed. The
+   * parameter values are bound as they are held, binary for numbers and binary strings and
+   * text otherwise, so nothing is spliced into the query text.
+   */
+  private void sendPreparedQuery(PreparedStatementCache.Entry entry, ParameterList parameters,
+                                 ResultHandler handler, int fetchSize) throws IOException {
+    for (int i = 1; i <= parameters.getParamCount(); ++i) {
+      if (!parameters.isSet(i)) {
+        handler.handleError(new TrainDBJdbcException(
+            MessageFormat.format("No value specified for parameter {0}.", i),
+            TrainDBState.INVALID_PARAMETER_VALUE));
+        return;
+      }
+    }
 
-    if (parameters.getParamCount() == 0) {
-      return nativeSql;
+    int[] paramTypes = parameters.getParamTypes();
+    if (entry.statementName != null && !Arrays.equals(entry.paramTypes, paramTypes)) {
+      // the parameter types changed since the query was prepared
+      preparedStatements.unprepare(entry);
     }
 
-    List<Integer> bindPositions = getBindPositions(sql);
+    int pendingCloses = sendPendingCloses();
+    if (entry.statementName == null) {
+      String statementName = preparedStatements.nextStatementName();
+      sendParse(statementName, entry.sql, paramTypes);
+      stream.flush();
+      if (!receiveParseComplete(handler, pendingCloses)) {
+        return;
+      }
+      entry.statementName = statementName;
+      entry.paramTypes = paramTypes.clone();
+    }
 
-    int queryLength = nativeSql.length();
-    String[] params = new String[parameters.getParamCount()];
-    for (int i = 1; i <= parameters.getParamCount(); ++i) {
-      String param = parameters == null ? "?" : parameters.toString(i, true);
-      params[i - 1] = param;
-      queryLength += param.length() - 1;
+    sendBind(castNonNull(entry.statementName), parameters);
+    stream.flush();
+    currentQuery = entry.sql;
+    lastErrorState = null;
+
+    // CloseComplete responses of the statements closed along are skipped there
+    processResults(handler, 0, fetchSize);
+
+    if (TrainDBState.INVALID_SQL_STATEMENT_NAME.getState().equals(lastErrorState)) {
+      // the server lost the statement: prepare it again next time
+      entry.statementName = null;
+      entry.paramTypes = null;
+    }
+  }
+
+  /**
+   * Write a Close message for every server-side statement that was given up, without
+   * flushing the stream.
+   *
+   * @return the number of CloseComplete responses to expect
+   */
+  private int sendPendingCloses() throws IOException {
+    List<String> closes = preparedStatements.takePendingCloses();
+    for (String statementName : closes) {
+      LOGGER.log(Level.FINEST, " FE=> CloseStatement({0})", statementName);
+      byte[] encodedName = stream.getEncoding().encode(statementName);
+      stream.sendChar('C'); // Close
+      stream.sendInteger4(4 + 1 + encodedName.length + 1);
+      stream.sendChar('S'); // statement, not portal
+      stream.send(encodedName);
+      stream.sendChar(0);
+    }
+    return closes.size();
+  }
+
+  private void sendParse(String statementName, String sql, int[] paramTypes)
+      throws IOException {
+    LOGGER.log(Level.FINEST, " FE=> Parse(stmt={0},query=\"{1}\")",
+        new Object[] {statementName, sql});
+    byte[] encodedName = stream.getEncoding().encode(statementName);
+    byte[] encodedSql = stream.getEncoding().encode(sql);
+    int length = 4
+        + encodedName.length + 1
+        + encodedSql.length + 1
+        + 2 + 4 * paramTypes.length;
+
+    stream.sendChar('P'); // Parse
+    stream.sendInteger4(length);
+    stream.send(encodedName);
+    stream.sendChar(0);
+    stream.send(encodedSql);
+    stream.sendChar(0);
+    stream.sendInteger2(paramTypes.length);
+    for (int paramType : paramTypes) {
+      stream.sendInteger4(paramType);
+    }
+  }
+
+  /**
+   * Write a Bind message, which also executes the statement. Every value is preceded by its
+   * format, 0 for text and 1 for binary, and its length, -1 for NULL.
+   */
+  private void sendBind(String statementName, ParameterList parameters) throws IOException {
+    LOGGER.log(Level.FINEST, " FE=> Bind(stmt={0})", statementName);
+    int paramCount = parameters.getParamCount();
+    byte[] encodedName = stream.getEncoding().encode(statementName);
+    byte[][] values = new byte[paramCount][];
+    int length = 4 + encodedName.length + 1 + 2;
+    for (int i = 1; i <= paramCount; ++i) {
+      length += 2 + 4;
+      if (parameters.isNull(i)) {
+        continue;
+      }
+      values[i - 1] = parameters.isBinary(i)
+          ? parameters.getBinaryValue(i)
+          : stream.getEncoding().encode(parameters.getTextValue(i));
+      length += values[i - 1].length;
+    }
+
+    stream.sendChar('B'); // Bind
+    stream.sendInteger4(length);
+    stream.send(encodedName);
+    stream.sendChar(0);
+    stream.sendInteger2(paramCount);
+    for (int i = 1; i <= paramCount; ++i) {
+      byte[] value = values[i - 1];
+      stream.sendInteger2(parameters.isBinary(i) ? 1 : 0);
+      if (value == null) {
+        stream.sendInteger4(-1);
+      } else {
+        stream.sendInteger4(value.length);
+        stream.send(value);
+      }
+    }
+  }
+
+  /**
+   * Read the responses to the Close messages sent along with a Parse, then the response to
+   * the Parse.
+   *
+   * @return true if the statement was prepared, false if the error was passed to the handler
+   */
+  private boolean receiveParseComplete(ResultHandler handler, int pendingCloses)
+      throws IOException {
+    while (true) {
+      int c = stream.receiveChar();
+      switch (c) {
+        case '3': // Close Complete (response to Close)
+          stream.receiveInteger4(); // len, discarded
+          LOGGER.log(Level.FINEST, " <=BE CloseComplete");
+          --pendingCloses;
+          break;
+
+        case '1': // Parse Complete (response to Parse)
+          stream.receiveInteger4(); // len, discarded
+          LOGGER.log(Level.FINEST, " <=BE ParseComplete");
+          return true;
+
+        case 'E': // Error Response
+          SQLException error = receiveErrorResponse();
+          if (pendingCloses > 0) {
+            // a statement that could not be closed is gone with the session anyway
+            LOGGER.log(Level.FINEST, "Ignoring error on close of a statement", error);
+            --pendingCloses;
+            break;
+          }
+          handler.handleError(error);
+          return false;
+
+        default:
+          throw new IOException("Unexpected packet type: " + c);
+      }
+    }
+  }
+
+  /**
+   * Write a query message without flushing the stream.
+   */
+  private void sendQuery(String sql) throws IOException {
+    stream.sendStringMessage('E', sql);
+  }
+
+  /**
+   * Read the next batch of rows of a streamed response.
+   *
+   * @param cursor    the cursor returned with the first batch
+   * @param fetchSize the maximum number of rows to read; 0 reads the rest of the response.
+   *                  Ignored if the cursor uses adaptive fetch.
+   * @return the rows read, empty once the response is complete
+   * @throws SQLException if the backend reports an error or the connection is broken
+   */
+  public synchronized List<Tuple> fetch(StreamingCursor cursor, int fetchSize)
+      throws SQLException {
+    if (cursor != activeCursor || cursor.isExhausted()) {
+      return new ArrayList<Tuple>();
     }
 
-    StringBuilder sbuf = new StringBuilder(queryLength);
-    sbuf.append(nativeSql, 0, bindPositions.get(0));
+    String adaptiveQuery = cursor.getAdaptiveFetchQuery();
+    if (adaptiveQuery != null) {
+      fetchSize = adaptiveFetchCache.getFetchSizeForQuery(adaptiveQuery, fetchSize);
+      adaptiveFetchQuery = adaptiveQuery;
+    }
 
-    for (int i = 1; i <= params.length; ++i) {
-      sbuf.append(params[i - 1]);
-      int nextBind = i < params.length ? bindPositions.get(i) : nativeSql.length();
-      sbuf.append(nativeSql, bindPositions.get(i - 1) + 1, nextBind);
+    FetchResultHandler handler = new FetchResultHandler();
+    try {
+      processResults(handler, 0, fetchSize);
+    } catch (IOException e) {
+      // the state of the stream is unknown, so the connection cannot be used again
+      abort();
+      handler.handleError(
+          new TrainDBJdbcException("An I/O error occurred while sending to the backend.",
+              TrainDBState.CONNECTION_FAILURE, e));
+    } finally {
+      adaptiveFetchQuery = null;
     }
 
-    return sbuf.toString();
+    handler.handleCompletion();
+    return handler.tuples;
   }
 
-  private List<Integer> getBindPositions(String sql) {
-    List<Integer> bindPositions = new ArrayList<Integer>();
-    int index = sql.indexOf("?");
+  /**
+   * Give up on a streamed response. The rows that are still on the wire are read and
+   * discarded so that the connection can be used again.
+   *
+   * @param cursor the cursor to close
+   */
+  synchronized void closeCursor(StreamingCursor cursor) {
+    if (cursor != activeCursor) {
+      return;
+    }
+
+    try {
+      drainActiveCursor();
+    } catch (IOException e) {
+      LOGGER.log(Level.FINEST, "Discarding IOException on cursor close:", e);
+      abort();
+    }
+  }
+
+  private void drainActiveCursor() throws IOException {
+    StreamingCursor cursor = activeCursor;
+    if (cursor == null) {
+      return;
+    }
+
+    LOGGER.log(Level.FINEST, " FE drains {0}", cursor);
+    processResults(new FetchResultHandler(), QUERY_NO_RESULTS, 0);
+    cursor.setExhausted();
+    activeCursor = null;
+  }
+
+  /**
+   * Parse a query text for its placeholders. The result is cached, so a query is lexed once
+   * per connection however often it is prepared or executed.
+   *
+   * @param sql the query text
+   * @return the parsed query
+   */
+  public synchronized ParsedSql parseSql(String sql) {
+    ParsedSql parsed = parsedSqlCache.get(sql);
+    if (parsed == null) {
+      parsed = ParsedSql.parse(sql);
+      if (parsedSqlCacheSize > 0) {
+        parsedSqlCache.put(sql, parsed);
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * The query text with every placeholder replaced by the literal of its value.
+   *
+   * @param sql        the query text
+   * @param parameters the parameter values
+   * @return the text to send as a plain query
+   */
+  public synchronized String getNativeSql(String sql, ParameterList parameters) {
+    if (parameters.getParamCount() == 0) {
+      return sql;
+    }
 
-    while (index != -1) {
-      bindPositions.add(index);
-      index = sql.indexOf("?", index + "?".length());
+    StringBuilder sb = nativeSqlBuffer;
+    sb.setLength(0);
+    String nativeSql = parseSql(sql).toNativeSql(parameters, sb).toString();
+    if (sb.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+      // do not hold on to the buffer of an exceptionally large query
+      nativeSqlBuffer = new StringBuilder(INITIAL_BUFFER_SIZE);
     }
+    return nativeSql;
+  }
 
-    return bindPositions;
+  /**
+   * The text of an INSERT that inserts several rows at once, see
+   * {@link ParsedSql#toMultiRowNativeSql(ParameterList[], int, int, StringBuilder)}.
+   *
+   * @param sql  the query text, which must be a {@link ParsedSql#isMultiRowInsert()} query
+   * @param rows the parameter values of the rows
+   * @param from the index of the first row to insert
+   * @param to   the index after the last row to insert
+   * @return the text to send as a plain query
+   */
+  public synchronized String getMultiRowNativeSql(String sql, ParameterList[] rows, int from,
+                                                  int to) {
+    StringBuilder sb = nativeSqlBuffer;
+    sb.setLength(0);
+    String nativeSql = parseSql(sql).toMultiRowNativeSql(rows, from, to, sb).toString();
+    if (sb.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+      nativeSqlBuffer = new StringBuilder(INITIAL_BUFFER_SIZE);
+    }
+    return nativeSql;
   }
 
-  public void getMoreResult(StatementResultHandler handler) 
-        throws SQLException{
+  public synchronized void getMoreResult(ResultHandler handler) throws SQLException {
     try {
-        sendMoreResult(handler);
-        handler.handleCompletion();
+      drainActiveCursor();
+      sendMoreResult(handler);
     } catch (IOException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+      // the state of the stream is unknown, so the connection cannot be used again
+      abort();
+      handler.handleError(
+          new TrainDBJdbcException("An I/O error occurred while sending to the backend.",
+              TrainDBState.CONNECTION_FAILURE, e));
     }
+
+    handler.handleCompletion();
   }
 
-  private void sendMoreResult(StatementResultHandler handler)
+  private void sendMoreResult(ResultHandler handler)
     throws IOException {
     LOGGER.log(Level.FINEST, " FE=> getMoreResults()");
-    //System.out.println(" FE=> getMoreResults()");
 
-    String sql = "incremental rows";
-    byte[] data = sql.getBytes();
-    stream.sendChar('E');
-    stream.sendInteger4(4 + data.length);
-    stream.send(data);
+    sendQuery(MORE_RESULTS_QUERY);
     stream.flush();
 
-    processResults(handler,0,false);
+    processResults(handler, 0, 0);
+  }
+
+  /**
+   * Execute an incremental query and read its successive refinements until the handler has
+   * enough. Rather than asking for every refinement once the previous one is read, the next
+   * {@code incrementalPrefetch} requests are kept in flight, so the server moves on to the
+   * next refinement while the handler works on the current one. The responses to the requests
+   * that are in flight when the handler stops are read and discarded.
+   *
+   * @param sql     the query text
+   * @param handler the handler for the first estimate and every refinement
+   * @throws SQLException if the connection is in a state where queries cannot be sent
+   */
+  public void executeIncremental(String sql, IncrementalResultHandler handler)
+      throws SQLException {
+    executeIncremental(sql, handler, incrementalPrefetch);
+  }
+
+  /**
+   * Execute an incremental query, see {@link #executeIncremental(String,
+   * IncrementalResultHandler)}.
+   *
+   * @param sql      the query text
+   * @param handler  the handler for the first estimate and every refinement
+   * @param prefetch the number of refinements to request ahead of time
+   * @throws SQLException if the connection is in a state where queries cannot be sent
+   */
+  public synchronized void executeIncremental(String sql, IncrementalResultHandler handler,
+                                              int prefetch) throws SQLException {
+    checkSessionChange(sql);
+    int outstanding = 0;
+    try {
+      drainActiveCursor();
+      LOGGER.log(Level.FINEST, " FE=> SimpleQuery(query=\"{0}\")", sql);
+      sendQuery(sql);
+      ++outstanding;
+      for (int i = 0; i < prefetch; ++i) {
+        LOGGER.log(Level.FINEST, " FE=> getMoreResults()");
+        sendQuery(MORE_RESULTS_QUERY);
+        ++outstanding;
+      }
+      stream.flush();
+      currentQuery = sql;
+
+      boolean wanted = true;
+      while (outstanding > 0) {
+        if (!wanted) {
+          // a refinement that was asked for ahead of time and is not needed anymore
+          processResults(new FetchResultHandler(), QUERY_NO_RESULTS, 0);
+          --outstanding;
+          continue;
+        }
+
+        ResultHandler response = handler.newResponseHandler();
+        processResults(response, 0, 0);
+        --outstanding;
+        wanted = handler.handleResponse(response);
+        if (wanted) {
+          LOGGER.log(Level.FINEST, " FE=> getMoreResults()");
+          sendQuery(MORE_RESULTS_QUERY);
+          stream.flush();
+          ++outstanding;
+        }
+      }
+    } catch (IOException e) {
+      // the state of the stream is unknown, so the connection cannot be used again
+      abort();
+      ResultHandler response = handler.newResponseHandler();
+      response.handleError(
+          new TrainDBJdbcException("An I/O error occurred while sending to the backend.",
+              TrainDBState.CONNECTION_FAILURE, e));
+      handler.handleResponse(response);
+    }
+  }
+
+  /**
+   * Read backend messages until the current response is complete, or until
+   * <code>fetchSize</code> rows have been read. In the latter case the rows are handed to
+   * the handler along with a {@link StreamingCursor} and the rest of the response is left
+   * on the stream.
+   */
+  protected void processResults(ResultHandler handler, int flags, int fetchSize)
+      throws IOException {
+    stream.clearResultBufferCount();
+    stream.clearMaxRowSizeBytes();
+    try {
+      readResponse(handler, flags, fetchSize);
+
+      String adaptiveQuery = adaptiveFetchQuery;
+      if (adaptiveQuery != null) {
+        // size the next batches, and the next executions, after the rows of this one
+        adaptiveFetchCache.updateQueryFetchSize(adaptiveQuery, stream.getMaxRowSizeBytes());
+      }
+    } finally {
+      // rows that were spilled but never handed over, e.g. because of an error
+      SpilledTupleList spilled = pendingSpill;
+      if (spilled != null) {
+        pendingSpill = null;
+        spilled.close();
+      }
+    }
   }
 
-  protected void processResults(StatementResultHandler handler, int flags, boolean adaptiveFetch)
+  private void readResponse(ResultHandler handler, int flags, int fetchSize)
       throws IOException {
     boolean noResults = (flags & QUERY_NO_RESULTS) != 0;
     boolean bothRowsAndStatus = (flags & QUERY_BOTH_ROWS_AND_STATUS) != 0;
@@ -205,16 +910,6 @@ public class QueryExecutor {
 	    			receiveAsyncNotify();
 	    			break;
 
-	    		case '1': // Parse Complete (response to Parse)
-	    			stream.receiveInteger4(); // len, discarded
-
-	    			SimpleQuery parsedQuery = pendingParseQueue.removeFirst();
-	    			String parsedStatementName = parsedQuery.getStatementName();
-
-	    			LOGGER.log(Level.FINEST, " <=BE ParseComplete [{0}]", parsedStatementName);
-
-	    			break;
-
 	    		case 't': { // ParameterDescription
 	    			stream.receiveInteger4(); // len, discarded
 
@@ -252,21 +947,17 @@ public class QueryExecutor {
 					
 					break;
 				}
+				*/
 
-	    		case '2': // Bind Complete (response to Bind)
-	    			stream.receiveInteger4(); // len, discarded
-
-	    			Portal boundPortal = pendingBindQueue.removeFirst();
-	    			LOGGER.log(Level.FINEST, " <=BE BindComplete [{0}]", boundPortal);
-
-	    			registerOpenPortal(boundPortal);
-	    			break;
+        case '2': // Bind Complete (response to Bind)
+          stream.receiveInteger4(); // len, discarded
+          LOGGER.log(Level.FINEST, " <=BE BindComplete");
+          break;
 
-	    		case '3': // Close Complete (response to Close)
-	    			stream.receiveInteger4(); // len, discarded
-	    			LOGGER.log(Level.FINEST, " <=BE CloseComplete");
-	    			break;
-				*/
+        case '3': // Close Complete (response to Close)
+          stream.receiveInteger4(); // len, discarded
+          LOGGER.log(Level.FINEST, " <=BE CloseComplete");
+          break;
 
         case 'n': // No Data
           stream.receiveInteger4(); // len, discarded
@@ -400,9 +1091,18 @@ public class QueryExecutor {
           int len = stream.receiveInteger4();
           String status = stream.receiveString(len - 5);
           stream.receiveChar();
+          LOGGER.log(Level.FINEST, " <=BE CommandStatus({0})", status);
+          boolean streamed = activeCursor != null;
+          if (activeCursor != null) {
+            activeCursor.setExhausted();
+            activeCursor = null;
+          }
           if (tuples != null) {
+            pendingSpill = null;
             handler.handleResultRows(currentQuery, currentFields, tuples, null);
             tuples = null;
+          } else if (!streamed) {
+            interpretCommandStatus(status, handler);
           }
           endQuery = true;
           break;
@@ -424,9 +1124,16 @@ public class QueryExecutor {
           if (!noResults) {
             if (tuples == null) {
               tuples = new ArrayList<Tuple>();
+            } else if (tuples instanceof ColumnBatchList) {
+              // rows after column batches: carry on with a plain list
+              tuples = new ArrayList<Tuple>(tuples);
             }
             if (tuple != null) {
-              tuples.add(tuple);
+              tuples = addTuple(handler, tuples, tuple);
+              if (tuples == null) {
+                // the rows cannot be stored, read and discard the rest of them
+                noResults = true;
+              }
             }
           }
 
@@ -440,11 +1147,68 @@ public class QueryExecutor {
 
             LOGGER.log(Level.FINEST, " <=BE DataRow(len={0})", length);
           }
+
+          if (fetchSize > 0 && tuples != null && tuples.size() >= fetchSize) {
+            suspendResponse(handler, tuples);
+            tuples = null;
+            endQuery = true;
+          }
+          break;
+
+        case 'V': // Column Batch (ongoing Execute response, columnar results)
+          ColumnBatch batch = null;
+          try {
+            batch = stream.receiveColumnBatch(currentFields);
+          } catch (OutOfMemoryError oome) {
+            if (!noResults) {
+              handler.handleError(
+                  new TrainDBJdbcException("Ran out of memory retrieving query results.",
+                      TrainDBState.OUT_OF_MEMORY, oome));
+            }
+          } catch (SQLException e) {
+            handler.handleError(e);
+          }
+
+          if (!noResults) {
+            if (tuples == null) {
+              tuples = new ColumnBatchList();
+            }
+            if (batch != null) {
+              if (tuples instanceof ColumnBatchList) {
+                ((ColumnBatchList) tuples).addBatch(batch);
+              } else {
+                for (int i = 0; i < batch.getRowCount(); ++i) {
+                  tuples.add(batch.getRow(i));
+                }
+              }
+            }
+          }
+
+          if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, " <=BE ColumnBatch(rows={0}, len={1})", new Object[] {
+                batch == null ? -1 : batch.getRowCount(), batch == null ? -1 : batch.length()});
+          }
+
+          if (fetchSize > 0 && tuples != null && tuples.size() >= fetchSize) {
+            suspendResponse(handler, tuples);
+            tuples = null;
+            endQuery = true;
+          }
+          break;
+
+        case 'N': // Notice Response
+          SQLWarning warning = receiveNoticeResponse();
+          handler.handleWarning(warning);
           break;
 
         case 'E': // Error Response
           SQLException error = receiveErrorResponse();
+          lastErrorState = error.getSQLState();
           handler.handleError(error);
+          if (activeCursor != null) {
+            activeCursor.setExhausted();
+            activeCursor = null;
+          }
           endQuery = true;
           break;
 
@@ -463,11 +1227,6 @@ public class QueryExecutor {
 	    			break;
 	    		}
 
-	    		case 'N': // Notice Response
-	    			SQLWarning warning = receiveNoticeResponse();
-	    			handler.handleWarning(warning);
-	    			break;
-
 	    		case 'S': // Parameter Status
 	    			try {
 	    				receiveParameterStatus();
@@ -536,30 +1295,167 @@ public class QueryExecutor {
     }
   }
 
+  /**
+   * Pass the update count of a command that returned no rows to the handler. The tags of
+   * INSERT, UPDATE, DELETE and the like end with the number of rows affected; INSERT also
+   * carries the OID of the row inserted before it. Other tags count as 0 rows.
+   */
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/core/v3/QueryExecutorImpl.java
+  private void interpretCommandStatus(String status, ResultHandler handler) {
+    long updateCount = 0;
+    long insertOID = 0;
+    if (status.startsWith("INSERT") || status.startsWith("UPDATE")
+        || status.startsWith("DELETE") || status.startsWith("MERGE")
+        || status.startsWith("MOVE") || status.startsWith("COPY")) {
+      try {
+        updateCount = Long.parseLong(status.substring(1 + status.lastIndexOf(' ')));
+        if (status.startsWith("INSERT") && status.indexOf(' ') < status.lastIndexOf(' ')) {
+          insertOID = Long.parseLong(
+              status.substring(1 + status.indexOf(' '), status.lastIndexOf(' ')));
+        }
+      } catch (NumberFormatException nfe) {
+        handler.handleError(new TrainDBJdbcException(MessageFormat.format(
+            "Unable to interpret the update count in command completion tag: {0}.", status),
+            TrainDBState.CONNECTION_FAILURE));
+        return;
+      }
+    }
+    handler.handleCommandStatus(status, updateCount, insertOID);
+  }
+
+  /**
+   * Add a row to the rows of the current response. Once the rows exceed the
+   * {@code maxResultBuffer} budget they are moved to a spill file, and so are all further rows.
+   *
+   * @return the list now holding the rows, or null if they could not be stored
+   */
+  private @Nullable List<Tuple> addTuple(ResultHandler handler, List<Tuple> tuples,
+                                         Tuple tuple) {
+    try {
+      if (tuples instanceof SpilledTupleList) {
+        ((SpilledTupleList) tuples).append(tuple);
+        return tuples;
+      }
+
+      tuples.add(tuple);
+      if (stream.isResultBufferExceeded()) {
+        SpilledTupleList spilled = SpilledTupleList.spill(tuples);
+        pendingSpill = spilled;
+        return spilled;
+      }
+      return tuples;
+    } catch (IOException e) {
+      if (pendingSpill != null) {
+        pendingSpill.close();
+        pendingSpill = null;
+      }
+      handler.handleError(new TrainDBJdbcException(
+          "Could not write the rows exceeding maxResultBuffer to a temporary file.",
+          TrainDBState.IO_ERROR, e));
+      return null;
+    }
+  }
+
+  /**
+   * Hand the rows read so far to the handler along with a cursor over the rest of the
+   * response, which is left on the wire for the next fetch.
+   */
+  private void suspendResponse(ResultHandler handler, List<Tuple> tuples) {
+    pendingSpill = null;
+    if (activeCursor == null) {
+      activeCursor = new StreamingCursor(this, currentQuery, currentFields,
+          adaptiveFetchQuery);
+    }
+    handler.handleResultRows(currentQuery, currentFields, tuples, activeCursor);
+  }
+
+  /**
+   * Read a row description. A statement that runs again, or an incremental query that is
+   * refined, describes the same columns with the same bytes: those are compared with the row
+   * descriptions received lately, and the fields built for them are returned again, along with
+   * their label index.
+   */
   private Field[] receiveFields() throws IOException {
-    stream.receiveInteger4(); // MESSAGE SIZE
-    int len = stream.receiveInteger2();
+    int size = stream.receiveInteger4() - 4; // MESSAGE SIZE
+    byte[] bytes = rowDescriptionBuffer;
+    if (bytes.length < size) {
+      bytes = rowDescriptionBuffer = new byte[Math.max(size, bytes.length * 2)];
+    }
+    stream.receive(bytes, 0, size);
+
+    int fingerprint = 1;
+    for (int i = 0; i < size; ++i) {
+      fingerprint = 31 * fingerprint + bytes[i];
+    }
+    RowDescription cached = rowDescriptionCache.get(fingerprint);
+    if (cached != null
+        && AsciiStringInterner.arrayEquals(cached.bytes, 0, cached.bytes.length, bytes, 0, size)) {
+      if (LOGGER.isLoggable(Level.FINEST)) {
+        LOGGER.log(Level.FINEST, " <=BE RowDescription({0}) (cached)", cached.fields.length);
+      }
+      return cached.fields;
+    }
+
+    Field[] fields = parseFields(bytes, size);
+    if (parsedSqlCacheSize > 0) {
+      rowDescriptionCache.put(fingerprint,
+          new RowDescription(Arrays.copyOf(bytes, size), fields));
+    }
+    return fields;
+  }
+
+  private Field[] parseFields(byte[] bytes, int size) throws IOException {
+    int len = (bytes[0] & 0xFF) << 8 | bytes[1] & 0xFF;
     Field[] fields = new Field[len];
 
     if (LOGGER.isLoggable(Level.FINEST)) {
       LOGGER.log(Level.FINEST, " <=BE RowDescription({0})", len);
     }
 
+    Encoding encoding = stream.getEncoding();
+    int pos = 2;
     for (int i = 0; i < len; i++) {
-      String columnLabel = stream.receiveCanonicalString();
-      //int tableOid = stream.receiveInteger4();
-      //short positionInTable = (short) stream.receiveInteger2();
-      int type = stream.receiveInteger4();
-      int typeSize = stream.receiveInteger4();
-      int format = stream.receiveInteger2();
+      int end = pos;
+      while (end < size && bytes[end] != 0) {
+        ++end;
+      }
+      if (end + 11 > size) {
+        throw new IOException("Truncated RowDescription message");
+      }
+      String columnLabel = encoding.decodeCanonicalized(bytes, pos, end - pos);
+      pos = end + 1;
+      //int tableOid = ByteConverter.int4(bytes, pos);
+      //short positionInTable = ByteConverter.int2(bytes, pos);
+      int type = ByteConverter.int4(bytes, pos);
+      int typeSize = ByteConverter.int4(bytes, pos + 4);
+      int format = (bytes[pos + 8] & 0xFF) << 8 | bytes[pos + 9] & 0xFF;
+      pos += 10;
       fields[i] = new Field(columnLabel, type, typeSize, format);
 
       LOGGER.log(Level.FINEST, "        {0}", fields[i]);
     }
 
+    // refinements of an incremental query, or executions of a statement, describe the same
+    // columns again
+    ColumnLabelIndex labelIndex = ColumnLabelIndex.of(fields, lastLabelIndex);
+    Field.setLabelIndex(fields, labelIndex);
+    lastLabelIndex = labelIndex;
     return fields;
   }
 
+  /**
+   * The bytes of a row description and the fields built from them.
+   */
+  private static final class RowDescription {
+    final byte[] bytes;
+    final Field[] fields;
+
+    RowDescription(byte[] bytes, Field[] fields) {
+      this.bytes = bytes;
+      this.fields = fields;
+    }
+  }
+
   private SQLException receiveErrorResponse() throws IOException {
     // it's possible to get more than one error message for a query
     // see libpq comments wrt backend closing a connection
@@ -579,4 +1475,56 @@ public class QueryExecutor {
     TrainDBJdbcException error = new TrainDBJdbcException(errorMsg);
     return error;
   }
+
+  // Borrowed from pgjdbc/src/main/java/org/postgresql/core/v3/QueryExecutorImpl.java
+  private SQLWarning receiveNoticeResponse() throws IOException {
+    int nlen = stream.receiveInteger4();
+    assert nlen > 4 : "Notice Response length must be greater than 4";
+
+    ServerErrorMessage warnMsg = new ServerErrorMessage(stream.receiveErrorString(nlen - 4));
+
+    if (LOGGER.isLoggable(Level.FINEST)) {
+      LOGGER.log(Level.FINEST, " <=BE NoticeResponse({0})", warnMsg.toString());
+    }
+
+    return new TrainDBWarning(warnMsg);
+  }
+
+  /**
+   * Collects the rows of a {@link #fetch} call, or discards them while draining.
+   */
+  private static class FetchResultHandler implements ResultHandler {
+    private List<Tuple> tuples = new ArrayList<Tuple>();
+    private @Nullable SQLException error;
+
+    @Override
+    public void handleResultRows(String fromQuery, Field[] fields, List<Tuple> tuples,
+                                 @Nullable ResultCursor cursor) {
+      this.tuples = tuples;
+    }
+
+    @Override
+    public void handleCommandStatus(String status, long updateCount, long insertOID) {
+    }
+
+    @Override
+    public void handleWarning(SQLWarning warning) {
+    }
+
+    @Override
+    public void handleError(SQLException error) {
+      if (this.error == null) {
+        this.error = error;
+      } else {
+        this.error.setNextException(error);
+      }
+    }
+
+    @Override
+    public void handleCompletion() throws SQLException {
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
 }
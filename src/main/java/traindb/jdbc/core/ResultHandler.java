@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Callback interface for passing query results from the protocol-specific layer to the
+ * protocol-independent JDBC implementation code.
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/core/ResultHandler.java
+public interface ResultHandler {
+  /**
+   * Called when result rows are received from a query.
+   *
+   * @param fromQuery the underlying query that generated these results
+   * @param fields    column metadata for the resultset
+   * @param tuples    the actual data
+   * @param cursor    a cursor to use to fetch additional data;
+   *                  <code>null</code> if no further results are present.
+   */
+  void handleResultRows(String fromQuery, Field[] fields, List<Tuple> tuples,
+                        @Nullable ResultCursor cursor);
+
+  /**
+   * Called when a query that did not return a resultset completes.
+   *
+   * @param status      the command status string (e.g. "SELECT") returned by the backend
+   * @param updateCount the number of rows affected by an INSERT, UPDATE, DELETE, FETCH, or MOVE
+   *                    command; -1 if not available.
+   * @param insertOID   for a single-row INSERT query, the OID of the newly inserted row; 0 if not
+   *                    available.
+   */
+  void handleCommandStatus(String status, long updateCount, long insertOID);
+
+  /**
+   * Called when a warning is emitted.
+   *
+   * @param warning the warning that occurred.
+   */
+  void handleWarning(SQLWarning warning);
+
+  /**
+   * Called when an error occurs. Subsequent queries are abandoned.
+   *
+   * @param error the error that occurred
+   */
+  void handleError(SQLException error);
+
+  /**
+   * Called before a QueryExecutor method returns. This method may throw a SQLException if desired;
+   * if it does, the QueryExecutor method will propagate that exception to the original caller.
+   *
+   * @throws SQLException if the handler wishes the original method to throw an exception.
+   */
+  void handleCompletion() throws SQLException;
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Rows of a result that did not fit in the {@code maxResultBuffer} heap budget, stored in a
+ * temporary file.
+ *
+ * <p>Every row is appended to the file in DataRow layout (an int4 length and the bytes of
+ * every field) and read back through a memory mapping of the file, so the rows cost neither
+ * heap nor a read call while a result set scrolls over them. A {@link Tuple} is materialized
+ * for every {@link #get(int)}. The file is deleted when the list is {@link #close() closed}.</p>
+ */
+public class SpilledTupleList extends AbstractList<Tuple> implements Closeable {
+  private static final Logger LOGGER = Logger.getLogger(SpilledTupleList.class.getName());
+
+  // Size of the regions of the file that are mapped at once
+  private static final long MAP_CHUNK_SIZE = 256L * 1024 * 1024;
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+  private long fileSize;
+
+  // Position in the file of every row, and its field count
+  private long[] rowOffsets = new long[1024];
+  private int[] fieldCounts = new int[1024];
+  private int size;
+
+  private @Nullable MappedByteBuffer mapped;
+  private long mappedStart;
+  private long mappedEnd;
+
+  private SpilledTupleList() throws IOException {
+    path = Files.createTempFile("traindb-result", ".spill");
+    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.DELETE_ON_CLOSE);
+  }
+
+  /**
+   * Move rows that were read so far to a new spill file.
+   *
+   * @param tuples the rows to move
+   * @return a spilled list holding the same rows
+   * @throws IOException if the file cannot be created or written
+   */
+  public static SpilledTupleList spill(List<Tuple> tuples) throws IOException {
+    SpilledTupleList spilled = new SpilledTupleList();
+    LOGGER.log(Level.FINE, "Spilling result rows to {0}", spilled.path);
+    try {
+      for (Tuple tuple : tuples) {
+        spilled.append(tuple);
+      }
+    } catch (IOException e) {
+      spilled.close();
+      throw e;
+    }
+    return spilled;
+  }
+
+  /**
+   * Append a row to the file.
+   *
+   * @param tuple the row
+   * @throws IOException if the file cannot be written
+   */
+  public void append(Tuple tuple) throws IOException {
+    if (size == rowOffsets.length) {
+      long[] offsets = new long[size * 2];
+      System.arraycopy(rowOffsets, 0, offsets, 0, size);
+      rowOffsets = offsets;
+      int[] counts = new int[size * 2];
+      System.arraycopy(fieldCounts, 0, counts, 0, size);
+      fieldCounts = counts;
+    }
+
+    int fieldCount = tuple.fieldCount();
+    rowOffsets[size] = getSpilledBytes();
+    fieldCounts[size] = fieldCount;
+
+    for (int i = 0; i < fieldCount; ++i) {
+      int length = tuple.getLength(i);
+      writeInt(length);
+      if (length > 0) {
+        writeBytes(tuple.getBuffer(i), tuple.getOffset(i), length);
+      }
+    }
+    size++;
+  }
+
+  private void writeInt(int value) throws IOException {
+    if (writeBuffer.remaining() < 4) {
+      flushWrites();
+    }
+    writeBuffer.putInt(value);
+  }
+
+  private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (!writeBuffer.hasRemaining()) {
+        flushWrites();
+      }
+      int chunk = Math.min(length, writeBuffer.remaining());
+      writeBuffer.put(bytes, offset, chunk);
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  private void flushWrites() throws IOException {
+    writeBuffer.flip();
+    while (writeBuffer.hasRemaining()) {
+      fileSize += channel.write(writeBuffer, fileSize);
+    }
+    writeBuffer.clear();
+  }
+
+  @Override
+  public Tuple get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    long start = rowOffsets[index];
+    // rows are contiguous, the last one ends with the file
+    int length = (int) ((index + 1 < size ? rowOffsets[index + 1] : getSpilledBytes()) - start);
+
+    try {
+      ByteBuffer region = map(start, length);
+      byte[] slab = new byte[length];
+      region.position((int) (start - mappedStart));
+      region.get(slab);
+      return Tuple.fromDataRow(slab, fieldCounts[index]);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Map the region of the file holding the given range, unless it already is.
+   */
+  private ByteBuffer map(long start, int length) throws IOException {
+    if (writeBuffer.position() > 0) {
+      flushWrites();
+    }
+
+    MappedByteBuffer mapped = this.mapped;
+    if (mapped == null || start < mappedStart || start + length > mappedEnd) {
+      long regionSize = Math.max(length, Math.min(MAP_CHUNK_SIZE, fileSize - start));
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, regionSize);
+      this.mapped = mapped;
+      mappedStart = start;
+      mappedEnd = start + regionSize;
+    }
+    return mapped;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Number of bytes written to the spill file.
+   *
+   * @return the size of the spilled rows
+   */
+  public long getSpilledBytes() {
+    return fileSize + writeBuffer.position();
+  }
+
+  /**
+   * Release the mapping and delete the file. The list is empty afterwards.
+   */
+  @Override
+  public void close() {
+    // a mapping cannot be unmapped explicitly; it goes away with the buffer
+    mapped = null;
+    size = 0;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Discarding IOException on spill file close:", e);
+    }
+  }
+}
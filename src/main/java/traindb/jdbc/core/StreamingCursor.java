@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A cursor over a query response that is still being read from the connection.
+ *
+ * <p>The backend sends every DataRow of a query back-to-back, so the cursor does not
+ * request anything from the server: it only records that the rest of the response is
+ * still pending on the stream. Rows are pulled with {@link QueryExecutor#fetch} as the
+ * result set advances. Until the cursor is exhausted or closed the connection cannot be
+ * used for another query; the executor drains the remaining rows first in that case.</p>
+ */
+public class StreamingCursor implements ResultCursor {
+  private final QueryExecutor executor;
+  private final String query;
+  private final Field[] fields;
+  private final @Nullable String adaptiveFetchQuery;
+  private boolean exhausted = false;
+
+  StreamingCursor(QueryExecutor executor, String query, Field[] fields,
+                  @Nullable String adaptiveFetchQuery) {
+    this.executor = executor;
+    this.query = query;
+    this.fields = fields;
+    this.adaptiveFetchQuery = adaptiveFetchQuery;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public Field[] getFields() {
+    return fields;
+  }
+
+  /**
+   * The query text under which the batch size of this cursor is kept in the
+   * {@link AdaptiveFetchCache}.
+   *
+   * @return the text the statement was executed with, or null if adaptive fetch is not used
+   */
+  public @Nullable String getAdaptiveFetchQuery() {
+    return adaptiveFetchQuery;
+  }
+
+  public boolean isExhausted() {
+    return exhausted;
+  }
+
+  void setExhausted() {
+    exhausted = true;
+  }
+
+  @Override
+  public void close() {
+    executor.closeCursor(this);
+  }
+
+  @Override
+  public String toString() {
+    return "StreamingCursor(" + query + ")";
+  }
+}
@@ -32,6 +32,7 @@ import java.text.MessageFormat;
 import javax.net.SocketFactory;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import traindb.jdbc.util.HostSpec;
+import traindb.jdbc.util.MaxResultBufferParser;
 import traindb.jdbc.util.TrainDBJdbcException;
 import traindb.jdbc.util.TrainDBState;
 
@@ -69,6 +70,21 @@ public class TrainDBStream implements Closeable, Flushable {
     int4Buf = new byte[4];
   }
 
+  /**
+   * Constructor for subclasses that set up their own connection. The subclass must call
+   * {@link #changeSocket(Socket)} and {@link #setEncoding(Encoding)} before the stream is used.
+   *
+   * @param socketFactory socket factory the connection was made with
+   * @param hostSpec      host the connection is made to
+   */
+  protected TrainDBStream(SocketFactory socketFactory, HostSpec hostSpec) {
+    this.socketFactory = socketFactory;
+    this.hostSpec = hostSpec;
+
+    int2Buf = new byte[2];
+    int4Buf = new byte[4];
+  }
+
   public TrainDBStream(TrainDBStream stream, int timeout) throws IOException {
     /*
      * Some defaults
@@ -186,7 +202,7 @@ public class TrainDBStream implements Closeable, Flushable {
 
     // Intercept flush() downcalls from the writer; our caller
     // will call stream.flush() as needed.
-    OutputStream interceptor = new FilterOutputStream(output) {
+    OutputStream interceptor = new FilterOutputStream(getOutputStream()) {
       public void flush() throws IOException {
       }
 
@@ -198,6 +214,15 @@ public class TrainDBStream implements Closeable, Flushable {
     encodingWriter = encoding.getEncodingWriter(interceptor);
   }
 
+  /**
+   * The stream that {@link #getEncodingWriter() the encoding writer} writes to.
+   *
+   * @return the buffered output stream of the connection
+   */
+  protected OutputStream getOutputStream() {
+    return output;
+  }
+
   public Writer getEncodingWriter() throws IOException {
     if (encodingWriter == null) {
       throw new IOException("No encoding has been set on this connection");
@@ -235,6 +260,22 @@ public class TrainDBStream implements Closeable, Flushable {
     output.write(int4Buf);
   }
 
+  /**
+   * Sends a 2-byte integer (short) to the back end.
+   *
+   * @param val the integer to be sent
+   * @throws IOException if an I/O error occurs or {@code val} cannot be encoded in 2 bytes
+   */
+  public void sendInteger2(int val) throws IOException {
+    if (val < Short.MIN_VALUE || val > Short.MAX_VALUE) {
+      throw new IOException("Tried to send an out-of-range integer as a 2-byte value: " + val);
+    }
+
+    int2Buf[0] = (byte) (val >>> 8);
+    int2Buf[1] = (byte) val;
+    output.write(int2Buf);
+  }
+
   public void send(byte[] buf) throws IOException {
     output.write(buf);
   }
@@ -251,6 +292,30 @@ public class TrainDBStream implements Closeable, Flushable {
     }
   }
 
+  /**
+   * Send a message made of a type byte, an int4 length and a string in the connection encoding.
+   * When the encoding can tell the encoded length up front, as UTF-8 does, the string is encoded
+   * straight into the output buffer instead of into a temporary array.
+   *
+   * @param type the message type
+   * @param s    the body of the message
+   * @throws IOException if an I/O error occurs
+   */
+  public void sendStringMessage(int type, String s) throws IOException {
+    int length = encoding.encodedLength(s);
+    if (length < 0) {
+      byte[] data = encoding.encode(s);
+      sendChar(type);
+      sendInteger4(4 + data.length);
+      send(data);
+      return;
+    }
+
+    sendChar(type);
+    sendInteger4(4 + length);
+    encoding.encode(s, getOutputStream());
+  }
+
   /**
    * Receives a single character from the backend.
    *
@@ -311,13 +376,13 @@ public class TrainDBStream implements Closeable, Flushable {
   }
 
   /**
-   * Read a tuple from the back end. A tuple is a two dimensional array of bytes. This variant reads
-   * the protocol's tuple representation.
+   * Read a tuple from the back end. The whole DataRow payload is read into a single array
+   * with one bulk transfer and the tuple keeps offsets into it; see {@link Tuple}.
    *
    * @return tuple from the back end
    * @throws IOException      if a data I/O error occurs
    * @throws OutOfMemoryError
-   * @throws SQLException     if read more bytes than set maxResultBuffer
+   * @throws SQLException     if the message cannot be read
    */
   public Tuple receiveTuple() throws IOException, OutOfMemoryError, SQLException {
     int messageSize = receiveInteger4(); // MESSAGE SIZE
@@ -326,31 +391,59 @@ public class TrainDBStream implements Closeable, Flushable {
     int dataToReadSize = messageSize - 4 - 2 - 4 * nf;
     setMaxRowSizeBytes(dataToReadSize);
 
-    byte[][] answer = new byte[nf][];
-
     increaseByteCounter(dataToReadSize);
-    OutOfMemoryError oom = null;
-
-    for (int i = 0; i < nf; ++i) {
-      int size = receiveInteger4();
-      if (size != -1) {
-        try {
-          answer[i] = new byte[size];
-          receive(answer[i], 0, size);
-        } catch (OutOfMemoryError oome) {
-          oom = oome;
-          skip(size);
-        }
-      }
-    }
 
-    if (oom != null) {
-      throw oom;
+    // the field lengths stay in the slab, in front of every value
+    int slabSize = messageSize - 4 - 2;
+    byte[] slab;
+    try {
+      slab = new byte[slabSize];
+    } catch (OutOfMemoryError oome) {
+      skip(slabSize);
+      throw oome;
     }
+    receive(slab, 0, slabSize);
 
-    return new Tuple(answer);
+    return Tuple.fromDataRow(slab, nf);
   }
 
+  /**
+   * Read a ColumnBatch message from the back end. The payload is read into a single array with
+   * one bulk transfer; see {@link ColumnBatch} for its layout.
+   *
+   * @param fields the description of the columns of the batch
+   * @return batch from the back end
+   * @throws IOException      if a data I/O error occurs
+   * @throws OutOfMemoryError
+   * @throws SQLException     if the message cannot be read
+   */
+  public ColumnBatch receiveColumnBatch(Field[] fields)
+      throws IOException, OutOfMemoryError, SQLException {
+    int messageSize = receiveInteger4(); // MESSAGE SIZE
+    int rowCount = receiveInteger4();
+    int nf = receiveInteger2();
+    if (nf != fields.length) {
+      throw new IOException("Invalid ColumnBatch: " + nf + " columns, expected " + fields.length);
+    }
+    int payloadSize = messageSize - 4 - 4 - 2;
+    if (rowCount > 0) {
+      // rows are not framed in a batch, take the average
+      setMaxRowSizeBytes(payloadSize / rowCount);
+    }
+
+    increaseByteCounter(payloadSize);
+
+    byte[] slab;
+    try {
+      slab = new byte[payloadSize];
+    } catch (OutOfMemoryError oome) {
+      skip(payloadSize);
+      throw oome;
+    }
+    receive(slab, 0, payloadSize);
+
+    return ColumnBatch.fromMessage(slab, rowCount, fields);
+  }
 
   public String receiveString(int len) throws IOException {
     if (!input.ensureBytes(len)) {
@@ -424,6 +517,21 @@ public class TrainDBStream implements Closeable, Flushable {
     }
   }
 
+  /**
+   * Consume an expected EOF from the backend.
+   *
+   * @throws IOException          if an I/O error occurs
+   * @throws TrainDBJdbcException if we get something other than an EOF
+   */
+  public void receiveEOF() throws IOException, TrainDBJdbcException {
+    int c = input.read();
+    if (c < 0) {
+      return;
+    }
+    throw new TrainDBJdbcException("Expected an EOF from server, got: " + c,
+        TrainDBState.COMMUNICATION_ERROR);
+  }
+
   public void sendStream(InputStream inStream, int remaining) throws IOException,
       TrainDBJdbcException {
     int expectedLength = remaining;
@@ -471,8 +579,36 @@ public class TrainDBStream implements Closeable, Flushable {
     return connection.isClosed();
   }
 
+  /**
+   * Set the heap budget for the rows of a single result. Rows beyond it are not kept in memory,
+   * see {@link #isResultBufferExceeded()}.
+   *
+   * @param value the {@code maxResultBuffer} property value; null for no limit
+   * @throws TrainDBJdbcException if the value cannot be parsed
+   */
   public void setMaxResultBuffer(@Nullable String value) throws TrainDBJdbcException {
-    // maxResultBuffer = PGPropertyMaxResultBufferParser.parseProperty(value);
+    maxResultBuffer = MaxResultBufferParser.parseProperty(value);
+  }
+
+  public long getMaxResultBuffer() {
+    return maxResultBuffer;
+  }
+
+  /**
+   * Start counting the bytes of a new result.
+   */
+  public void clearResultBufferCount() {
+    resultBufferByteCount = 0;
+  }
+
+  /**
+   * Whether the rows read since {@link #clearResultBufferCount()} are more than the
+   * {@code maxResultBuffer} budget allows to keep on the heap.
+   *
+   * @return true if a limit is set and it has been exceeded
+   */
+  public boolean isResultBufferExceeded() {
+    return maxResultBuffer != -1 && resultBufferByteCount > maxResultBuffer;
   }
 
   public void setMaxRowSizeBytes(int rowSizeBytes) {
@@ -481,15 +617,23 @@ public class TrainDBStream implements Closeable, Flushable {
     }
   }
 
-  private void increaseByteCounter(long value) throws SQLException {
+  /**
+   * The size of the largest row read since {@link #clearMaxRowSizeBytes()}, without the
+   * message framing.
+   *
+   * @return the row size in bytes, -1 if no row was read
+   */
+  public int getMaxRowSizeBytes() {
+    return maxRowSizeBytes;
+  }
+
+  public void clearMaxRowSizeBytes() {
+    maxRowSizeBytes = -1;
+  }
+
+  private void increaseByteCounter(long value) {
     if (maxResultBuffer != -1) {
       resultBufferByteCount += value;
-      if (resultBufferByteCount > maxResultBuffer) {
-        throw new TrainDBJdbcException(MessageFormat.format(
-            "Result set exceeded maxResultBuffer limit. Received:  {0}; Current limit: {1}",
-            String.valueOf(resultBufferByteCount), String.valueOf(maxResultBuffer)),
-            TrainDBState.COMMUNICATION_ERROR);
-      }
     }
   }
 
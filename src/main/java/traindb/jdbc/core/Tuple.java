@@ -14,12 +14,28 @@
 
 package traindb.jdbc.core;
 
+import java.io.IOException;
 import org.checkerframework.checker.index.qual.NonNegative;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.qual.Pure;
+import traindb.jdbc.util.ByteConverter;
 
+/**
+ * A row of a result set.
+ *
+ * <p>Rows received from the backend keep the DataRow payload in a single slab, i.e. the
+ * sequence of (int4 length, bytes) pairs exactly as it came off the wire, along with the
+ * offset of every field's bytes in that slab. Readers that can work on a range of bytes use
+ * {@link #getBuffer(int)}, {@link #getOffset(int)} and {@link #getLength(int)} so that no
+ * per-field array is ever created. Rows built on the client (updatable copies) keep one
+ * array per field instead.</p>
+ */
 public class Tuple {
+  private static final int NULL_OFFSET = -1;
+
   final byte[] @Nullable [] data;
+  private final byte @Nullable [] slab;
+  private final int @Nullable [] offsets;
   private final boolean forUpdate;
 
   /**
@@ -42,16 +58,69 @@ public class Tuple {
 
   private Tuple(byte[] @Nullable [] data, boolean forUpdate) {
     this.data = data;
+    this.slab = null;
+    this.offsets = null;
     this.forUpdate = forUpdate;
   }
 
+  /**
+   * Construct a tuple whose values are provided by a subclass overriding the accessors.
+   */
+  protected Tuple() {
+    this.data = null;
+    this.slab = null;
+    this.offsets = null;
+    this.forUpdate = false;
+  }
+
+  private Tuple(byte[] slab, int[] offsets) {
+    this.data = null;
+    this.slab = slab;
+    this.offsets = offsets;
+    this.forUpdate = false;
+  }
+
+  /**
+   * Construct a read-only tuple over a DataRow payload.
+   *
+   * @param slab       the field data as sent by the backend: for every field an int4 length
+   *                   ({@code -1} for NULL) followed by that many bytes
+   * @param fieldCount the number of fields in the payload
+   * @return a tuple that reads its values straight from <code>slab</code>
+   * @throws IOException if the payload does not hold <code>fieldCount</code> fields
+   */
+  public static Tuple fromDataRow(byte[] slab, int fieldCount) throws IOException {
+    int[] offsets = new int[fieldCount];
+    int pos = 0;
+
+    for (int i = 0; i < fieldCount; ++i) {
+      if (pos + 4 > slab.length) {
+        throw new IOException("Invalid DataRow: payload too short for " + fieldCount + " fields");
+      }
+      int size = ByteConverter.int4(slab, pos);
+      pos += 4;
+      if (size == -1) {
+        offsets[i] = NULL_OFFSET;
+      } else {
+        offsets[i] = pos;
+        pos += size;
+      }
+    }
+
+    if (pos != slab.length) {
+      throw new IOException("Invalid DataRow: field lengths do not match the message length");
+    }
+
+    return new Tuple(slab, offsets);
+  }
+
   /**
    * Number of fields in the tuple
    *
    * @return number of fields
    */
   public @NonNegative int fieldCount() {
-    return data.length;
+    return data != null ? data.length : offsets.length;
   }
 
   /**
@@ -60,6 +129,11 @@ public class Tuple {
    * @return the number of bytes in this tuple
    */
   public @NonNegative int length() {
+    if (data == null) {
+      // every field carries a 4 byte length prefix in the slab
+      return slab.length - 4 * offsets.length;
+    }
+
     int length = 0;
     for (byte[] field : data) {
       if (field != null) {
@@ -70,14 +144,76 @@ public class Tuple {
   }
 
   /**
-   * Get the data for the given field
+   * Get the data for the given field. Rows that come from the backend have to copy the value
+   * out of their slab for this; prefer {@link #getBuffer(int)} where a range will do.
    *
    * @param index 0-based field position in the tuple
    * @return byte array of the data
    */
   @Pure
   public byte @Nullable [] get(@NonNegative int index) {
-    return data[index];
+    if (data != null) {
+      return data[index];
+    }
+
+    int offset = offsets[index];
+    if (offset == NULL_OFFSET) {
+      return null;
+    }
+
+    byte[] value = new byte[getLength(index)];
+    System.arraycopy(slab, offset, value, 0, value.length);
+    return value;
+  }
+
+  /**
+   * Whether the given field is SQL NULL.
+   *
+   * @param index 0-based field position in the tuple
+   * @return true if the field is NULL
+   */
+  public boolean isNull(@NonNegative int index) {
+    return data != null ? data[index] == null : offsets[index] == NULL_OFFSET;
+  }
+
+  /**
+   * Get the array holding the data of the given field. The value occupies
+   * {@link #getLength(int)} bytes starting at {@link #getOffset(int)}; the array must not be
+   * modified.
+   *
+   * @param index 0-based field position in the tuple
+   * @return the backing array, or null if the field is NULL
+   */
+  public byte @Nullable [] getBuffer(@NonNegative int index) {
+    if (data != null) {
+      return data[index];
+    }
+    return offsets[index] == NULL_OFFSET ? null : slab;
+  }
+
+  /**
+   * Get the position of the given field in its {@link #getBuffer(int) buffer}.
+   *
+   * @param index 0-based field position in the tuple
+   * @return the offset of the first byte of the value
+   */
+  public @NonNegative int getOffset(@NonNegative int index) {
+    return data != null ? 0 : offsets[index];
+  }
+
+  /**
+   * Get the length in bytes of the given field.
+   *
+   * @param index 0-based field position in the tuple
+   * @return the length of the value, or -1 if the field is NULL
+   */
+  public int getLength(@NonNegative int index) {
+    if (data != null) {
+      return data[index] == null ? -1 : data[index].length;
+    }
+
+    int offset = offsets[index];
+    return offset == NULL_OFFSET ? -1 : ByteConverter.int4(slab, offset - 4);
   }
 
   /**
@@ -99,6 +235,18 @@ public class Tuple {
   }
 
   private Tuple copy(boolean forUpdate) {
+    if (data == null) {
+      if (!forUpdate) {
+        // the slab is never written to, so it can be shared
+        return this;
+      }
+      byte[][] dataCopy = new byte[offsets.length][];
+      for (int i = 0; i < dataCopy.length; ++i) {
+        dataCopy[i] = get(i);
+      }
+      return new Tuple(dataCopy, true);
+    }
+
     byte[][] dataCopy = new byte[data.length][];
     System.arraycopy(data, 0, dataCopy, 0, data.length);
     return new Tuple(dataCopy, forUpdate);
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.hostchooser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import traindb.jdbc.util.HostSpec;
+
+/**
+ * Keeps track of HostSpec targets in a global map, shared by all connections of the JVM: the
+ * last known status of each host and the number of connections currently open to it.
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/hostchooser/GlobalHostStatusTracker.java
+public class GlobalHostStatusTracker {
+  private static final Map<HostSpec, HostSpecStatus> hostStatusMap =
+      new HashMap<HostSpec, HostSpecStatus>();
+
+  /**
+   * Store the actual observed host status.
+   *
+   * @param hostSpec   The host whose status is known.
+   * @param hostStatus Latest known status for the host.
+   */
+  public static void reportHostStatus(HostSpec hostSpec, HostStatus hostStatus) {
+    long now = currentTimeMillis();
+    synchronized (hostStatusMap) {
+      HostSpecStatus hostSpecStatus = getOrCreate(hostSpec);
+      hostSpecStatus.status = hostStatus;
+      hostSpecStatus.lastUpdated = now;
+    }
+  }
+
+  /**
+   * Tell whether a connection attempt to the host failed within the last
+   * {@code hostRecheckMillis}.
+   *
+   * @param hostSpec          the host
+   * @param hostRecheckMillis how long a failure is remembered
+   * @return true if the host should only be tried once the others failed
+   */
+  static boolean isRecentlyFailed(HostSpec hostSpec, long hostRecheckMillis) {
+    long latestAllowedUpdate = currentTimeMillis() - hostRecheckMillis;
+    synchronized (hostStatusMap) {
+      HostSpecStatus hostSpecStatus = hostStatusMap.get(hostSpec);
+      return hostSpecStatus != null && hostSpecStatus.status == HostStatus.ConnectFail
+          && hostSpecStatus.lastUpdated >= latestAllowedUpdate;
+    }
+  }
+
+  /**
+   * Record that a connection to the host was opened.
+   *
+   * @param hostSpec the host
+   */
+  public static void connectionOpened(HostSpec hostSpec) {
+    synchronized (hostStatusMap) {
+      getOrCreate(hostSpec).openConnections++;
+    }
+  }
+
+  /**
+   * Record that a connection opened with {@link #connectionOpened(HostSpec)} was closed.
+   *
+   * @param hostSpec the host
+   */
+  public static void connectionClosed(HostSpec hostSpec) {
+    synchronized (hostStatusMap) {
+      HostSpecStatus hostSpecStatus = hostStatusMap.get(hostSpec);
+      if (hostSpecStatus != null && hostSpecStatus.openConnections > 0) {
+        hostSpecStatus.openConnections--;
+      }
+    }
+  }
+
+  /**
+   * The number of connections of this JVM that are open to the host.
+   *
+   * @param hostSpec the host
+   * @return the number of open connections
+   */
+  static int getOpenConnections(HostSpec hostSpec) {
+    synchronized (hostStatusMap) {
+      HostSpecStatus hostSpecStatus = hostStatusMap.get(hostSpec);
+      return hostSpecStatus == null ? 0 : hostSpecStatus.openConnections;
+    }
+  }
+
+  private static HostSpecStatus getOrCreate(HostSpec hostSpec) {
+    HostSpecStatus hostSpecStatus = hostStatusMap.get(hostSpec);
+    if (hostSpecStatus == null) {
+      hostSpecStatus = new HostSpecStatus();
+      hostStatusMap.put(hostSpec, hostSpecStatus);
+    }
+    return hostSpecStatus;
+  }
+
+  private static long currentTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  static class HostSpecStatus {
+    @Nullable HostStatus status;
+    long lastUpdated;
+    int openConnections;
+  }
+}
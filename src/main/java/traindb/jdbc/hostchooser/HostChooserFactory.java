@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.hostchooser;
+
+import java.sql.SQLException;
+import java.util.Properties;
+import traindb.jdbc.util.HostSpec;
+
+/**
+ * Chooses a {@link HostChooser} instance based on the number of hosts and properties.
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/hostchooser/HostChooserFactory.java
+public class HostChooserFactory {
+
+  public static HostChooser createHostChooser(HostSpec[] hostSpecs, Properties info)
+      throws SQLException {
+    if (hostSpecs.length == 1) {
+      return new SingleHostChooser(hostSpecs[0]);
+    }
+    return new MultiHostChooser(hostSpecs, info);
+  }
+}
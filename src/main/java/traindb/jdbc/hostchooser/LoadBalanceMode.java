@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.hostchooser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * How the hosts of a multi-host URL are ordered, see the {@code loadBalanceHosts} property.
+ */
+public enum LoadBalanceMode {
+  /**
+   * Hosts are tried in the order of the URL.
+   */
+  ORDERED,
+  /**
+   * Hosts are tried in random order.
+   */
+  RANDOM,
+  /**
+   * Hosts with the fewest connections opened from this JVM are tried first; ties in random
+   * order.
+   */
+  LEAST_CONNECTIONS;
+
+  /**
+   * Parse the value of the {@code loadBalanceHosts} property.
+   *
+   * @param value {@code true}, {@code leastConnections}, or anything else for in order
+   * @return the load balance mode
+   */
+  public static LoadBalanceMode of(@Nullable String value) {
+    if ("true".equalsIgnoreCase(value)) {
+      return RANDOM;
+    }
+    if ("leastConnections".equalsIgnoreCase(value)) {
+      return LEAST_CONNECTIONS;
+    }
+    return ORDERED;
+  }
+}
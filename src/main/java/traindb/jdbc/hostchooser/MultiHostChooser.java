@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.hostchooser;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import traindb.jdbc.util.HostSpec;
+import traindb.jdbc.util.TrainDBProperty;
+
+/**
+ * HostChooser that keeps track of known host statuses.
+ *
+ * <p>Hosts that failed within the last {@code hostRecheckSeconds} are moved to the end of the
+ * list rather than dropped, so they are still tried when every other host fails.</p>
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/hostchooser/MultiHostChooser.java
+class MultiHostChooser implements HostChooser {
+  private final HostSpec[] hostSpecs;
+  private final LoadBalanceMode loadBalanceMode;
+  private final long hostRecheckMillis;
+
+  MultiHostChooser(HostSpec[] hostSpecs, Properties info) throws SQLException {
+    this.hostSpecs = hostSpecs;
+    this.loadBalanceMode = LoadBalanceMode.of(TrainDBProperty.LOAD_BALANCE_HOSTS.get(info));
+    this.hostRecheckMillis = TrainDBProperty.HOST_RECHECK_SECONDS.getInt(info) * 1000L;
+  }
+
+  @Override
+  public Iterator<HostSpec> iterator() {
+    List<HostSpec> candidates = new ArrayList<HostSpec>(hostSpecs.length);
+    List<HostSpec> failed = new ArrayList<HostSpec>(hostSpecs.length);
+    for (HostSpec hostSpec : hostSpecs) {
+      if (GlobalHostStatusTracker.isRecentlyFailed(hostSpec, hostRecheckMillis)) {
+        failed.add(hostSpec);
+      } else {
+        candidates.add(hostSpec);
+      }
+    }
+
+    order(candidates);
+    order(failed);
+    candidates.addAll(failed);
+    return candidates.iterator();
+  }
+
+  private void order(List<HostSpec> hosts) {
+    switch (loadBalanceMode) {
+      case RANDOM:
+        Collections.shuffle(hosts, ThreadLocalRandom.current());
+        break;
+      case LEAST_CONNECTIONS:
+        // shuffle first so that hosts with the same load share the new connections
+        Collections.shuffle(hosts, ThreadLocalRandom.current());
+        int[] load = new int[hosts.size()];
+        HostSpec[] shuffled = hosts.toArray(new HostSpec[0]);
+        Integer[] order = new Integer[shuffled.length];
+        for (int i = 0; i < shuffled.length; i++) {
+          load[i] = GlobalHostStatusTracker.getOpenConnections(shuffled[i]);
+          order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> load[i]));
+        for (int i = 0; i < order.length; i++) {
+          hosts.set(i, shuffled[order[i]]);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+}
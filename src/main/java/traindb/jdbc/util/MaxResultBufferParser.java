@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.util;
+
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Parses the value of the {@code maxResultBuffer} property: a number of bytes, optionally
+ * followed by K, M, G or T, or a percentage of the maximum heap size followed by p, pct or
+ * percent.
+ */
+// Borrowed from pgjdbc/src/main/java/org/postgresql/util/PGPropertyMaxResultBufferParser.java
+public class MaxResultBufferParser {
+  private static final Logger LOGGER = Logger.getLogger(MaxResultBufferParser.class.getName());
+
+  private static final String[] PERCENT_PHRASES = new String[] {
+      "p",
+      "pct",
+      "percent"
+  };
+
+  private MaxResultBufferParser() {
+  }
+
+  /**
+   * Method to parse value of max result buffer size.
+   *
+   * @param value string containing size of bytes with optional multiplier (T, G, M or K) or
+   *              percent value to declare max percent of heap memory to use.
+   * @return value of max result buffer size, or -1 if no limit is set.
+   * @throws TrainDBJdbcException Exception when given value can't be parsed.
+   */
+  public static long parseProperty(@Nullable String value) throws TrainDBJdbcException {
+    long result = -1;
+    if (value == null) {
+      // nothing
+    } else if (checkIfValueContainsPercent(value)) {
+      result = parseBytePercentValue(value);
+    } else if (!value.isEmpty()) {
+      result = parseByteValue(value);
+    }
+    result = adjustResultSize(result);
+    return result;
+  }
+
+  private static boolean checkIfValueContainsPercent(String value) {
+    return getPercentPhraseLengthIfContains(value) != -1;
+  }
+
+  private static long parseBytePercentValue(String value) throws TrainDBJdbcException {
+    long result = -1;
+    int length;
+
+    if (!value.isEmpty()) {
+      length = getPercentPhraseLengthIfContains(value);
+
+      if (length == -1) {
+        throwExceptionAboutParsingError(
+            "Received MaxResultBuffer parameter can''t be parsed. Value received to parse is {0}",
+            value);
+      }
+
+      result = calculatePercentOfMemory(value, length);
+    }
+    return result;
+  }
+
+  private static int getPercentPhraseLengthIfContains(String valueToCheck) {
+    int result = -1;
+    for (String phrase : PERCENT_PHRASES) {
+      int indx = getPhraseLengthIfContains(valueToCheck, phrase);
+      if (indx != -1) {
+        result = indx;
+      }
+    }
+    return result;
+  }
+
+  private static int getPhraseLengthIfContains(String valueToCheck, String phrase) {
+    int searchValueLength = phrase.length();
+
+    if (valueToCheck.length() > searchValueLength) {
+      String subValue = valueToCheck.substring(valueToCheck.length() - searchValueLength);
+      if (subValue.equals(phrase)) {
+        return searchValueLength;
+      }
+    }
+    return -1;
+  }
+
+  private static long calculatePercentOfMemory(String value, int percentPhraseLength)
+      throws TrainDBJdbcException {
+    String realValue = value.substring(0, value.length() - percentPhraseLength);
+    try {
+      double percent = Double.parseDouble(realValue) / 100;
+      return (long) (percent * getMaxHeapSize());
+    } catch (NumberFormatException e) {
+      throwExceptionAboutParsingError(
+          "Received MaxResultBuffer parameter can''t be parsed. Value received to parse is {0}",
+          value);
+      return -1;
+    }
+  }
+
+  private static long parseByteValue(String value) throws TrainDBJdbcException {
+    long result = -1;
+    long multiplier = 1;
+    long mul = 1000;
+    String realValue;
+    char sign = value.charAt(value.length() - 1);
+
+    try {
+      switch (sign) {
+        case 'T':
+        case 't':
+          multiplier *= mul;
+          // fall through
+
+        case 'G':
+        case 'g':
+          multiplier *= mul;
+          // fall through
+
+        case 'M':
+        case 'm':
+          multiplier *= mul;
+          // fall through
+
+        case 'K':
+        case 'k':
+          multiplier *= mul;
+          realValue = value.substring(0, value.length() - 1);
+          result = Integer.parseInt(realValue) * multiplier;
+          break;
+
+        case '%':
+          return result;
+
+        default:
+          if (sign >= '0' && sign <= '9') {
+            result = Long.parseLong(value);
+          } else {
+            throwExceptionAboutParsingError(
+                "Received MaxResultBuffer parameter can''t be parsed. "
+                    + "Value received to parse is {0}",
+                value);
+          }
+          break;
+      }
+    } catch (NumberFormatException e) {
+      throwExceptionAboutParsingError(
+          "Received MaxResultBuffer parameter can''t be parsed. Value received to parse is {0}",
+          value);
+    }
+    return result;
+  }
+
+  private static long adjustResultSize(long value) {
+    long maxHeapSize = getMaxHeapSize();
+    if (maxHeapSize > 0 && value > 0.9 * maxHeapSize) {
+      long newResult = (long) (0.9 * maxHeapSize);
+
+      LOGGER.log(Level.WARNING, MessageFormat.format(
+          "WARNING! Required to allocate {0} bytes, which exceeded possible heap memory size. "
+              + "Assigned {1} bytes as limit.",
+          String.valueOf(value), String.valueOf(newResult)));
+
+      value = newResult;
+    }
+    return value;
+  }
+
+  private static long getMaxHeapSize() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+  }
+
+  private static void throwExceptionAboutParsingError(String message, Object... values)
+      throws TrainDBJdbcException {
+    throw new TrainDBJdbcException(MessageFormat.format(message, values),
+        TrainDBState.SYNTAX_ERROR);
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.util;
+
+import java.math.BigInteger;
+
+/**
+ * Parses numbers in text format straight from the bytes of a value, without creating a
+ * {@code String} or any other object. Only the plain forms a server sends are understood, and
+ * the bytes must be ASCII (see {@code Encoding#hasAsciiNumbers()}). Anything else, or a value
+ * that cannot be converted exactly here, fails with {@link #FAST_NUMBER_FAILED}, and the
+ * caller parses the text the usual way.
+ */
+public final class NumberParser {
+  /**
+   * Thrown when a value must be parsed the slow way. It is shared and has no stack trace, so
+   * failing costs no allocation either.
+   */
+  public static final NumberFormatException FAST_NUMBER_FAILED = new NumberFormatException() {
+    // Borrowed from pgjdbc/PgResultSet
+    // Override fillInStackTrace to prevent memory leak via Throwable.backtrace hidden field
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  };
+
+  // at most 19 decimal digits always fit in an unsigned long
+  private static final int MAX_MANTISSA_DIGITS = 19;
+
+  // Clinger's fast path: exact when both the mantissa and the power of ten are exact doubles
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  private static final double[] EXACT_POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  // 128-bit mantissas of the powers of ten, rounded down, for the Eisel-Lemire algorithm
+  private static final int MIN_POWER_OF_TEN = -348;
+  private static final int MAX_POWER_OF_TEN = 347;
+  private static final long[] POWERS_OF_TEN_HI = new long[MAX_POWER_OF_TEN - MIN_POWER_OF_TEN + 1];
+  private static final long[] POWERS_OF_TEN_LO = new long[MAX_POWER_OF_TEN - MIN_POWER_OF_TEN + 1];
+
+  static {
+    BigInteger five = BigInteger.valueOf(5);
+    for (int q = MIN_POWER_OF_TEN; q <= MAX_POWER_OF_TEN; ++q) {
+      // 10^q = 5^q * 2^q, so its mantissa is the one of 5^q
+      BigInteger mantissa;
+      if (q >= 0) {
+        BigInteger power = five.pow(q);
+        int shift = power.bitLength() - 128;
+        mantissa = shift > 0 ? power.shiftRight(shift) : power.shiftLeft(-shift);
+      } else {
+        BigInteger power = five.pow(-q);
+        mantissa = BigInteger.ONE.shiftLeft(power.bitLength() + 127).divide(power);
+      }
+      POWERS_OF_TEN_HI[q - MIN_POWER_OF_TEN] = mantissa.shiftRight(64).longValue();
+      POWERS_OF_TEN_LO[q - MIN_POWER_OF_TEN] = mantissa.longValue();
+    }
+  }
+
+  private NumberParser() {
+    // prevent instantiation of static helper class
+  }
+
+  /**
+   * Parse an integer: an optional sign then decimal digits, nothing else.
+   *
+   * @param bytes  the buffer holding the value
+   * @param offset the first byte of the value
+   * @param length the length of the value
+   * @param min    the smallest value accepted
+   * @param max    the largest value accepted
+   * @return the value
+   * @throws NumberFormatException {@link #FAST_NUMBER_FAILED} if the value is not a plain
+   *     integer within the range
+   */
+  public static long parseLong(byte[] bytes, int offset, int length, long min, long max)
+      throws NumberFormatException {
+    int end = offset + length;
+    int i = offset;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      ++i;
+    }
+    if (i == end) {
+      throw FAST_NUMBER_FAILED;
+    }
+
+    // accumulate negatively like Long.parseLong, so that Long.MIN_VALUE fits
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long multmin = limit / 10;
+    long result = 0;
+    while (i < end) {
+      int digit = bytes[i++] - '0';
+      if (digit < 0 || digit > 9 || result < multmin) {
+        throw FAST_NUMBER_FAILED;
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw FAST_NUMBER_FAILED;
+      }
+      result -= digit;
+    }
+
+    long value = negative ? result : -result;
+    if (value < min || value > max) {
+      throw FAST_NUMBER_FAILED;
+    }
+    return value;
+  }
+
+  /**
+   * Parse a floating point number: an optional sign, decimal digits with an optional decimal
+   * point, then an optional exponent. The result is rounded correctly, like
+   * {@link Double#parseDouble(String)}.
+   *
+   * @param bytes  the buffer holding the value
+   * @param offset the first byte of the value
+   * @param length the length of the value
+   * @return the value
+   * @throws NumberFormatException {@link #FAST_NUMBER_FAILED} if the value has another form,
+   *     or cannot be rounded here
+   */
+  public static double parseDouble(byte[] bytes, int offset, int length)
+      throws NumberFormatException {
+    int end = offset + length;
+    int i = offset;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      ++i;
+    }
+
+    long mantissa = 0;
+    int mantissaDigits = 0;
+    int digits = 0; // significant digits, leading zeros excluded
+    int decimalPoint = 0; // position of the decimal point relative to the significant digits
+    boolean sawDigits = false;
+    boolean sawDot = false;
+    boolean truncated = false;
+    for (; i < end; ++i) {
+      byte b = bytes[i];
+      if (b == '.') {
+        if (sawDot) {
+          throw FAST_NUMBER_FAILED;
+        }
+        sawDot = true;
+        decimalPoint = digits;
+      } else if (b >= '0' && b <= '9') {
+        sawDigits = true;
+        if (b == '0' && digits == 0) {
+          // a leading zero only moves the decimal point
+          --decimalPoint;
+          continue;
+        }
+        ++digits;
+        if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+          mantissa = mantissa * 10 + (b - '0');
+          ++mantissaDigits;
+        } else if (b != '0') {
+          truncated = true;
+        }
+      } else {
+        break;
+      }
+    }
+    if (!sawDigits) {
+      throw FAST_NUMBER_FAILED;
+    }
+    if (!sawDot) {
+      decimalPoint = digits;
+    }
+
+    if (i < end) {
+      if (bytes[i] != 'e' && bytes[i] != 'E') {
+        throw FAST_NUMBER_FAILED;
+      }
+      boolean negativeExponent = false;
+      if (++i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+        negativeExponent = bytes[i++] == '-';
+      }
+      if (i == end) {
+        throw FAST_NUMBER_FAILED;
+      }
+      int exponent = 0;
+      for (; i < end; ++i) {
+        int digit = bytes[i] - '0';
+        if (digit < 0 || digit > 9) {
+          throw FAST_NUMBER_FAILED;
+        }
+        if (exponent < 10000) {
+          exponent = exponent * 10 + digit;
+        }
+      }
+      decimalPoint += negativeExponent ? -exponent : exponent;
+    }
+
+    if (mantissa == 0) {
+      return negative ? -0.0 : 0.0;
+    }
+    int exponent10 = decimalPoint - mantissaDigits;
+
+    if (!truncated) {
+      // the mantissa is unsigned, 19 digits may not fit in a signed long
+      if (Long.compareUnsigned(mantissa, MAX_EXACT_MANTISSA) <= 0
+          && exponent10 >= -22 && exponent10 <= 22) {
+        double value = (double) mantissa;
+        value = exponent10 < 0
+            ? value / EXACT_POWERS_OF_TEN[-exponent10]
+            : value * EXACT_POWERS_OF_TEN[exponent10];
+        return negative ? -value : value;
+      }
+      return eiselLemire(mantissa, exponent10, negative);
+    }
+
+    // the digits after the 19th only matter if they change the rounding
+    double value = eiselLemire(mantissa, exponent10, negative);
+    if (value != eiselLemire(mantissa + 1, exponent10, negative)) {
+      throw FAST_NUMBER_FAILED;
+    }
+    return value;
+  }
+
+  /**
+   * Parse a floating point number in the form {@link #parseDouble(byte[], int, int)} takes, and
+   * round it to a float like {@link Float#parseFloat(String)}.
+   *
+   * @param bytes  the buffer holding the value
+   * @param offset the first byte of the value
+   * @param length the length of the value
+   * @return the value
+   * @throws NumberFormatException {@link #FAST_NUMBER_FAILED} if the value has another form,
+   *     or cannot be rounded here
+   */
+  public static float parseFloat(byte[] bytes, int offset, int length)
+      throws NumberFormatException {
+    double value = parseDouble(bytes, offset, length);
+    float rounded = (float) value;
+    // rounding twice only differs from rounding once when the double is half-way between two
+    // floats, as every such half-way point is a double
+    if (rounded != value && !Float.isInfinite(rounded)) {
+      float other = value > rounded
+          ? Math.nextUp(rounded)
+          : Math.nextDown(rounded);
+      if (((double) rounded + (double) other) / 2 == value) {
+        throw FAST_NUMBER_FAILED;
+      }
+    }
+    return rounded;
+  }
+
+  /**
+   * Round {@code mantissa * 10^exponent10} to a double with the algorithm of Michael Eisel and
+   * Daniel Lemire, see "Number Parsing at a Gigabyte per Second".
+   */
+  private static double eiselLemire(long mantissa, int exponent10, boolean negative) {
+    if (exponent10 < MIN_POWER_OF_TEN || exponent10 > MAX_POWER_OF_TEN) {
+      throw FAST_NUMBER_FAILED;
+    }
+    int index = exponent10 - MIN_POWER_OF_TEN;
+
+    // normalize the mantissa and guess the binary exponent, floor(log2(10) * exponent10)
+    int clz = Long.numberOfLeadingZeros(mantissa);
+    mantissa <<= clz;
+    long exponent2 = ((217706L * exponent10) >> 16) + 64 + 1023 - clz;
+
+    // multiply by the upper half of the power of ten
+    long hi = unsignedMultiplyHigh(mantissa, POWERS_OF_TEN_HI[index]);
+    long lo = mantissa * POWERS_OF_TEN_HI[index];
+
+    // the lower half of the power of ten only matters when the low bits are all ones
+    if ((hi & 0x1FF) == 0x1FF && Long.compareUnsigned(lo + mantissa, mantissa) < 0) {
+      long yHi = unsignedMultiplyHigh(mantissa, POWERS_OF_TEN_LO[index]);
+      long yLo = mantissa * POWERS_OF_TEN_LO[index];
+      long mergedHi = hi;
+      long mergedLo = lo + yHi;
+      if (Long.compareUnsigned(mergedLo, lo) < 0) {
+        ++mergedHi;
+      }
+      if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0
+          && Long.compareUnsigned(yLo + mantissa, mantissa) < 0) {
+        throw FAST_NUMBER_FAILED;
+      }
+      hi = mergedHi;
+      lo = mergedLo;
+    }
+
+    // keep 54 bits
+    long msb = hi >>> 63;
+    long bits = hi >>> (msb + 9);
+    exponent2 -= 1 ^ msb;
+
+    // exactly half-way between two doubles, which needs all the digits to round
+    if (lo == 0 && (hi & 0x1FF) == 0 && (bits & 3) == 1) {
+      throw FAST_NUMBER_FAILED;
+    }
+
+    // round to 53 bits
+    bits += bits & 1;
+    bits >>>= 1;
+    if ((bits >>> 53) > 0) {
+      bits >>>= 1;
+      ++exponent2;
+    }
+    // subnormals, infinity and NaN are left to the slow path
+    if (exponent2 <= 0 || exponent2 >= 0x7FF) {
+      throw FAST_NUMBER_FAILED;
+    }
+    bits = exponent2 << 52 | bits & 0x000FFFFFFFFFFFFFL;
+    if (negative) {
+      bits |= 0x8000000000000000L;
+    }
+    return Double.longBitsToDouble(bits);
+  }
+
+  /**
+   * The upper 64 bits of the unsigned 128-bit product of two longs.
+   */
+  private static long unsignedMultiplyHigh(long x, long y) {
+    long x1 = x >>> 32;
+    long x2 = x & 0xFFFFFFFFL;
+    long y1 = y >>> 32;
+    long y2 = y & 0xFFFFFFFFL;
+    long t = x1 * y2 + ((x2 * y2) >>> 32);
+    long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+    return x1 * y1 + (t >>> 32) + (z1 >>> 32);
+  }
+}
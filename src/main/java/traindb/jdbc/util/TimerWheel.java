@@ -0,0 +1,311 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A hashed timing wheel: one thread that fires timeouts with a precision of one tick, whatever
+ * the number of timeouts. Scheduling and cancelling are O(1) and lock-free for the caller;
+ * the worker thread moves new timeouts into the wheel and unlinks cancelled ones at every tick.
+ *
+ * <p>The worker thread is started by the first timeout and stops after it has been idle for a
+ * while, so an unused wheel holds no thread. Tasks run on the worker thread and delay every
+ * other timeout while they run; anything that may block must be handed off.</p>
+ */
+public class TimerWheel {
+  private static final Logger LOGGER = Logger.getLogger(TimerWheel.class.getName());
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private final String threadName;
+  private final long tickNanos;
+  private final long idleNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+  private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+  // Timeouts that are neither expired nor cancelled
+  private final AtomicInteger activeTimeouts = new AtomicInteger();
+
+  // guarded by this
+  private @Nullable Thread worker;
+
+  /**
+   * Create a timer wheel.
+   *
+   * @param threadName   prefix of the name of the worker thread
+   * @param tickMillis   the precision of the timeouts
+   * @param ticksPerWheel the number of buckets; rounded up to a power of two
+   * @param idleMillis   how long the worker thread lingers without timeouts before it stops
+   */
+  public TimerWheel(String threadName, long tickMillis, int ticksPerWheel, long idleMillis) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("tickMillis must be greater than 0: " + tickMillis);
+    }
+    if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+      throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+    }
+
+    int size = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+    if (size == 0) {
+      size = 1;
+    }
+    this.threadName = threadName;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; ++i) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Schedule a task.
+   *
+   * @param task        the task to run on the worker thread
+   * @param delayMillis the delay after which to run it
+   * @return the handle to cancel the task with
+   */
+  public Timeout newTimeout(Runnable task, long delayMillis) {
+    Timeout timeout = new Timeout(this, task,
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0)));
+    activeTimeouts.incrementAndGet();
+    pendingTimeouts.add(timeout);
+    startWorker();
+    return timeout;
+  }
+
+  /**
+   * The number of timeouts that are scheduled and not cancelled yet.
+   *
+   * @return the number of pending timeouts
+   */
+  public int getPendingTimeouts() {
+    return activeTimeouts.get();
+  }
+
+  private synchronized void startWorker() {
+    if (worker != null) {
+      return;
+    }
+    Thread thread = new Thread(this::run, threadName + "-" + THREAD_COUNTER.incrementAndGet());
+    thread.setDaemon(true);
+    worker = thread;
+    thread.start();
+  }
+
+  /**
+   * Stop the worker thread if there is still nothing to do. A timeout added concurrently
+   * either is seen here or starts a new worker after this one is gone.
+   */
+  private synchronized boolean stopWorkerIfIdle() {
+    if (activeTimeouts.get() > 0 || !pendingTimeouts.isEmpty()) {
+      return false;
+    }
+    worker = null;
+    return true;
+  }
+
+  private void run() {
+    long startTime = System.nanoTime();
+    long tick = 0;
+    long idleSince = startTime;
+
+    while (true) {
+      long deadline = startTime + tickNanos * (tick + 1);
+      long now = System.nanoTime();
+      while (now < deadline) {
+        LockSupport.parkNanos(this, deadline - now);
+        now = System.nanoTime();
+      }
+
+      processCancelledTimeouts();
+      transferTimeoutsToBuckets(startTime, tick);
+      wheel[(int) (tick & mask)].expireTimeouts(now);
+      tick++;
+
+      if (activeTimeouts.get() > 0) {
+        idleSince = now;
+      } else if (now - idleSince >= idleNanos && stopWorkerIfIdle()) {
+        // timeouts cancelled from now on are unlinked by the next worker
+        return;
+      }
+    }
+  }
+
+  private void transferTimeoutsToBuckets(long startTime, long tick) {
+    Timeout timeout;
+    while ((timeout = pendingTimeouts.poll()) != null) {
+      if (timeout.state != Timeout.ST_INIT) {
+        continue; // cancelled before it got here
+      }
+      long calculated = (timeout.deadline - startTime + tickNanos - 1) / tickNanos;
+      // a timeout that is due already goes into the current bucket
+      long ticks = Math.max(calculated - 1, tick);
+      timeout.remainingRounds = (ticks - tick) / wheel.length;
+      wheel[(int) (ticks & mask)].add(timeout);
+    }
+  }
+
+  private void processCancelledTimeouts() {
+    Timeout timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      Bucket bucket = timeout.bucket;
+      if (bucket != null) {
+        bucket.remove(timeout);
+      }
+    }
+  }
+
+  /**
+   * The handle of a scheduled task.
+   */
+  public static final class Timeout {
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final TimerWheel timer;
+    private @Nullable Runnable task;
+    private final long deadline;
+    private volatile int state = ST_INIT;
+
+    // owned by the worker thread
+    private long remainingRounds;
+    private @Nullable Timeout next;
+    private @Nullable Timeout prev;
+    private @Nullable Bucket bucket;
+
+    private Timeout(TimerWheel timer, Runnable task, long deadline) {
+      this.timer = timer;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancel the task unless it already ran or is running.
+     *
+     * @return true if the task will not run because of this call
+     */
+    public boolean cancel() {
+      if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+        return false;
+      }
+      // let go of whatever the task references right away; the worker unlinks the timeout
+      task = null;
+      timer.activeTimeouts.decrementAndGet();
+      timer.cancelledTimeouts.add(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state == ST_CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state == ST_EXPIRED;
+    }
+
+    private void expire() {
+      if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+        return;
+      }
+      timer.activeTimeouts.decrementAndGet();
+      Runnable task = this.task;
+      this.task = null;
+      try {
+        if (task != null) {
+          task.run();
+        }
+      } catch (Throwable t) {
+        LOGGER.log(Level.WARNING, "Timer task threw an exception", t);
+      }
+    }
+  }
+
+  /**
+   * The timeouts of one slot of the wheel, as a doubly-linked list.
+   */
+  private static final class Bucket {
+    private @Nullable Timeout head;
+    private @Nullable Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        Timeout last = tail;
+        last.next = timeout;
+        timeout.prev = last;
+        tail = timeout;
+      }
+    }
+
+    void expireTimeouts(long now) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          if (timeout.deadline - now <= 0) {
+            remove(timeout);
+            timeout.expire();
+          }
+          // otherwise the deadline is within the next round of this bucket
+        } else if (timeout.isCancelled()) {
+          remove(timeout);
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+      Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+  }
+}
@@ -65,11 +65,59 @@ public enum TrainDBProperty {
   LOG_LEVEL("loglevel", "0", "The log level", false, "0", "1", "2"),
 
   /**
-   * Sets the default threshold for enabling server-side prepare. A value of {@code -1} stands for forceBinary
+   * Sets the default threshold for enabling server-side prepare: a query is prepared on the
+   * server once a connection executed it this many times. A value of {@code -1} stands for
+   * forceBinary, which prepares on the first execution, and {@code 0} disables server-side
+   * prepare, for servers that do not support it.
    */
-  PREPARE_THRESHOLD("prepareThreshold", "5",
+  PREPARE_THRESHOLD("prepareThreshold", "0",
       "Statement prepare threshold. A value of {@code -1} stands for forceBinary"),
 
+  /**
+   * Specifies the maximum number of entries in cache of prepared statements, of parsed
+   * query texts, and of row descriptions. A value of {@code 0} disables the cache.
+   */
+  PREPARED_STATEMENT_CACHE_QUERIES("preparedStatementCacheQueries", "256",
+      "Specifies the maximum number of entries in per-connection cache of prepared statements. A value of {@code 0} disables the cache."),
+
+  /**
+   * Let identical read-only queries that run at the same time on connections to the same server,
+   * as the same user, share one execution and its rows.
+   */
+  COALESCE_QUERIES("coalesceQueries", "false",
+      "Share the execution of identical concurrent queries between connections"),
+
+  /**
+   * Maximum number of distinct ASCII values that a result set decodes once and then shares for
+   * the rest of its rows, e.g. the group keys of an aggregate. A value of {@code 0} disables the
+   * cache.
+   */
+  DECODE_CACHE_SIZE("decodeCacheSize", "0",
+      "Maximum number of distinct string values decoded once and shared per result set"),
+
+  /**
+   * Number of refinements of an incremental query that are requested ahead of time, so that the
+   * server computes the next one while the client handles the current one. {@code 0} requests
+   * every refinement only after the previous one arrived.
+   */
+  INCREMENTAL_PREFETCH("incrementalPrefetch", "1",
+      "Number of refinements of an incremental query that are requested ahead of time"),
+
+  /**
+   * Treat the query timeout of approximate queries as a time budget: the query is refined
+   * until the timeout expires, and its best estimate so far is returned with a warning instead
+   * of failing. See {@code TrainDBStatement#setTimeoutAsTimeBudget(boolean)}.
+   */
+  TIMEOUT_AS_TIME_BUDGET("timeoutAsTimeBudget", "false",
+      "Return the best approximate result when the query timeout expires instead of an error"),
+
+  /**
+   * Rewrite the batch of a prepared {@code INSERT ... VALUES (...)} into statements that insert
+   * many rows each. The update count of every row is then {@link java.sql.Statement#SUCCESS_NO_INFO}.
+   */
+  REWRITE_BATCHED_INSERTS("reWriteBatchedInserts", "false",
+      "Enable optimization to rewrite and collapse compatible INSERT statements that are batched."),
+
   /**
    * Use binary format for sending and receiving data if possible.
    */
@@ -88,16 +136,27 @@ public enum TrainDBProperty {
   READ_ONLY("readOnly", "false", "Puts this connection in read-only mode"),
 
   /**
-   * Comma separated list of types to enable binary transfer. Either OID numbers or names
+   * Comma separated list of types to enable binary transfer. Either {@link java.sql.Types} codes
+   * or {@link java.sql.JDBCType} names
    */
   BINARY_TRANSFER_ENABLE("binaryTransferEnable", "",
-      "Comma separated list of types to enable binary transfer. Either OID numbers or names"),
+      "Comma separated list of types to enable binary transfer. Either java.sql.Types codes or names"),
 
   /**
-   * Comma separated list of types to disable binary transfer. Either OID numbers or names. Overrides values in the driver default set and values set with binaryTransferEnable.
+   * Comma separated list of types to disable binary transfer. Either {@link java.sql.Types} codes
+   * or {@link java.sql.JDBCType} names. Overrides values in the driver default set and values set
+   * with binaryTransferEnable.
    */
   BINARY_TRANSFER_DISABLE("binaryTransferDisable", "",
-      "Comma separated list of types to disable binary transfer. Either OID numbers or names. Overrides values in the driver default set and values set with binaryTransferEnable."),
+      "Comma separated list of types to disable binary transfer. Either java.sql.Types codes or names. Overrides values in the driver default set and values set with binaryTransferEnable."),
+
+  /**
+   * Ask the server to send result rows column by column, in ColumnBatch messages, instead of
+   * one DataRow message per row. Numeric columns then arrive as contiguous vectors, which pays
+   * off for results with few, wide numeric columns such as approximate aggregates.
+   */
+  COLUMNAR_RESULTS("columnarResults", "false",
+      "Receive result rows in column batches instead of one message per row"),
 
   /**
    * Bind String to either {@code unspecified} or {@code varchar}. Default is {@code varchar} for 8.0+ backends.
@@ -225,6 +284,52 @@ public enum TrainDBProperty {
    */
   SEND_BUFFER_SIZE("sendBufferSize", "-1", "Socket write buffer size"),
 
+  /**
+   * Specifies the heap budget for the rows of a single result. Rows beyond it are moved to a
+   * memory-mapped temporary file instead of failing the query. Can be specified as a size in
+   * bytes, optionally with a K, M, G or T suffix, or as a percentage of the maximum heap size
+   * with a p, pct or percent suffix. The value is capped at 90% of the maximum heap size. By
+   * default there is no limit.
+   */
+  MAX_RESULT_BUFFER("maxResultBuffer", null,
+      "Specifies size of buffer during fetching result set. Can be specified as specified size or percent of heap memory."),
+
+  /**
+   * Specifies if the number of rows fetched in a batch by forward-only result sets should be
+   * computed from {@code maxResultBuffer} and the largest row seen for the query. Requires
+   * {@code maxResultBuffer} to be set. The default for {@code TrainDBStatement.setAdaptiveFetch}.
+   */
+  ADAPTIVE_FETCH("adaptiveFetch", "false",
+      "Specifies if number of rows fetched in ResultSet should be adaptive to maxResultBuffer and max row size."),
+
+  /**
+   * Specifies the lowest number of rows which can be calculated by adaptiveFetch.
+   */
+  ADAPTIVE_FETCH_MINIMUM("adaptiveFetchMinimum", "0",
+      "Specifies minimum number of rows used by adaptive fetch."),
+
+  /**
+   * Specifies the highest number of rows which can be calculated by adaptiveFetch. The default
+   * of {@code -1} means no limit.
+   */
+  ADAPTIVE_FETCH_MAXIMUM("adaptiveFetchMaximum", "-1",
+      "Specifies maximum number of rows used by adaptive fetch."),
+
+  /**
+   * The timeout in seconds for connecting to the server and waiting for its answer when a
+   * query is cancelled. A value of {@code 0} means no timeout.
+   */
+  CANCEL_SIGNAL_TIMEOUT("cancelSignalTimeout", "10",
+      "The timeout that is used for sending cancel command."),
+
+  /**
+   * Use a {@link java.nio.channels.SocketChannel} with pooled direct buffers for the connection
+   * instead of the socket's input and output streams. The {@code socketFactory} is not used
+   * in that case.
+   */
+  SOCKET_CHANNEL("socketChannel", "false",
+      "Use a NIO SocketChannel with direct buffers instead of socket streams"),
+
   /**
    * Assume the server is at least that version
    */
@@ -297,7 +402,9 @@ public enum TrainDBProperty {
       "any", "master", "slave", "preferSlave"),
 
   LOAD_BALANCE_HOSTS("loadBalanceHosts", "false",
-      "If disabled hosts are connected in the given order. If enabled hosts are chosen randomly from the set of suitable candidates"),
+      "If disabled hosts are connected in the given order. If enabled hosts are chosen randomly from the set of suitable candidates. "
+          + "With leastConnections hosts with the fewest connections from this JVM are chosen first",
+      false, "false", "true", "leastConnections"),
 
   HOST_RECHECK_SECONDS("hostRecheckSeconds", "10",
       "Specifies period (seconds) after host statuses are checked again in case they have changed"),
@@ -20,6 +20,7 @@ import java.io.Serializable;
 public class TrainDBState implements Serializable {
   // begin constant state codes
   public final static TrainDBState UNKNOWN_STATE = new TrainDBState("");
+  public final static TrainDBState WARNING = new TrainDBState("01000");
   public final static TrainDBState TOO_MANY_RESULTS = new TrainDBState("0100E");
   public final static TrainDBState NO_DATA = new TrainDBState("02000");
   public final static TrainDBState INVALID_PARAMETER_TYPE = new TrainDBState("07006");
@@ -59,6 +60,7 @@ public class TrainDBState implements Serializable {
   public final static TrainDBState TRANSACTION_STATE_INVALID = new TrainDBState("25000");
   public final static TrainDBState ACTIVE_SQL_TRANSACTION = new TrainDBState("25001");
   public final static TrainDBState NO_ACTIVE_SQL_TRANSACTION = new TrainDBState("25P01");
+  public final static TrainDBState INVALID_SQL_STATEMENT_NAME = new TrainDBState("26000");
   public final static TrainDBState STATEMENT_NOT_ALLOWED_IN_FUNCTION_CALL =
       new TrainDBState("2F003");
   public final static TrainDBState INVALID_SAVEPOINT_SPECIFICATION = new TrainDBState("3B000");
@@ -72,6 +74,7 @@ public class TrainDBState implements Serializable {
   public final static TrainDBState INVALID_NAME = new TrainDBState("42602");
   public final static TrainDBState OUT_OF_MEMORY = new TrainDBState("53200");
   public final static TrainDBState OBJECT_NOT_IN_STATE = new TrainDBState("55000");
+  public final static TrainDBState QUERY_CANCELED = new TrainDBState("57014");
   public final static TrainDBState SYSTEM_ERROR = new TrainDBState("60000");
   public final static TrainDBState IO_ERROR = new TrainDBState("58030");
   public final static TrainDBState UNEXPECTED_ERROR = new TrainDBState("99999");
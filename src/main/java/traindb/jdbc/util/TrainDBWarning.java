@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.util;
+
+import java.sql.SQLWarning;
+
+// Borrowed from pgjdbc/src/main/java/org/postgresql/util/PSQLWarning.java
+@SuppressWarnings("serial")
+public class TrainDBWarning extends SQLWarning {
+  private final ServerErrorMessage serverError;
+
+  public TrainDBWarning(ServerErrorMessage err) {
+    super(err.toString(), err.getSQLState());
+    this.serverError = err;
+  }
+
+  @Override
+  public String getMessage() {
+    return serverError.getMessage();
+  }
+
+  public ServerErrorMessage getServerErrorMessage() {
+    return serverError;
+  }
+}
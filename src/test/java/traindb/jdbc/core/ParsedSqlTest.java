@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import org.junit.jupiter.api.Test;
+
+class ParsedSqlTest {
+  @Test
+  void placeholdersOutsideLiterals() throws SQLException {
+    assertEquals("select 1, 2", nativeSql("select ?, ?", 1, 2));
+    assertEquals("select '?', 1", nativeSql("select '?', ?", 1));
+    assertEquals("select 'it''s ?', 1", nativeSql("select 'it''s ?', ?", 1));
+    assertEquals("select \"a?\", 1", nativeSql("select \"a?\", ?", 1));
+    assertEquals("select \"a\"\"?\", 1", nativeSql("select \"a\"\"?\", ?", 1));
+    assertEquals("select `a?`, 1", nativeSql("select `a?`, ?", 1));
+    assertEquals("select 1 -- ?\n, 2", nativeSql("select ? -- ?\n, ?", 1, 2));
+    assertEquals("select 1 /* ? /* ? */ ? */, 2", nativeSql("select ? /* ? /* ? */ ? */, ?", 1, 2));
+    assertEquals("select 1 - 2, 3 / 4", nativeSql("select ? - ?, ? / ?", 1, 2, 3, 4));
+  }
+
+  @Test
+  void unterminatedLiterals() {
+    assertEquals(0, ParsedSql.parse("select 'abc ?").getBindCount());
+    assertEquals(0, ParsedSql.parse("select \"abc ?").getBindCount());
+    assertEquals(0, ParsedSql.parse("select 1 -- ?").getBindCount());
+    assertEquals(0, ParsedSql.parse("select 1 /* /* */ ?").getBindCount());
+  }
+
+  @Test
+  void multiRowInsert() throws SQLException {
+    ParsedSql parsed = ParsedSql.parse("INSERT INTO t (a, b) VALUES (?, f(?));");
+    assertTrue(parsed.isMultiRowInsert());
+    ParameterList[] rows = {parameters(1, 2), parameters(3, 4), parameters(5, 6)};
+    assertEquals("INSERT INTO t (a, b) VALUES (1, f(2)),(3, f(4)),(5, f(6));",
+        parsed.toMultiRowNativeSql(rows, 0, 3, new StringBuilder()).toString());
+    assertEquals("INSERT INTO t (a, b) VALUES (3, f(4));",
+        parsed.toMultiRowNativeSql(rows, 1, 2, new StringBuilder()).toString());
+
+    assertTrue(ParsedSql.parse("insert into t values /* row */ (?) -- done").isMultiRowInsert());
+    assertTrue(ParsedSql.parse("insert into t values ('a)', ?)").isMultiRowInsert());
+  }
+
+  @Test
+  void notMultiRowInsert() {
+    for (String sql : new String[] {
+        "INSERT INTO t VALUES (?, ?) ON CONFLICT DO NOTHING",
+        "INSERT INTO t VALUES (?) ON DUPLICATE KEY UPDATE a = ?",
+        "INSERT INTO t VALUES (?) RETURNING id",
+        "INSERT INTO t VALUES (?), (?)",
+        "INSERT INTO t VALUES (?); INSERT INTO t VALUES (?)",
+        "INSERT INTO t SELECT ? FROM u",
+        "INSERT INTO t (a) SELECT a FROM u WHERE b = ? UNION VALUES (?)",
+        "INSERT INTO t VALUES",
+        "INSERT INTO t VALUES (?",
+        "UPDATE t SET a = ? WHERE b IN (SELECT 1)",
+        "SELECT * FROM (VALUES (?)) v"}) {
+      assertFalse(ParsedSql.parse(sql).isMultiRowInsert(), sql);
+    }
+  }
+
+  @Test
+  void queries() {
+    for (String sql : new String[] {
+        "select * from t",
+        "  SELECT * FROM t WHERE a = 'for update'",
+        "/* update */ select 1",
+        "with a as (select 1) select * from a",
+        "values (1), (2)",
+        "select updated_at, shared from t",
+        "select approximate count(*) from t"}) {
+      assertTrue(ParsedSql.parse(sql).isQuery(), sql);
+    }
+  }
+
+  @Test
+  void notQueries() {
+    for (String sql : new String[] {
+        "SELECT * FROM t FOR UPDATE",
+        "select * from t for no key update",
+        "SELECT * FROM t FOR SHARE",
+        "select * from t for key share",
+        "SELECT * FROM t LOCK IN SHARE MODE",
+        "SELECT * INTO u FROM t",
+        "WITH a AS (SELECT 1) INSERT INTO t SELECT * FROM a",
+        "with d as (delete from t returning *) select * from d",
+        "with a as (select 1) update t set b = 1",
+        "WITH a AS (SELECT 1) MERGE INTO t USING a ON true WHEN MATCHED THEN DELETE",
+        "insert into t values (1)",
+        "update t set a = 1",
+        "delete from t",
+        "use db",
+        "set schema s",
+        "explain select 1"}) {
+      assertFalse(ParsedSql.parse(sql).isQuery(), sql);
+    }
+  }
+
+  @Test
+  void sessionChanges() {
+    assertTrue(ParsedSql.parse("USE db").isSessionChange());
+    assertTrue(ParsedSql.parse("/* c */ set search_path = s").isSessionChange());
+    assertFalse(ParsedSql.parse("select use, set from t").isSessionChange());
+    assertFalse(ParsedSql.parse("update t set a = 1").isSessionChange());
+  }
+
+  @Test
+  void approximateQueries() {
+    assertTrue(ParsedSql.parse("SELECT APPROXIMATE count(*) FROM t").isApproximate());
+    assertTrue(ParsedSql.parse("select incremental avg(a) from t").isApproximate());
+    assertTrue(ParsedSql.parse("-- c\nselect /* c */ approximate a from t").isApproximate());
+    assertFalse(ParsedSql.parse("select count(*) from t").isApproximate());
+    assertFalse(ParsedSql.parse("select a, approximate from t").isApproximate());
+    assertFalse(ParsedSql.parse("select 'approximate' from t").isApproximate());
+    assertFalse(ParsedSql.parse("update approximate set a = 1").isApproximate());
+    assertFalse(ParsedSql.parse("with a as (select 1) select approximate x from a")
+        .isApproximate());
+  }
+
+  private static ParameterList parameters(int... values) throws SQLException {
+    ParameterList parameters = new ParameterList(values.length);
+    for (int i = 0; i < values.length; ++i) {
+      parameters.setIntParameter(i + 1, values[i]);
+    }
+    return parameters;
+  }
+
+  private static String nativeSql(String sql, int... values) throws SQLException {
+    ParsedSql parsed = ParsedSql.parse(sql);
+    assertEquals(values.length, parsed.getBindCount(), sql);
+    return parsed.toNativeSql(parameters(values), new StringBuilder()).toString();
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link NumberParser} with the parsers of the JDK. The fast parser may give up on
+ * any value, but when it returns a value it must be the one the JDK returns.
+ */
+class NumberParserTest {
+  private static final int RANDOM_INPUTS = 200_000;
+
+  @Test
+  void parseLongEdgeCases() {
+    assertLong("0", 0);
+    assertLong("-0", 0);
+    assertLong("+7", 7);
+    assertLong("9223372036854775807", Long.MAX_VALUE);
+    assertLong("-9223372036854775808", Long.MIN_VALUE);
+    assertLong("000000000000000000000000042", 42);
+  }
+
+  @Test
+  void parseLongOutOfRange() {
+    assertLongFails("9223372036854775808", Long.MIN_VALUE, Long.MAX_VALUE);
+    assertLongFails("-9223372036854775809", Long.MIN_VALUE, Long.MAX_VALUE);
+    assertLongFails("99999999999999999999", Long.MIN_VALUE, Long.MAX_VALUE);
+    assertLongFails("32768", Short.MIN_VALUE, Short.MAX_VALUE);
+    assertLongFails("-2147483649", Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  @Test
+  void parseLongMalformed() {
+    for (String text : new String[] {"", "-", "+", "1.0", "1e3", " 1", "1 ", "--1", "+-1",
+        "0x10", "1_000", "١"}) {
+      assertLongFails(text, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+  }
+
+  @Test
+  void parseLongRandom() {
+    Random random = new Random(42);
+    for (int n = 0; n < RANDOM_INPUTS; ++n) {
+      long value;
+      switch (random.nextInt(3)) {
+        case 0:
+          value = random.nextLong();
+          break;
+        case 1:
+          value = random.nextInt();
+          break;
+        default:
+          value = random.nextLong() >> random.nextInt(64);
+          break;
+      }
+      assertLong(Long.toString(value), value);
+    }
+  }
+
+  @Test
+  void parseDoubleEdgeCases() {
+    for (String text : new String[] {
+        "0", "-0", "0.0", "-0.0", "+0e10", "0e-400", ".5", "5.", "-.5e1", "1E5", "1e+5",
+        "1.7976931348623157e308", "1.7976931348623159e308", "1e308", "2e308", "-1e400",
+        "4.9e-324", "2.4703282292062328e-324", "2.4703282292062327e-324", "2e-324",
+        "2.2250738585072011e-308", "2.2250738585072014e-308", "1e-310", "1e-350", "1e350",
+        "1e-400", "9007199254740993", "9007199254740992.5", "18446744073709551615",
+        "9999999999999999999", "12345678901234567890", "1234567890123456789012345678901234567890",
+        "0.1000000000000000055511151231257827021181583404541015625",
+        "0.1000000000000000055511151231257827021181583404541015626",
+        "0.1000000000000000055511151231257827021181583404541015624",
+        "123456789012345678901234567890e-30", "3.141592653589793238462643383279",
+        "0.000000000000000000000000000000000000000000001", "1e22", "1e23", "1e-22", "1e-23",
+        "179769313486231580793728971405303415079934132710037826936173778980444968292764750946"
+            + "649017977587207096330286416692887910946555547851940402630657488671505820681908902"
+            + "000708383676273854845817711531764475730270069855571366959622842914819860834936475"
+            + "2927190741684443655107043427115596995080930428801779776.0"}) {
+      assertDouble(text);
+    }
+  }
+
+  @Test
+  void parseDoubleWithoutFallback() {
+    // values that must not fall back, or the parser would be pointless
+    for (String text : new String[] {"-0", "-0.0", "0e-400", "1.5", "-273.15", "1e22",
+        "1e308", "1.4e-45", "9999999999999999999", "18446744073709551615",
+        "12345678901234567890", "123456789012345678901234567890e-30",
+        "0.1000000000000000055511151231257827021181583404541015626"}) {
+      byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+      assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)),
+          Double.doubleToRawLongBits(NumberParser.parseDouble(bytes, 0, bytes.length)), text);
+      assertEquals(Float.floatToRawIntBits(Float.parseFloat(text)),
+          Float.floatToRawIntBits(NumberParser.parseFloat(bytes, 0, bytes.length)), text);
+    }
+  }
+
+  @Test
+  void parseDoubleMalformed() {
+    for (String text : new String[] {"", "-", "+", ".", "-.", "e5", ".e5", "1e", "1e+", "1e-",
+        "1..0", "1.0.0", "1e5.0", "1e5e5", " 1", "1 ", "NaN", "Infinity", "-Infinity", "1d",
+        "1f", "0x1p3", "1,5", "--1"}) {
+      byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+      assertSame(NumberParser.FAST_NUMBER_FAILED,
+          assertThrows(NumberFormatException.class,
+              () -> NumberParser.parseDouble(bytes, 0, bytes.length)), text);
+      assertSame(NumberParser.FAST_NUMBER_FAILED,
+          assertThrows(NumberFormatException.class,
+              () -> NumberParser.parseFloat(bytes, 0, bytes.length)), text);
+    }
+  }
+
+  @Test
+  void parseDoubleRandomBits() {
+    Random random = new Random(42);
+    int parsed = 0;
+    for (int n = 0; n < RANDOM_INPUTS; ++n) {
+      double value = Double.longBitsToDouble(random.nextLong());
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        continue;
+      }
+      if (assertDouble(Double.toString(value))) {
+        ++parsed;
+      }
+      assertDouble(Float.toString((float) value));
+    }
+    // only subnormals and the rare ambiguous roundings fall back
+    assertTrue(parsed > RANDOM_INPUTS * 9 / 10, "parsed without fallback: " + parsed);
+  }
+
+  @Test
+  void parseDoubleRandomDigits() {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder();
+    for (int n = 0; n < RANDOM_INPUTS; ++n) {
+      sb.setLength(0);
+      if (random.nextBoolean()) {
+        sb.append('-');
+      }
+      // up to 30 digits, so that some mantissas have more than 19
+      int digits = 1 + random.nextInt(30);
+      int dot = random.nextInt(digits + 2) - 1;
+      for (int d = 0; d < digits; ++d) {
+        if (d == dot) {
+          sb.append('.');
+        }
+        sb.append((char) ('0' + random.nextInt(10)));
+      }
+      if (random.nextBoolean()) {
+        sb.append(random.nextBoolean() ? 'e' : 'E').append(random.nextInt(701) - 350);
+      }
+      assertDouble(sb.toString());
+    }
+  }
+
+  @Test
+  void parseFloatHalfWay() {
+    // 1 + 2^-24 is half-way between two floats, rounding through a double must not lose it
+    assertDouble("1.000000059604644775390625");
+    assertDouble("1.000000059604644775390626");
+    assertDouble("1.000000059604644775390624");
+    assertDouble("3.4028235e38");
+    assertDouble("3.4028236e38");
+    assertDouble("1.4e-45");
+    assertDouble("7.0e-46");
+    assertDouble("7.1e-46");
+  }
+
+  private static void assertLong(String text, long expected) {
+    byte[] bytes = ("x" + text + "x").getBytes(StandardCharsets.US_ASCII);
+    assertEquals(expected,
+        NumberParser.parseLong(bytes, 1, bytes.length - 2, Long.MIN_VALUE, Long.MAX_VALUE), text);
+  }
+
+  private static void assertLongFails(String text, long min, long max) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    assertSame(NumberParser.FAST_NUMBER_FAILED,
+        assertThrows(NumberFormatException.class,
+            () -> NumberParser.parseLong(bytes, 0, bytes.length, min, max)), text);
+  }
+
+  /**
+   * Check that parsing a valid value gives the value of the JDK, or gives up.
+   *
+   * @return true if the value was parsed as a double without falling back
+   */
+  private static boolean assertDouble(String text) {
+    // surround the value so that the offset and length are honored
+    byte[] bytes = ("1" + text + "1").getBytes(StandardCharsets.US_ASCII);
+    boolean parsed = false;
+    try {
+      double value = NumberParser.parseDouble(bytes, 1, bytes.length - 2);
+      assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)),
+          Double.doubleToRawLongBits(value), text);
+      parsed = true;
+    } catch (NumberFormatException e) {
+      assertSame(NumberParser.FAST_NUMBER_FAILED, e, text);
+    }
+    try {
+      float value = NumberParser.parseFloat(bytes, 1, bytes.length - 2);
+      assertEquals(Float.floatToRawIntBits(Float.parseFloat(text)),
+          Float.floatToRawIntBits(value), text);
+    } catch (NumberFormatException e) {
+      assertSame(NumberParser.FAST_NUMBER_FAILED, e, text);
+    }
+    return parsed;
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package traindb.jdbc.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Timeouts never fire early, so the tests only bound how late they fire, and generously.
+ */
+class TimerWheelTest {
+  private static final long AWAIT_SECONDS = 10;
+
+  @Test
+  void expiresInDeadlineOrder() throws InterruptedException {
+    TimerWheel timer = new TimerWheel("TimerWheelTest-order", 5, 8, 1000);
+    List<Integer> fired = Collections.synchronizedList(new ArrayList<Integer>());
+    CountDownLatch done = new CountDownLatch(6);
+    // scheduled in reverse, two ticks apart at least, some more than a round away
+    for (int i = 5; i >= 0; --i) {
+      int id = i;
+      timer.newTimeout(() -> {
+        fired.add(id);
+        done.countDown();
+      }, 20 + 15L * i);
+    }
+    assertTrue(done.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), fired);
+    assertEquals(0, timer.getPendingTimeouts());
+  }
+
+  @Test
+  void neverExpiresEarly() throws InterruptedException {
+    TimerWheel timer = new TimerWheel("TimerWheelTest-early", 10, 4, 1000);
+    int count = 20;
+    CountDownLatch done = new CountDownLatch(count);
+    AtomicInteger early = new AtomicInteger();
+    for (int i = 0; i < count; ++i) {
+      long delayMillis = ThreadLocalRandom.current().nextInt(200);
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+      timer.newTimeout(() -> {
+        if (System.nanoTime() - deadline < 0) {
+          early.incrementAndGet();
+        }
+        done.countDown();
+      }, delayMillis);
+    }
+    assertTrue(done.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(0, early.get());
+  }
+
+  @Test
+  void expiresAfterSeveralRounds() throws InterruptedException {
+    // a round of the wheel is 40ms, the timeouts share buckets with others of other rounds
+    TimerWheel timer = new TimerWheel("TimerWheelTest-rounds", 10, 4, 1000);
+    long start = System.nanoTime();
+    List<Long> delays = Arrays.asList(15L, 55L, 95L, 135L, 255L);
+    List<Long> fired = Collections.synchronizedList(new ArrayList<Long>());
+    CountDownLatch done = new CountDownLatch(delays.size());
+    AtomicInteger early = new AtomicInteger();
+    for (long delay : delays) {
+      timer.newTimeout(() -> {
+        if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+          early.incrementAndGet();
+        }
+        fired.add(delay);
+        done.countDown();
+      }, delay);
+    }
+    assertTrue(done.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(delays, fired);
+    assertEquals(0, early.get());
+  }
+
+  @Test
+  void cancelBeforeTransfer() throws InterruptedException {
+    // a long tick, so that the worker does not tick before the cancel
+    TimerWheel timer = new TimerWheel("TimerWheelTest-cancel1", 200, 8, 1000);
+    AtomicInteger runs = new AtomicInteger();
+    TimerWheel.Timeout timeout = timer.newTimeout(runs::incrementAndGet, 0);
+    // the timeout is still in the queue of new ones
+    assertTrue(timeout.cancel());
+    assertTrue(timeout.isCancelled());
+    assertFalse(timeout.cancel());
+    assertEquals(0, timer.getPendingTimeouts());
+
+    CountDownLatch later = new CountDownLatch(1);
+    timer.newTimeout(later::countDown, 0);
+    assertTrue(later.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(0, runs.get());
+    assertFalse(timeout.isExpired());
+  }
+
+  @Test
+  void cancelAfterTransfer() throws InterruptedException {
+    TimerWheel timer = new TimerWheel("TimerWheelTest-cancel2", 10, 8, 1000);
+    AtomicInteger runs = new AtomicInteger();
+    // in a bucket of the wheel after a few ticks, and more than a round away
+    TimerWheel.Timeout timeout = timer.newTimeout(runs::incrementAndGet, 300);
+    TimerWheel.Timeout neighbour = timer.newTimeout(runs::incrementAndGet, 300);
+    Thread.sleep(100);
+    assertTrue(timeout.cancel());
+    assertEquals(1, timer.getPendingTimeouts());
+
+    CountDownLatch later = new CountDownLatch(1);
+    timer.newTimeout(later::countDown, 400);
+    assertTrue(later.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+    // the neighbour in the list survives the unlinking of the cancelled timeout
+    assertEquals(1, runs.get());
+    assertTrue(neighbour.isExpired());
+    assertFalse(timeout.isExpired());
+    assertFalse(neighbour.cancel());
+    assertEquals(0, timer.getPendingTimeouts());
+  }
+
+  @Test
+  void restartsAfterIdleStop() throws InterruptedException {
+    String name = "TimerWheelTest-restart";
+    TimerWheel timer = new TimerWheel(name, 5, 8, 20);
+    AtomicReference<String> firstThread = new AtomicReference<String>();
+    CountDownLatch first = new CountDownLatch(1);
+    timer.newTimeout(() -> {
+      firstThread.set(Thread.currentThread().getName());
+      first.countDown();
+    }, 5);
+    assertTrue(first.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(AWAIT_SECONDS);
+    while (hasThread(name) && System.nanoTime() - deadline < 0) {
+      Thread.sleep(10);
+    }
+    assertFalse(hasThread(name), "the idle worker should stop");
+
+    AtomicReference<String> secondThread = new AtomicReference<String>();
+    CountDownLatch second = new CountDownLatch(1);
+    timer.newTimeout(() -> {
+      secondThread.set(Thread.currentThread().getName());
+      second.countDown();
+    }, 5);
+    assertTrue(second.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+    assertNotEquals(firstThread.get(), secondThread.get());
+  }
+
+  @Test
+  void noTimeoutLostWhileTheWorkerStops() throws InterruptedException {
+    // the worker stops as soon as it is idle, so timeouts keep racing with its stop
+    TimerWheel timer = new TimerWheel("TimerWheelTest-race", 1, 8, 0);
+    int threads = 4;
+    int perThread = 200;
+    CountDownLatch done = new CountDownLatch(threads * perThread);
+    List<Thread> schedulers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; ++t) {
+      Thread scheduler = new Thread(() -> {
+        for (int i = 0; i < perThread; ++i) {
+          timer.newTimeout(done::countDown, ThreadLocalRandom.current().nextInt(3));
+          LockSupport.parkNanos(
+              TimeUnit.MICROSECONDS.toNanos(ThreadLocalRandom.current().nextInt(2000)));
+        }
+      });
+      scheduler.start();
+      schedulers.add(scheduler);
+    }
+    for (Thread scheduler : schedulers) {
+      scheduler.join();
+    }
+    assertTrue(done.await(AWAIT_SECONDS, TimeUnit.SECONDS),
+        "timeouts that never fired: " + done.getCount());
+    assertEquals(0, timer.getPendingTimeouts());
+  }
+
+  private static boolean hasThread(String namePrefix) {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith(namePrefix + "-") && thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}